@@ -0,0 +1,39 @@
+package com.coalminesoftware.locationtracer.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+/**
+ * Builds the locations that benchmarks offer to stores and listeners: a deterministic trace of one fix per second
+ * along a gently curving path, with every field populated.
+ */
+final class BenchmarkLocations {
+	private static final long START_TIME = 1460000000000L;
+
+	private BenchmarkLocations() { }
+
+	static List<Location> createTrace(int locationCount) {
+		List<Location> locations = new ArrayList<>(locationCount);
+		for(int i = 0; i < locationCount; i++) {
+			locations.add(createLocation(i));
+		}
+
+		return locations;
+	}
+
+	static Location createLocation(int index) {
+		Location location = new Location(LocationManager.GPS_PROVIDER);
+		location.setTime(START_TIME + index * 1000L);
+		location.setLatitude(40.0 + index * 0.0001);
+		location.setLongitude(-75.0 + Math.sin(index / 100.0) * 0.01);
+		location.setAltitude(100 + index % 20);
+		location.setAccuracy(5 + index % 10);
+		location.setSpeed(12.5f);
+		location.setBearing(index % 360);
+
+		return location;
+	}
+}
@@ -0,0 +1,119 @@
+package com.coalminesoftware.locationtracer.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.BaseLocationStore;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStore;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStoreAdapter;
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+
+/**
+ * Measures the cost of the {@link com.coalminesoftware.locationtracer.storage.LocationStore} operations made while
+ * tracing and reporting, for each store and a range of backlog sizes.  Each store's capacity is its backlog size, so
+ * offered locations are accepted at steady state, with the oldest location purged each time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationStoreBenchmark {
+	@State(Scope.Thread)
+	public static class FilledStore {
+		@Param({"IN_MEMORY", "RING_BUFFER", "MAPPED_FILE"})
+		public StoreType storeType;
+
+		@Param({"100", "1000", "10000"})
+		public int backlogSize;
+
+		BaseLocationStore<Location> store;
+		/** The store as the tracer sees it, adapted if the store isn't sequenced. */
+		SequencedLocationStore<Location> sequencedStore;
+		Location location;
+		private int createdLocationCount;
+
+		@Setup(Level.Trial)
+		public void createStore() throws IOException {
+			store = storeType.createStore(backlogSize, new VirtualClock());
+			sequencedStore = SequencedLocationStoreAdapter.adapt(store);
+			location = BenchmarkLocations.createLocation(0);
+
+			fillStore();
+		}
+
+		/**
+		 * Offers distinct locations until the store holds its full backlog, since stores that compare locations by
+		 * identity would otherwise remove several copies of a location at once.
+		 */
+		void fillStore() {
+			while(sequencedStore.getLocationCount() < backlogSize) {
+				sequencedStore.offerLocation(BenchmarkLocations.createLocation(createdLocationCount++));
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void disposeOfStore() throws IOException {
+			StoreType.disposeOfStore(store);
+		}
+	}
+
+	/**
+	 * A full store, refilled before each invocation, along with the oldest half of its backlog - the locations that a
+	 * completed report would remove.
+	 */
+	@State(Scope.Thread)
+	public static class RefilledStore extends FilledStore {
+		List<Location> oldestLocations;
+		SequenceRange oldestRange;
+
+		@Setup(Level.Invocation)
+		public void refillStore() {
+			fillStore();
+
+			int removedLocationCount = backlogSize / 2;
+			oldestLocations = new ArrayList<>(sequencedStore.getLocations().subList(0, removedLocationCount));
+			oldestRange = sequencedStore.getLocationBatch(sequencedStore.getSequenceRange().getStart(), removedLocationCount)
+					.getSequenceRange();
+		}
+	}
+
+	@Benchmark
+	public void offerLocation(FilledStore state) {
+		state.store.offerLocation(state.location);
+	}
+
+	@Benchmark
+	public List<Location> getLocations(FilledStore state) {
+		return state.store.getLocations();
+	}
+
+	@Benchmark
+	public void removeLocationsByContent(RefilledStore state) {
+		state.sequencedStore.removeLocations(state.oldestLocations);
+	}
+
+	@Benchmark
+	public void removeLocationsByRange(RefilledStore state) {
+		state.sequencedStore.removeLocations(state.oldestRange);
+	}
+}
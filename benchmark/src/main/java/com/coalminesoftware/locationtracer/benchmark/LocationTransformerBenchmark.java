@@ -0,0 +1,96 @@
+package com.coalminesoftware.locationtracer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.RingBufferLocationStore;
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+import com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer;
+import com.coalminesoftware.locationtracer.transformation.LocationTransformer;
+import com.coalminesoftware.locationtracer.transformation.PassthroughLocationRecordTransformer;
+import com.coalminesoftware.locationtracer.transformation.PassthroughLocationTransformer;
+
+/**
+ * Measures the time and, when run with the GC profiler as the {@code jmh} task does, the allocation of transforming a
+ * location.  The copying and minimal transformers mirror the common ways applications transform locations, as
+ * described by {@link LocationTransformer}.  For comparison, the record benchmark writes a location into a ring buffer
+ * with a {@link LocationRecordTransformer}, which transforms and stores it without allocating.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocationTransformerBenchmark {
+	private static final LocationTransformer<Location> COPYING_TRANSFORMER = new LocationTransformer<Location>() {
+		@Override
+		public Location transformLocation(Location location) {
+			return new Location(location);
+		}
+	};
+
+	private static final LocationTransformer<MinimalLocation> MINIMAL_TRANSFORMER = new LocationTransformer<MinimalLocation>() {
+		@Override
+		public MinimalLocation transformLocation(Location location) {
+			return new MinimalLocation(location.getTime(), location.getLatitude(), location.getLongitude());
+		}
+	};
+
+	private static final int RECORD_STORE_CAPACITY = 1000;
+
+	private Location location;
+	private RingBufferLocationStore recordStore;
+
+	@Setup
+	public void createLocation() {
+		location = BenchmarkLocations.createLocation(0);
+
+		recordStore = new RingBufferLocationStore(RECORD_STORE_CAPACITY);
+		recordStore.setClock(new VirtualClock());
+	}
+
+	@Benchmark
+	public Location passthrough() {
+		return PassthroughLocationTransformer.INSTANCE.transformLocation(location);
+	}
+
+	@Benchmark
+	public Location copying() {
+		return COPYING_TRANSFORMER.transformLocation(location);
+	}
+
+	@Benchmark
+	public MinimalLocation minimal() {
+		return MINIMAL_TRANSFORMER.transformLocation(location);
+	}
+
+	@Benchmark
+	public void record() {
+		recordStore.offerLocation(location, PassthroughLocationRecordTransformer.INSTANCE);
+	}
+
+	public static class MinimalLocation {
+		final long time;
+		final double latitude;
+		final double longitude;
+
+		MinimalLocation(long time, double latitude, double longitude) {
+			this.time = time;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.coalminesoftware.locationtracer.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.listener.CachingLocationListener;
+import com.coalminesoftware.locationtracer.reporting.ReportBatchLimits;
+import com.coalminesoftware.locationtracer.reporting.ReportingPipeline;
+import com.coalminesoftware.locationtracer.reporting.SequencedLocationReporter;
+import com.coalminesoftware.locationtracer.reporting.SequencedReportCompletionHandler;
+import com.coalminesoftware.locationtracer.storage.BaseLocationStore;
+import com.coalminesoftware.locationtracer.storage.LocationBatch;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStore;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStoreAdapter;
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+import com.coalminesoftware.locationtracer.transformation.PassthroughLocationTransformer;
+
+/**
+ * Measures the latency of one cycle of tracing and reporting: a number of locations are delivered to a
+ * {@link CachingLocationListener}, which stores them, and a report is then made through a {@link ReportingPipeline}
+ * to a reporter that acknowledges each batch as soon as it is given it.  Latencies are sampled, so results include
+ * percentiles as well as the mean.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReportPathBenchmark {
+	private static final int MAXIMUM_BATCH_LOCATION_COUNT = 100;
+	/** Comfortably more than the locations stored in a cycle, since every report empties the store. */
+	private static final int STORE_CAPACITY = 10000;
+
+	@Param({"IN_MEMORY", "RING_BUFFER", "MAPPED_FILE"})
+	public StoreType storeType;
+
+	@Param({"1", "100", "1000"})
+	public int locationsPerReport;
+
+	private BaseLocationStore<Location> store;
+	private CachingLocationListener<Location> listener;
+	private ReportingPipeline<Location> pipeline;
+	private List<Location> locations;
+
+	@Setup(Level.Trial)
+	public void createPipeline() throws IOException {
+		VirtualClock clock = new VirtualClock();
+		store = storeType.createStore(STORE_CAPACITY, clock);
+		SequencedLocationStore<Location> sequencedStore = SequencedLocationStoreAdapter.adapt(store);
+
+		listener = new CachingLocationListener<Location>(PassthroughLocationTransformer.INSTANCE, sequencedStore, clock);
+		pipeline = new ReportingPipeline<Location>(sequencedStore, new AcknowledgingReporter(),
+				new ReportBatchLimits<Location>(MAXIMUM_BATCH_LOCATION_COUNT), 1);
+		pipeline.setClock(clock);
+	}
+
+	/**
+	 * Creates new locations for each invocation, since stores that compare locations by identity would otherwise
+	 * remove several copies of a location at once.
+	 */
+	@Setup(Level.Invocation)
+	public void createLocations() {
+		locations = BenchmarkLocations.createTrace(locationsPerReport);
+	}
+
+	@TearDown(Level.Trial)
+	public void disposeOfStore() throws IOException {
+		StoreType.disposeOfStore(store);
+	}
+
+	@Benchmark
+	public void traceAndReport() {
+		for(Location location : locations) {
+			listener.onLocationChanged(location);
+		}
+
+		pipeline.report();
+	}
+
+	private static class AcknowledgingReporter implements SequencedLocationReporter<Location> {
+		@Override
+		public void reportLocations(LocationBatch<Location> batch,
+				SequencedReportCompletionHandler<Location> reportCompletionHandler) {
+			reportCompletionHandler.onLocationReportComplete(batch.getSequenceRange());
+		}
+
+		@Override
+		public void reportLocations(List<Location> locations, ReportCompletionHandler<Location> reportCompletionHandler) {
+			reportCompletionHandler.onLocationReportComplete(locations);
+		}
+	}
+}
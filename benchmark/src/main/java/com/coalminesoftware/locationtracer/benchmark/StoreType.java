@@ -0,0 +1,79 @@
+package com.coalminesoftware.locationtracer.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.BaseLocationStore;
+import com.coalminesoftware.locationtracer.storage.DurabilityPolicy;
+import com.coalminesoftware.locationtracer.storage.InMemoryLocationStore;
+import com.coalminesoftware.locationtracer.storage.LocationStore;
+import com.coalminesoftware.locationtracer.storage.MappedFileLocationStore;
+import com.coalminesoftware.locationtracer.storage.RingBufferLocationStore;
+import com.coalminesoftware.locationtracer.time.Clock;
+
+/**
+ * The location stores that benchmarks are parameterized over.  Stores that keep files do so in a temporary directory,
+ * which is deleted when the store is disposed of.
+ */
+public enum StoreType {
+	IN_MEMORY {
+		@Override
+		BaseLocationStore<Location> createStore(int capacity) {
+			return new InMemoryLocationStore<Location>(capacity);
+		}
+	},
+	RING_BUFFER {
+		@Override
+		BaseLocationStore<Location> createStore(int capacity) {
+			return new RingBufferLocationStore(capacity);
+		}
+	},
+	MAPPED_FILE {
+		@Override
+		BaseLocationStore<Location> createStore(int capacity) throws IOException {
+			File directory = Files.createTempDirectory("locationtracer-benchmark").toFile();
+			return new MappedFileLocationStore(directory, MappedFileLocationStore.DEFAULT_RECORDS_PER_SEGMENT, capacity,
+					DurabilityPolicy.MANUAL);
+		}
+	};
+
+	abstract BaseLocationStore<Location> createStore(int capacity) throws IOException;
+
+	/**
+	 * Creates a store that timestamps accepted locations with the given clock, since the default clock relies on
+	 * native code that isn't available on the JVM.
+	 */
+	BaseLocationStore<Location> createStore(int capacity, Clock clock) throws IOException {
+		BaseLocationStore<Location> store = createStore(capacity);
+		store.setClock(clock);
+
+		return store;
+	}
+
+	/**
+	 * Closes the store, if it holds resources, and deletes its files.
+	 */
+	static void disposeOfStore(LocationStore<Location> store) throws IOException {
+		if(store instanceof Closeable) {
+			((Closeable)store).close();
+		}
+		if(store instanceof MappedFileLocationStore) {
+			deleteRecursively(((MappedFileLocationStore)store).getDirectory());
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				deleteRecursively(child);
+			}
+		}
+
+		file.delete();
+	}
+}
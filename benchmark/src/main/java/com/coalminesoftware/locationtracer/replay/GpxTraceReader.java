@@ -0,0 +1,153 @@
+package com.coalminesoftware.locationtracer.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+/**
+ * Reads the track and route points of a GPX file using the JDK's streaming XML parser, rather than android.util.Xml's
+ * parser, which only runs on a device.  Only the point being read is held in memory.
+ * Each point's position is read along with, when present, its elevation, time, speed, course and horizontal dilution
+ * of precision.  Points are attributed to the {@link LocationManager#GPS_PROVIDER GPS provider}.
+ */
+public class GpxTraceReader implements TraceReader {
+	private static final String TRACK_POINT_ELEMENT = "trkpt";
+	private static final String ROUTE_POINT_ELEMENT = "rtept";
+
+	private final InputStream inputStream;
+	private final XMLStreamReader parser;
+	private final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+	public GpxTraceReader(InputStream inputStream) throws IOException {
+		this.inputStream = inputStream;
+
+		try {
+			parser = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+		} catch(XMLStreamException e) {
+			throw new IOException("Could not read GPX.", e);
+		}
+	}
+
+	@Override
+	public boolean readLocation(Location location) throws IOException {
+		try {
+			while(parser.hasNext()) {
+				if(parser.next() == XMLStreamConstants.START_ELEMENT && isPointElement(parser.getLocalName())) {
+					readPoint(location);
+					return true;
+				}
+			}
+		} catch(XMLStreamException e) {
+			throw new IOException("Malformed GPX.", e);
+		}
+
+		return false;
+	}
+
+	private static boolean isPointElement(String name) {
+		return TRACK_POINT_ELEMENT.equals(name) || ROUTE_POINT_ELEMENT.equals(name);
+	}
+
+	private void readPoint(Location location) throws XMLStreamException, IOException {
+		location.reset();
+		location.setProvider(LocationManager.GPS_PROVIDER);
+		location.setLatitude(parseDouble(parser.getAttributeValue(null, "lat")));
+		location.setLongitude(parseDouble(parser.getAttributeValue(null, "lon")));
+
+		// Child elements are matched by name at any depth, so values nested in extensions (such as speed in GPX 1.1
+		// files written by common trackers) are read as well.
+		int depth = 1;
+		while(depth > 0) {
+			if(!parser.hasNext()) {
+				throw new IOException("GPX ended inside a point.");
+			}
+
+			int event = parser.next();
+			if(event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if(event == XMLStreamConstants.START_ELEMENT) {
+				String name = parser.getLocalName();
+				if("ele".equals(name)) {
+					location.setAltitude(parseDouble(parser.getElementText()));
+				} else if("time".equals(name)) {
+					location.setTime(parseTime(parser.getElementText()));
+				} else if("speed".equals(name)) {
+					location.setSpeed((float)parseDouble(parser.getElementText()));
+				} else if("course".equals(name)) {
+					location.setBearing((float)parseDouble(parser.getElementText()));
+				} else if("hdop".equals(name)) {
+					double hdop = parseDouble(parser.getElementText());
+					location.setAccuracy((float)(hdop * NmeaTraceReader.HDOP_ACCURACY_FACTOR));
+				} else {
+					depth++;
+				}
+			}
+		}
+	}
+
+	private static double parseDouble(String value) throws IOException {
+		if(value == null) {
+			throw new IOException("GPX point is missing a coordinate.");
+		}
+
+		try {
+			return Double.parseDouble(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IOException("Malformed GPX number: " + value, e);
+		}
+	}
+
+	/**
+	 * Parses an XML Schema dateTime, such as {@code 2016-04-01T12:30:45.250Z} or {@code 2016-04-01T14:30:45+02:00}.
+	 * Times without an offset are taken to be in UTC.
+	 */
+	private long parseTime(String value) throws IOException {
+		String time = value.trim();
+		try {
+			calendar.clear();
+			calendar.set(
+					Integer.parseInt(time.substring(0, 4)),
+					Integer.parseInt(time.substring(5, 7)) - 1,
+					Integer.parseInt(time.substring(8, 10)),
+					Integer.parseInt(time.substring(11, 13)),
+					Integer.parseInt(time.substring(14, 16)),
+					Integer.parseInt(time.substring(17, 19)));
+			long timeMillis = calendar.getTimeInMillis();
+
+			int index = 19;
+			if(index < time.length() && time.charAt(index) == '.') {
+				int fractionEnd = index + 1;
+				while(fractionEnd < time.length() && Character.isDigit(time.charAt(fractionEnd))) {
+					fractionEnd++;
+				}
+				timeMillis += Math.round(Double.parseDouble(time.substring(index, fractionEnd)) * 1000);
+				index = fractionEnd;
+			}
+
+			if(index < time.length() && time.charAt(index) != 'Z') {
+				int sign = time.charAt(index) == '-'? -1 : 1;
+				int offsetMinutes = Integer.parseInt(time.substring(index + 1, index + 3)) * 60 +
+						Integer.parseInt(time.substring(index + 4, index + 6));
+				timeMillis -= sign * offsetMinutes * 60000L;
+			}
+
+			return timeMillis;
+		} catch(NumberFormatException | IndexOutOfBoundsException e) {
+			throw new IOException("Malformed GPX time: " + value, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+}
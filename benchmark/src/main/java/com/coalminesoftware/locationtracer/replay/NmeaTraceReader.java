@@ -0,0 +1,168 @@
+package com.coalminesoftware.locationtracer.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+/**
+ * Reads fixes from an NMEA 0183 log a line at a time.  A fix is read from each valid RMC sentence, from any talker.
+ * When a GGA sentence for the same time precedes the RMC sentence, as receivers usually emit them, the fix is given its
+ * altitude and an accuracy estimated from its horizontal dilution of precision.  Other sentences, and sentences whose
+ * checksums don't match, are skipped.  Fixes are attributed to the {@link LocationManager#GPS_PROVIDER GPS provider}.
+ */
+public class NmeaTraceReader implements TraceReader {
+	/** The accuracy, in meters, estimated for each unit of horizontal dilution of precision. */
+	static final double HDOP_ACCURACY_FACTOR = 5.0;
+
+	private static final double METERS_PER_SECOND_PER_KNOT = 0.514444;
+
+	private final BufferedReader reader;
+	private final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+	private String ggaTime;
+	private Double ggaAltitude;
+	private Double ggaHorizontalDilution;
+	private long skippedSentenceCount;
+
+	public NmeaTraceReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader? (BufferedReader)reader : new BufferedReader(reader);
+	}
+
+	@Override
+	public boolean readLocation(Location location) throws IOException {
+		String line;
+		while((line = reader.readLine()) != null) {
+			String[] fields = splitSentence(line.trim());
+			if(fields == null) {
+				continue;
+			}
+
+			String sentenceType = fields[0].substring(fields[0].length() - 3);
+			try {
+				if("GGA".equals(sentenceType)) {
+					readGga(fields);
+				} else if("RMC".equals(sentenceType) && readRmc(fields, location)) {
+					return true;
+				}
+			} catch(NumberFormatException | IndexOutOfBoundsException e) {
+				skippedSentenceCount++;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The sentence's fields, starting with its address, or null if the line isn't a sentence with a valid
+	 * checksum.
+	 */
+	private String[] splitSentence(String line) {
+		if(line.length() < 7 || line.charAt(0) != '$') {
+			return null;
+		}
+
+		int checksumIndex = line.lastIndexOf('*');
+		int end = checksumIndex == -1? line.length() : checksumIndex;
+		if(checksumIndex != -1) {
+			int checksum = 0;
+			for(int i = 1; i < end; i++) {
+				checksum ^= line.charAt(i);
+			}
+
+			try {
+				if(checksum != Integer.parseInt(line.substring(checksumIndex + 1), 16)) {
+					skippedSentenceCount++;
+					return null;
+				}
+			} catch(NumberFormatException e) {
+				skippedSentenceCount++;
+				return null;
+			}
+		}
+
+		String[] fields = line.substring(1, end).split(",", -1);
+		return fields[0].length() < 5? null : fields;
+	}
+
+	private void readGga(String[] fields) {
+		ggaTime = fields[1];
+		ggaHorizontalDilution = fields[8].isEmpty()? null : Double.valueOf(fields[8]);
+		ggaAltitude = fields[9].isEmpty()? null : Double.valueOf(fields[9]);
+	}
+
+	private boolean readRmc(String[] fields, Location location) {
+		if(!"A".equals(fields[2]) || fields[3].isEmpty() || fields[5].isEmpty()) {
+			return false;
+		}
+
+		location.reset();
+		location.setProvider(LocationManager.GPS_PROVIDER);
+		location.setTime(parseTime(fields[1], fields[9]));
+		location.setLatitude(parseCoordinate(fields[3], fields[4], 2));
+		location.setLongitude(parseCoordinate(fields[5], fields[6], 3));
+		if(!fields[7].isEmpty()) {
+			location.setSpeed((float)(Double.parseDouble(fields[7]) * METERS_PER_SECOND_PER_KNOT));
+		}
+		if(!fields[8].isEmpty()) {
+			location.setBearing(Float.parseFloat(fields[8]));
+		}
+
+		if(fields[1].equals(ggaTime)) {
+			if(ggaAltitude != null) {
+				location.setAltitude(ggaAltitude);
+			}
+			if(ggaHorizontalDilution != null) {
+				location.setAccuracy((float)(ggaHorizontalDilution * HDOP_ACCURACY_FACTOR));
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parses a coordinate of the form (d)ddmm.mmmm and its hemisphere.
+	 */
+	private static double parseCoordinate(String value, String hemisphere, int degreeDigits) {
+		double degrees = Integer.parseInt(value.substring(0, degreeDigits)) +
+				Double.parseDouble(value.substring(degreeDigits)) / 60;
+
+		return "S".equals(hemisphere) || "W".equals(hemisphere)? -degrees : degrees;
+	}
+
+	/**
+	 * Parses a time of the form hhmmss(.sss) and a date of the form ddmmyy.
+	 */
+	private long parseTime(String time, String date) {
+		int year = Integer.parseInt(date.substring(4, 6));
+		calendar.clear();
+		calendar.set(
+				year < 80? 2000 + year : 1900 + year,
+				Integer.parseInt(date.substring(2, 4)) - 1,
+				Integer.parseInt(date.substring(0, 2)),
+				Integer.parseInt(time.substring(0, 2)),
+				Integer.parseInt(time.substring(2, 4)),
+				Integer.parseInt(time.substring(4, 6)));
+
+		long timeMillis = calendar.getTimeInMillis();
+		if(time.length() > 6) {
+			timeMillis += Math.round(Double.parseDouble(time.substring(6)) * 1000);
+		}
+
+		return timeMillis;
+	}
+
+	/** @return The number of sentences skipped because they were malformed or failed their checksum. */
+	public long getSkippedSentenceCount() {
+		return skippedSentenceCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
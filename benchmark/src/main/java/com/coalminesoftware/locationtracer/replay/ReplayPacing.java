@@ -0,0 +1,46 @@
+package com.coalminesoftware.locationtracer.replay;
+
+/**
+ * Determines how quickly a {@link TraceReplayer} delivers a trace's fixes, relative to the times at which they were
+ * recorded.
+ */
+public class ReplayPacing {
+	/** Delivers fixes with the same spacing they were recorded with. */
+	public static final ReplayPacing REAL_TIME = new ReplayPacing(1);
+	/** Delivers each fix as soon as the previous one has been handled. */
+	public static final ReplayPacing AS_FAST_AS_POSSIBLE = new ReplayPacing(Double.POSITIVE_INFINITY);
+
+	private final double speedFactor;
+
+	private ReplayPacing(double speedFactor) {
+		this.speedFactor = speedFactor;
+	}
+
+	/**
+	 * @param speedFactor How many times faster than real time fixes are delivered.
+	 */
+	public static ReplayPacing accelerated(double speedFactor) {
+		if(!(speedFactor > 0)) {
+			throw new IllegalArgumentException("Speed factor must be positive.");
+		}
+
+		return new ReplayPacing(speedFactor);
+	}
+
+	public double getSpeedFactor() {
+		return speedFactor;
+	}
+
+	/** @return Whether the replayer waits between fixes. */
+	public boolean isPaced() {
+		return !Double.isInfinite(speedFactor);
+	}
+
+	/**
+	 * @param traceOffset The time since the trace's first fix, in milliseconds.
+	 * @return The time since the replay started at which a fix should be delivered, in nanoseconds.
+	 */
+	public long determineReplayOffsetNanos(long traceOffset) {
+		return isPaced()? (long)(traceOffset * 1000000L / speedFactor) : 0;
+	}
+}
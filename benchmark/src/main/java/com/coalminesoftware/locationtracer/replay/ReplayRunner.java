@@ -0,0 +1,52 @@
+package com.coalminesoftware.locationtracer.replay;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.listener.CachingLocationListener;
+import com.coalminesoftware.locationtracer.storage.InMemoryLocationStore;
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+import com.coalminesoftware.locationtracer.transformation.PassthroughLocationTransformer;
+
+/**
+ * Replays a GPX or NMEA trace file through a {@link CachingLocationListener} backed by an
+ * {@link InMemoryLocationStore}, and prints the replay's statistics.  Run with {@code gradlew :benchmark:replay
+ * -PtraceFile=<path>}, adding {@code -PreplaySpeed=<factor>} to pace the replay rather than delivering fixes as fast as
+ * possible.
+ */
+public class ReplayRunner {
+	private ReplayRunner() { }
+
+	/**
+	 * @param args The path of the trace file, optionally followed by how many times faster than real time to replay it.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: ReplayRunner <trace file> [speed factor]");
+			System.exit(1);
+		}
+
+		ReplayPacing pacing = args.length == 2?
+				ReplayPacing.accelerated(Double.parseDouble(args[1])) :
+				ReplayPacing.AS_FAST_AS_POSSIBLE;
+
+		VirtualClock clock = new VirtualClock();
+		InMemoryLocationStore<Location> store = new InMemoryLocationStore<>(Integer.MAX_VALUE);
+		store.setClock(clock);
+		CachingLocationListener<Location> listener = new CachingLocationListener<Location>(
+				PassthroughLocationTransformer.INSTANCE, store, clock);
+
+		ReplayStatistics statistics;
+		TraceReader traceReader = TraceReplayer.openTraceFile(new File(args[0]));
+		try {
+			statistics = new TraceReplayer(listener, pacing).replay(traceReader);
+		} finally {
+			traceReader.close();
+		}
+
+		System.out.println(statistics);
+		System.out.println("Stored " + store.getLocationCount() + " locations.");
+	}
+}
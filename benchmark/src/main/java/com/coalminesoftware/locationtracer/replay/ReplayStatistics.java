@@ -0,0 +1,97 @@
+package com.coalminesoftware.locationtracer.replay;
+
+/**
+ * Describes a replay by a {@link TraceReplayer}: how many fixes were delivered, how quickly, and how long the listener
+ * took to handle each of them.
+ */
+public class ReplayStatistics {
+	private static final int LATENCY_BUCKET_COUNT = 64;
+
+	/** Counts of delivery latencies, bucketed by the position of their highest set bit. */
+	private final long[] latencyBuckets = new long[LATENCY_BUCKET_COUNT];
+	private long locationCount;
+	private long totalLatencyNanos;
+	private long maximumLatencyNanos;
+	private long maximumLagNanos;
+	private long replayDurationNanos;
+	private long traceDuration;
+
+	void recordLocation(long latencyNanos, long lagNanos) {
+		locationCount++;
+		totalLatencyNanos += latencyNanos;
+		maximumLatencyNanos = Math.max(maximumLatencyNanos, latencyNanos);
+		maximumLagNanos = Math.max(maximumLagNanos, lagNanos);
+		latencyBuckets[LATENCY_BUCKET_COUNT - Long.numberOfLeadingZeros(Math.max(latencyNanos, 1))]++;
+	}
+
+	void setDurations(long replayDurationNanos, long traceDuration) {
+		this.replayDurationNanos = replayDurationNanos;
+		this.traceDuration = traceDuration;
+	}
+
+	public long getLocationCount() {
+		return locationCount;
+	}
+
+	/** @return The wall-clock time the replay took, in nanoseconds. */
+	public long getReplayDurationNanos() {
+		return replayDurationNanos;
+	}
+
+	/** @return The time between the trace's first and last fixes, in milliseconds. */
+	public long getTraceDuration() {
+		return traceDuration;
+	}
+
+	/** @return The number of fixes delivered per second of wall-clock time. */
+	public double getLocationsPerSecond() {
+		return replayDurationNanos == 0? 0 : locationCount * 1e9 / replayDurationNanos;
+	}
+
+	/** @return The mean time the listener took to handle a fix, in nanoseconds. */
+	public long getMeanLatencyNanos() {
+		return locationCount == 0? 0 : totalLatencyNanos / locationCount;
+	}
+
+	public long getMaximumLatencyNanos() {
+		return maximumLatencyNanos;
+	}
+
+	/**
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return An upper bound on the given percentile of the time the listener took to handle a fix, in nanoseconds.
+	 * Latencies are bucketed by powers of two, so the bound is within a factor of two of the actual percentile.
+	 */
+	public long getLatencyPercentileNanos(double percentile) {
+		long rank = (long)Math.ceil(locationCount * percentile / 100);
+		long count = 0;
+		for(int bucket = 0; bucket < LATENCY_BUCKET_COUNT; bucket++) {
+			count += latencyBuckets[bucket];
+			if(count >= rank && count > 0) {
+				return Math.min((1L << bucket) - 1, maximumLatencyNanos);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return The longest a paced fix was delivered after it was due, in nanoseconds, which grows when the listener
+	 * can't keep up with the pace of the replay.
+	 */
+	public long getMaximumLagNanos() {
+		return maximumLagNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplayStatistics[locations=" + locationCount +
+				", traceDuration=" + traceDuration +
+				", replayDurationNanos=" + replayDurationNanos +
+				", locationsPerSecond=" + getLocationsPerSecond() +
+				", meanLatencyNanos=" + getMeanLatencyNanos() +
+				", p99LatencyNanos=" + getLatencyPercentileNanos(99) +
+				", maximumLatencyNanos=" + maximumLatencyNanos +
+				", maximumLagNanos=" + maximumLagNanos + "]";
+	}
+}
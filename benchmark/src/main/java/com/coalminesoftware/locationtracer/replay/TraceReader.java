@@ -0,0 +1,19 @@
+package com.coalminesoftware.locationtracer.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import android.location.Location;
+
+/**
+ * Reads the fixes of a recorded trace, one at a time, without holding the whole trace in memory.
+ */
+public interface TraceReader extends Closeable {
+	/**
+	 * Reads the next fix in the trace into the given location, replacing its previous contents.
+	 *
+	 * @return Whether a fix was read, or false if the end of the trace was reached.
+	 * @throws IOException If the trace could not be read or is malformed.
+	 */
+	boolean readLocation(Location location) throws IOException;
+}
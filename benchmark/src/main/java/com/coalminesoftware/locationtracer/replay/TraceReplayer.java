@@ -0,0 +1,128 @@
+package com.coalminesoftware.locationtracer.replay;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+
+import com.coalminesoftware.locationtracer.alarm.VirtualAlarmTrigger;
+import com.coalminesoftware.locationtracer.listener.CachingLocationListener;
+
+/**
+ * Replays recorded traces into a {@link LocationListener} - typically a {@link CachingLocationListener}, which drives
+ * the configured transformer and store - so the library's pipeline can be exercised and measured off-device.
+ * <p>
+ * Each fix is delivered as a new {@link Location}, since listeners may retain the locations they are given.  Fixes are
+ * spaced according to the replayer's {@link ReplayPacing}, using the times they were recorded at.  When a
+ * {@link VirtualAlarmTrigger} is set, virtual time is advanced to each fix's recorded time before it is delivered, so a
+ * tracer using the trigger's scheduler reports and makes location requests as it would have while the trace was
+ * recorded, regardless of pacing.
+ */
+public class TraceReplayer {
+	private final LocationListener locationListener;
+	private final ReplayPacing pacing;
+	private VirtualAlarmTrigger virtualAlarmTrigger;
+
+	public TraceReplayer(LocationListener locationListener, ReplayPacing pacing) {
+		this.locationListener = locationListener;
+		this.pacing = pacing;
+	}
+
+	/**
+	 * @param virtualAlarmTrigger The trigger to advance as the trace progresses, or null to leave virtual time alone.
+	 */
+	public void setVirtualAlarmTrigger(VirtualAlarmTrigger virtualAlarmTrigger) {
+		this.virtualAlarmTrigger = virtualAlarmTrigger;
+	}
+
+	/**
+	 * Delivers each fix in the trace to the listener.  The reader is not closed.
+	 *
+	 * @throws InterruptedIOException If the thread is interrupted while waiting to deliver a fix.
+	 */
+	public ReplayStatistics replay(TraceReader traceReader) throws IOException {
+		ReplayStatistics statistics = new ReplayStatistics();
+		long replayStartNanos = System.nanoTime();
+		Long firstTraceTime = null;
+		long traceOffset = 0;
+
+		while(true) {
+			Location location = new Location(LocationManager.GPS_PROVIDER);
+			if(!traceReader.readLocation(location)) {
+				break;
+			}
+
+			if(firstTraceTime == null) {
+				firstTraceTime = location.getTime();
+			}
+
+			// Fixes recorded out of order are delivered immediately, without moving time backwards.
+			long previousTraceOffset = traceOffset;
+			traceOffset = Math.max(traceOffset, location.getTime() - firstTraceTime);
+			if(virtualAlarmTrigger != null) {
+				virtualAlarmTrigger.advance(traceOffset - previousTraceOffset);
+			}
+
+			long lagNanos = waitForFix(replayStartNanos, traceOffset);
+
+			long deliveryStartNanos = System.nanoTime();
+			locationListener.onLocationChanged(location);
+			statistics.recordLocation(System.nanoTime() - deliveryStartNanos, lagNanos);
+		}
+
+		statistics.setDurations(System.nanoTime() - replayStartNanos, traceOffset);
+		return statistics;
+	}
+
+	/**
+	 * Waits until the fix at the given offset into the trace is due.
+	 *
+	 * @return How long after it was due the fix is being delivered, in nanoseconds.
+	 */
+	private long waitForFix(long replayStartNanos, long traceOffset) throws InterruptedIOException {
+		if(!pacing.isPaced()) {
+			return 0;
+		}
+
+		long dueNanos = replayStartNanos + pacing.determineReplayOffsetNanos(traceOffset);
+		long remainingNanos = dueNanos - System.nanoTime();
+		if(remainingNanos <= 0) {
+			return -remainingNanos;
+		}
+
+		try {
+			Thread.sleep(remainingNanos / 1000000, (int)(remainingNanos % 1000000));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Replay was interrupted.");
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Opens a trace file for reading, as GPX if its name ends with ".gpx" and as NMEA otherwise.  The file is closed if
+	 * a reader can't be created for it.
+	 */
+	public static TraceReader openTraceFile(File file) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			if(file.getName().toLowerCase(Locale.US).endsWith(".gpx")) {
+				return new GpxTraceReader(new BufferedInputStream(inputStream));
+			} else {
+				return new NmeaTraceReader(new InputStreamReader(inputStream, "US-ASCII"));
+			}
+		} catch(IOException | RuntimeException e) {
+			inputStream.close();
+			throw e;
+		}
+	}
+}
@@ -1,54 +1,111 @@
 package com.coalminesoftware.locationtracer;
 
-import java.lang.ref.WeakReference;
-import java.util.Collection;
-import java.util.List;
+import java.util.concurrent.Executor;
 
 import android.content.Context;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.location.LocationProvider;
+import android.os.Handler;
 import android.os.Looper;
-import android.util.Log;
 
+import com.coalminesoftware.locationtracer.alarm.AlarmScheduler;
+import com.coalminesoftware.locationtracer.alarm.BaseRecurringAlarm;
 import com.coalminesoftware.locationtracer.alarm.IrregularRecurringAlarm;
 import com.coalminesoftware.locationtracer.alarm.RecurringAlarm;
 import com.coalminesoftware.locationtracer.listener.CachingLocationListener;
 import com.coalminesoftware.locationtracer.listener.DefaultLocationListener;
+import com.coalminesoftware.locationtracer.listener.HandlerThreadExecutor;
+import com.coalminesoftware.locationtracer.listener.HandoffLocationListener;
+import com.coalminesoftware.locationtracer.listener.HandoffOverflowPolicy;
+import com.coalminesoftware.locationtracer.listener.ProcessingLocationListener;
+import com.coalminesoftware.locationtracer.listener.RecordingLocationListener;
+import com.coalminesoftware.locationtracer.processing.LocationProcessingPipeline;
+import com.coalminesoftware.locationtracer.processing.LocationProcessor;
+import com.coalminesoftware.locationtracer.processing.StationaryDetector;
+import com.coalminesoftware.locationtracer.processing.StationaryDetector.StationaryStateListener;
 import com.coalminesoftware.locationtracer.provider.LocationProviderDeterminationStrategy;
 import com.coalminesoftware.locationtracer.provider.SimpleLocationProviderDeterminationStrategy;
+import com.coalminesoftware.locationtracer.reporting.AdaptiveReportInterval;
 import com.coalminesoftware.locationtracer.reporting.LocationReporter;
-import com.coalminesoftware.locationtracer.reporting.LocationReporter.ReportCompletionHandler;
+import com.coalminesoftware.locationtracer.reporting.ReportBatchLimits;
+import com.coalminesoftware.locationtracer.reporting.ReportJournal;
+import com.coalminesoftware.locationtracer.reporting.ReportingPipeline;
+import com.coalminesoftware.locationtracer.reporting.RetryListener;
+import com.coalminesoftware.locationtracer.reporting.RetryPolicy;
+import com.coalminesoftware.locationtracer.storage.BaseLocationStore;
+import com.coalminesoftware.locationtracer.storage.DurableLocationStore;
+import com.coalminesoftware.locationtracer.storage.LocationRecordStore;
 import com.coalminesoftware.locationtracer.storage.LocationStore;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStore;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStoreAdapter;
+import com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer;
 import com.coalminesoftware.locationtracer.transformation.LocationTransformer;
 import com.coalminesoftware.locationtracer.transformation.PassthroughLocationTransformer;
 
 public class LocationTracer<StorageLocation> {
-	private static final String LOGGING_TAG = "LocationTracer";
 	private static final long DEFAULT_MINIMUM_LOCATION_UPDATE_INTERVAL_DURATION = 1000;
 	private static final float DEFAULT_MINIMUM_LOCATION_UPDATE_DISTANCE = 0.0f;
+	private static final double DEFAULT_ALARM_TOLERANCE_FRACTION = 0.25;
+	private static final String LOCATION_PROCESSING_THREAD_NAME = "LocationTracer location processing";
+	private static final String REPORTING_THREAD_NAME = "LocationTracer reporting";
 
 	private Context context;
-
-	private LocationStore<StorageLocation> locationStore;
+	private AlarmScheduler alarmScheduler;
+
+	private SequencedLocationStore<StorageLocation> locationStore;
+	private DurableLocationStore<StorageLocation> durableLocationStore;
+	private BaseLocationStore<StorageLocation> baseLocationStore;
+	private LocationTransformer<StorageLocation> locationTransformer;
+	private LocationRecordStore locationRecordStore;
+	private LocationRecordTransformer locationRecordTransformer;
 	private LocationReporter<StorageLocation> locationReporter;
+	private ReportJournal reportJournal;
+
+	private ProcessingLocationListener locationListener;
+	private LocationProcessor locationProcessor;
+	private LocationHandoff locationHandoff;
+	private StationaryDetector stationaryDetector;
+	private long stationaryActiveLocationRequestInterval;
 
-	private LocationListener locationListener;
+	private double alarmToleranceFraction = DEFAULT_ALARM_TOLERANCE_FRACTION;
 
 	private ListeningSession locationListeningSession;
-	private ReportingSession reportingSession;
+	private ReportingSession<StorageLocation> reportingSession;
 
 	private LocationProviderDeterminationStrategy activeListeningLocationProviderDeterminationStrategy = new SimpleLocationProviderDeterminationStrategy(LocationManager.GPS_PROVIDER);
 	private LocationProviderDeterminationStrategy passiveListeningLocationProviderDeterminationStrategy = new SimpleLocationProviderDeterminationStrategy(LocationManager.GPS_PROVIDER);
 
 	private LocationTracer(Context context, LocationTransformer<StorageLocation> locationTransformer,
 			LocationStore<StorageLocation> locationStore, LocationReporter<StorageLocation> locationReporter) {
+		this(context, locationTransformer, null, locationStore, locationReporter);
+	}
+
+	/**
+	 * @param locationRecordTransformer Used instead of the other transformer if not null, in which case the store must be
+	 * a {@link LocationRecordStore}.
+	 */
+	private LocationTracer(Context context, LocationTransformer<StorageLocation> locationTransformer,
+			LocationRecordTransformer locationRecordTransformer, LocationStore<StorageLocation> locationStore,
+			LocationReporter<StorageLocation> locationReporter) {
 		this.context = context.getApplicationContext();
-		this.locationStore = locationStore;
+		this.locationStore = SequencedLocationStoreAdapter.adapt(locationStore);
+		if(locationStore instanceof DurableLocationStore) {
+			durableLocationStore = (DurableLocationStore<StorageLocation>)locationStore;
+		}
+		if(locationStore instanceof BaseLocationStore) {
+			baseLocationStore = (BaseLocationStore<StorageLocation>)locationStore;
+		}
+		this.locationTransformer = locationTransformer;
+		if(locationRecordTransformer != null) {
+			locationRecordStore = (LocationRecordStore)locationStore;
+			this.locationRecordTransformer = locationRecordTransformer;
+		}
 		this.locationReporter = locationReporter;
 
-		locationListener = new CachingLocationListener<StorageLocation>(locationTransformer, locationStore);
+		alarmScheduler = AlarmScheduler.getInstance(this.context);
+		locationListener = createLocationListener();
 	}
 
 	public static LocationTracer<Location> newInstance(Context context, LocationStore<Location> locationStore,
@@ -62,6 +119,16 @@ public class LocationTracer<StorageLocation> {
 		return new LocationTracer<StorageLocation>(context, locationTransformer, locationStore, locationReporter);
 	}
 
+	/**
+	 * Creates a tracer whose observed locations are written directly into the store by the given transformer, so that
+	 * storing a location allocates nothing.
+	 */
+	public static LocationTracer<Location> newInstance(Context context, LocationRecordStore locationStore,
+			LocationRecordTransformer locationRecordTransformer, LocationReporter<Location> locationReporter) {
+		return new LocationTracer<Location>(context, PassthroughLocationTransformer.INSTANCE, locationRecordTransformer,
+				locationStore, locationReporter);
+	}
+
 	/**
 	 * Starts actively requesting location updates with a minimum update interval of one second and no minimum distance.
 	 * 
@@ -85,13 +152,14 @@ public class LocationTracer<StorageLocation> {
 		String providerName = activeListeningLocationProviderDeterminationStrategy
 				.determineLocationProvider(getLocationManager());
 
+		ListeningSession listeningSession = startLocationHandoff();
 		getLocationManager().requestLocationUpdates(
 				providerName,
 				minimumLocationUpdateIntervalDuration,
 				minimumLocationUpdateDistance,
-				locationListener);
+				listeningSession.getRegisteredLocationListener());
 
-		locationListeningSession = new ListeningSession();
+		locationListeningSession = listeningSession;
 	}
 
 	/**
@@ -156,17 +224,40 @@ public class LocationTracer<StorageLocation> {
 			boolean wakeForActiveLocationRequests) {
 		verifyListeningNotInProgress();
 
+		ListeningSession listeningSession = startLocationHandoff();
 		getLocationManager().requestLocationUpdates(
 				LocationManager.PASSIVE_PROVIDER,
 				minimumLocationUpdateIntervalDuration,
 				minimumLocationUpdateDistance,
-				locationListener);
+				listeningSession.getRegisteredLocationListener());
 
-		IrregularRecurringAlarm alarm = activeLocationRequestInterval == null?
-				null :
-				startActiveLocationUpdateAlarm(activeLocationRequestInterval, wakeForActiveLocationRequests);
+		if(activeLocationRequestInterval != null) {
+			listeningSession.setActiveLocationUpdateAlarm(
+					startActiveLocationUpdateAlarm(activeLocationRequestInterval, wakeForActiveLocationRequests));
+		}
 
-		locationListeningSession = new ListeningSession(alarm);
+		locationListeningSession = listeningSession;
+	}
+
+	private ListeningSession startLocationHandoff() {
+		if(locationHandoff == null) {
+			return new ListeningSession(locationListener, null, null);
+		}
+
+		HandlerThreadExecutor locationProcessingThread = null;
+		Executor executor = locationHandoff.getExecutor();
+		if(executor == null) {
+			locationProcessingThread = new HandlerThreadExecutor(LOCATION_PROCESSING_THREAD_NAME);
+			executor = locationProcessingThread;
+		}
+
+		LocationListener handoffLocationListener = new HandoffLocationListener(
+				locationListener,
+				executor,
+				locationHandoff.getQueueCapacity(),
+				locationHandoff.getOverflowPolicy());
+
+		return new ListeningSession(handoffLocationListener, executor, locationProcessingThread);
 	}
 
 	private void verifyListeningNotInProgress() {
@@ -175,61 +266,474 @@ public class LocationTracer<StorageLocation> {
 		}
 	}
 
-	private IrregularRecurringAlarm startActiveLocationUpdateAlarm(long activeLocationRequestInterval, boolean wakeForActiveLocationRequests) {
-		IrregularRecurringAlarm alarm = new ActiveLocationUpdateAlarm(wakeForActiveLocationRequests, activeLocationRequestInterval);
+	private ActiveLocationUpdateAlarm startActiveLocationUpdateAlarm(long activeLocationRequestInterval, boolean wakeForActiveLocationRequests) {
+		ActiveLocationUpdateAlarm alarm = new ActiveLocationUpdateAlarm(wakeForActiveLocationRequests, activeLocationRequestInterval);
+		alarm.setAlarmTolerance(determineAlarmTolerance(alarm.determineLocationUpdateIntervalDuration()));
 
 		alarm.startRecurringAlarm();
 
 		return alarm;
 	}
 
+	/**
+	 * Reschedules the active location update alarm, if there is one, so that a change in the interval between active
+	 * location requests takes effect immediately rather than once the pending alarm goes off.  Must not be called from a
+	 * location processor, since stopping listening holds the tracer's lock while flushing the processor.
+	 */
+	private synchronized void rescheduleActiveLocationUpdateAlarm() {
+		if(locationListeningSession == null || locationListeningSession.getActiveLocationUpdateAlarm() == null) {
+			return;
+		}
+
+		LocationTracer<?>.ActiveLocationUpdateAlarm alarm = locationListeningSession.getActiveLocationUpdateAlarm();
+		alarm.stopRecurringAlarm();
+		alarm.setAlarmTolerance(determineAlarmTolerance(alarm.determineLocationUpdateIntervalDuration()));
+		alarm.startRecurringAlarm();
+	}
+
 	public synchronized void stopListening() {
 		verifyListeningInProgress();
 
-		getLocationManager().removeUpdates(locationListener);
+		getLocationManager().removeUpdates(locationListeningSession.getRegisteredLocationListener());
 
 		if(locationListeningSession.getActiveLocationUpdateAlarm() != null) {
 			locationListeningSession.getActiveLocationUpdateAlarm().stopRecurringAlarm();
 		}
 
+		flushLocations(locationListeningSession);
+
+		if(locationListeningSession.getLocationProcessingThread() != null) {
+			locationListeningSession.getLocationProcessingThread().shutDown();
+		}
+
 		locationListeningSession = null;
 	}
 
+	/**
+	 * Stores the locations held back by the processor.  When locations are handed off, this is done by the executor
+	 * once the locations already handed off to it have been stored.
+	 */
+	private void flushLocations(ListeningSession listeningSession) {
+		final ProcessingLocationListener listener = locationListener;
+		if(listener.getLocationProcessor() == null) {
+			return;
+		}
+
+		if(listeningSession.getLocationProcessingExecutor() == null) {
+			listener.flushLocations();
+		} else {
+			listeningSession.getLocationProcessingExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					listener.flushLocations();
+				}
+			});
+		}
+	}
+
 	private void verifyListeningInProgress() {
 		if(locationListeningSession == null) {
 			throw new IllegalStateException("Cannot stop listening when listening is not in progress.");
 		}
 	}
 
-	public synchronized void startReporting(long reportIntervalDuration, boolean wakeForReport) {
+	/**
+	 * Starts periodically reporting every stored location in a single batch.
+	 *
+	 * @see #startReporting(long, boolean, ReportBatchLimits)
+	 */
+	public void startReporting(long reportIntervalDuration, boolean wakeForReport) {
+		startReporting(reportIntervalDuration, wakeForReport, ReportBatchLimits.<StorageLocation>unlimited());
+	}
+
+	/**
+	 * Starts periodically reporting stored locations, one batch at a time.
+	 *
+	 * @see #startReporting(long, boolean, ReportBatchLimits, int)
+	 */
+	public void startReporting(long reportIntervalDuration, boolean wakeForReport,
+			ReportBatchLimits<StorageLocation> batchLimits) {
+		startReporting(reportIntervalDuration, wakeForReport, batchLimits, 1);
+	}
+
+	/**
+	 * Starts periodically reporting stored locations, holding off reports after failures according to
+	 * {@link RetryPolicy#DEFAULT}.
+	 *
+	 * @see #startReporting(long, boolean, ReportBatchLimits, int, RetryPolicy)
+	 */
+	public void startReporting(long reportIntervalDuration, boolean wakeForReport,
+			ReportBatchLimits<StorageLocation> batchLimits, int maximumInFlightBatchCount) {
+		startReporting(reportIntervalDuration, wakeForReport, batchLimits, maximumInFlightBatchCount, RetryPolicy.DEFAULT);
+	}
+
+	/**
+	 * Starts periodically reporting stored locations.  Each report reads the store a batch at a time, keeping up to the
+	 * given number of batches in flight, until no unreported locations remain or the limits' report duration is
+	 * reached.  Locations that are in flight when a report starts are not handed to the reporter again.
+	 * <p>
+	 * A failed batch ends the report in progress, and the next report is put off until the retry policy allows another
+	 * attempt, if that's later than the next report would otherwise be.  Failures never make reports more frequent than
+	 * the reporting interval.
+	 * <p>
+	 * If the store is a {@link DurableLocationStore}, reports are started, and completed batches followed up, on a
+	 * dedicated background thread, since both may sync or read the store and write to the report journal.  Otherwise,
+	 * reports are started on the thread that handles alarms.
+	 *
+	 * @param reportIntervalDuration The number of milliseconds between reports.
+	 * @param wakeForReport Whether to wake the device for reports.
+	 * @param batchLimits Limits on the size of each batch and the duration of each report.
+	 * @param maximumInFlightBatchCount The maximum number of batches that may be handed to the reporter without having
+	 * been reported.
+	 * @param retryPolicy Determines how long reporting is held off after failures, or null if every alarm should report.
+	 */
+	public synchronized void startReporting(long reportIntervalDuration, boolean wakeForReport,
+			ReportBatchLimits<StorageLocation> batchLimits, int maximumInFlightBatchCount, RetryPolicy retryPolicy) {
+		verifyReportingNotInProgress();
+
+		final HandlerThreadExecutor reportingThread = startReportingThread();
+		final ReportingPipeline<StorageLocation> reportingPipeline = createReportingPipeline(
+				batchLimits, maximumInFlightBatchCount, retryPolicy, reportingThread);
+
+		RecurringAlarm reportingAlarm = new RecurringAlarm(alarmScheduler, reportIntervalDuration, wakeForReport) {
+			@Override
+			public void handleAlarm(long alarmElapsedRealtime) {
+				startReport(reportingPipeline, reportingThread, isStoreSyncedOnReportStart());
+			}
+		};
+		reportingAlarm.setAlarmTolerance(determineAlarmTolerance(reportIntervalDuration));
+		scheduleRetries(reportingPipeline, reportingAlarm);
+		reportingAlarm.startRecurringAlarm();
+
+		reportingSession = new ReportingSession<StorageLocation>(reportingAlarm, reportingPipeline, reportingThread);
+	}
+
+	/**
+	 * Starts reporting stored locations one batch at a time, at an interval that adapts to the number of stored
+	 * locations and how long recent batches took to be reported.
+	 *
+	 * @see #startAdaptiveReporting(AdaptiveReportInterval, boolean, ReportBatchLimits, int, RetryPolicy)
+	 */
+	public void startAdaptiveReporting(AdaptiveReportInterval reportInterval, boolean wakeForReport,
+			ReportBatchLimits<StorageLocation> batchLimits) {
+		startAdaptiveReporting(reportInterval, wakeForReport, batchLimits, 1, RetryPolicy.DEFAULT);
+	}
+
+	/**
+	 * Starts reporting stored locations at an interval that adapts to the number of stored locations and how long
+	 * recent batches took to be reported: reports are put off while few locations are stored, and made more often, within
+	 * the interval's bounds, as the backlog grows.  Reports are otherwise made as described by
+	 * {@link #startReporting(long, boolean, ReportBatchLimits, int, RetryPolicy)}.
+	 *
+	 * @param reportInterval Determines the delay before each report.
+	 * @param wakeForReport Whether to wake the device for reports.
+	 * @param batchLimits Limits on the size of each batch and the duration of each report.
+	 * @param maximumInFlightBatchCount The maximum number of batches that may be handed to the reporter without having
+	 * been reported.
+	 * @param retryPolicy Determines how long reporting is held off after failures, or null if every alarm should report.
+	 */
+	public synchronized void startAdaptiveReporting(final AdaptiveReportInterval reportInterval, boolean wakeForReport,
+			ReportBatchLimits<StorageLocation> batchLimits, int maximumInFlightBatchCount, RetryPolicy retryPolicy) {
+		verifyReportingNotInProgress();
+
+		final HandlerThreadExecutor reportingThread = startReportingThread();
+		final ReportingPipeline<StorageLocation> reportingPipeline = createReportingPipeline(
+				batchLimits, maximumInFlightBatchCount, retryPolicy, reportingThread);
+
+		IrregularRecurringAlarm reportingAlarm = new IrregularRecurringAlarm(alarmScheduler, wakeForReport) {
+			@Override
+			protected long determineNextAlarmDelay(long alarmElapsedRealtime) {
+				return reportInterval.determineReportDelay(
+						locationStore.getLocationCount(),
+						reportingPipeline.getAverageBatchLatency());
+			}
+
+			@Override
+			public void handleAlarm(long alarmElapsedRealtime) {
+				startReport(reportingPipeline, reportingThread, isStoreSyncedOnReportStart());
+			}
+		};
+		reportingAlarm.setAlarmTolerance(determineAlarmTolerance(reportInterval.getMinimumInterval()));
+		scheduleRetries(reportingPipeline, reportingAlarm);
+		reportingAlarm.startRecurringAlarm();
+
+		reportingSession = new ReportingSession<StorageLocation>(reportingAlarm, reportingPipeline, reportingThread);
+	}
+
+	private long determineAlarmTolerance(long alarmIntervalDuration) {
+		return (long)(alarmIntervalDuration * alarmToleranceFraction);
+	}
+
+	private void verifyReportingNotInProgress() {
 		if(reportingSession != null) {
 			throw new IllegalStateException("Cannot start reporting when reporting is already in progress.");
 		}
+	}
 
-		RecurringAlarm reportingAlarm = new RecurringAlarm(context, reportIntervalDuration, wakeForReport) {
+	/**
+	 * @param reportingThread The thread that reports are started on, which also does the work that follows each
+	 * completed batch, or null if that work should be done on the thread that completes the batch.
+	 */
+	private ReportingPipeline<StorageLocation> createReportingPipeline(ReportBatchLimits<StorageLocation> batchLimits,
+			int maximumInFlightBatchCount, RetryPolicy retryPolicy, HandlerThreadExecutor reportingThread) {
+		ReportingPipeline<StorageLocation> reportingPipeline = new ReportingPipeline<StorageLocation>(
+				locationStore, locationReporter, batchLimits, maximumInFlightBatchCount, retryPolicy, reportJournal);
+		reportingPipeline.setClock(alarmScheduler.getClock());
+		reportingPipeline.setDispatchExecutor(reportingThread);
+
+		return reportingPipeline;
+	}
+
+	/**
+	 * Puts off the reporting alarm until the retry policy next allows a report, whenever a report fails.  The alarm is
+	 * never brought forward, so failures can only make reports less frequent than the report interval.
+	 */
+	private void scheduleRetries(ReportingPipeline<StorageLocation> reportingPipeline,
+			final BaseRecurringAlarm reportingAlarm) {
+		reportingPipeline.setRetryListener(new RetryListener() {
 			@Override
-			public void handleAlarm(long alarmElapsedRealtime) {
-				reportStoredLocations();
+			public void onRetryScheduled(long nextAttemptTime) {
+				alarmScheduler.postponeAlarm(reportingAlarm, nextAttemptTime);
+			}
+		});
+	}
+
+	/**
+	 * @return A thread to start reports on, if the store is durable, or null if reports should be started on the thread
+	 * that handles alarms.
+	 */
+	private HandlerThreadExecutor startReportingThread() {
+		return durableLocationStore == null?
+				null :
+				new HandlerThreadExecutor(REPORTING_THREAD_NAME);
+	}
+
+	private boolean isStoreSyncedOnReportStart() {
+		return durableLocationStore != null && durableLocationStore.getDurabilityPolicy().isSyncedOnReportStart();
+	}
+
+	/**
+	 * Starts a report on the given thread, or on the calling thread if it is null.
+	 *
+	 * @param syncLocationStore Whether to sync any unsynced locations before reporting.
+	 */
+	private void startReport(final ReportingPipeline<StorageLocation> reportingPipeline,
+			HandlerThreadExecutor reportingThread, final boolean syncLocationStore) {
+		Runnable reportTask = new Runnable() {
+			@Override
+			public void run() {
+				if(syncLocationStore) {
+					syncLocationStore();
+				}
+
+				reportingPipeline.report();
 			}
 		};
-		reportingAlarm.startRecurringAlarm();
 
-		reportingSession = new ReportingSession(reportingAlarm);
+		if(reportingThread == null) {
+			reportTask.run();
+		} else {
+			reportingThread.execute(reportTask);
+		}
 	}
 
+	/**
+	 * Stops periodically reporting stored locations.
+	 *
+	 * @param reportUnreportedLocations Whether to report stored locations one last time.  If the store is a
+	 * {@link DurableLocationStore}, any unsynced locations are synced first.
+	 */
 	public synchronized void stopReporting(boolean reportUnreportedLocations) {
+		ReportingPipeline<StorageLocation> reportingPipeline = reportingSession.getReportingPipeline();
+		HandlerThreadExecutor reportingThread = reportingSession.getReportingThread();
+
 		reportingSession.getReportingAlarm().stopRecurringAlarm();
 		reportingSession = null;
 
 		if(reportUnreportedLocations) {
-			reportStoredLocations();
+			startReport(reportingPipeline, reportingThread, true);
+		}
+
+		if(reportingThread != null) {
+			// Batches completed once the thread has stopped are finished on the reporter's thread, rather than lost.
+			// Those completed before now are finished on the thread, since their tasks precede its shutdown.
+			reportingPipeline.setDispatchExecutor(null);
+			reportingThread.shutDown();
+		}
+	}
+
+	private void syncLocationStore() {
+		if(durableLocationStore != null && durableLocationStore.getUnsyncedLocationCount() > 0) {
+			durableLocationStore.sync();
+		}
+	}
+
+	/**
+	 * Records the batches that may have been sent without being acknowledged in the given journal, so that after a
+	 * restart they're reported first and under the same batch IDs.  Takes effect the next time reporting starts.
+	 *
+	 * @param reportJournal The journal, or null if batches should be forgotten when the process dies.
+	 * @throws IllegalStateException If the tracer's store isn't a {@link DurableLocationStore}, since the journal
+	 * refers to locations by sequence numbers that must survive a restart.
+	 */
+	public synchronized void setReportJournal(ReportJournal reportJournal) {
+		if(reportJournal != null && durableLocationStore == null) {
+			throw new IllegalStateException("A report journal can only be used with a durable location store.");
+		}
+
+		this.reportJournal = reportJournal;
+	}
+
+	/**
+	 * Hands observed locations off to a dedicated background thread to be transformed and stored, rather than doing
+	 * so on the thread that delivers location updates.  The thread is started when listening starts and stops, once
+	 * any queued locations have been stored, when listening stops.
+	 *
+	 * @param handoffQueueCapacity The maximum number of locations waiting to be transformed and stored.
+	 * @param overflowPolicy Determines what happens to a location that is observed while the queue is full.
+	 */
+	public synchronized void setBackgroundLocationProcessing(int handoffQueueCapacity,
+			HandoffOverflowPolicy overflowPolicy) {
+		verifyListeningNotInProgress();
+
+		locationHandoff = new LocationHandoff(null, handoffQueueCapacity, overflowPolicy);
+	}
+
+	/**
+	 * Hands observed locations off to the given executor to be transformed and stored, rather than doing so on the
+	 * thread that delivers location updates.  Locations are handed to the executor one at a time, so the transformer
+	 * and store are never called concurrently.
+	 *
+	 * @param executor Runs the tasks that transform and store locations.
+	 * @param handoffQueueCapacity The maximum number of locations waiting to be transformed and stored.
+	 * @param overflowPolicy Determines what happens to a location that is observed while the queue is full.
+	 */
+	public synchronized void setLocationProcessingExecutor(Executor executor, int handoffQueueCapacity,
+			HandoffOverflowPolicy overflowPolicy) {
+		verifyListeningNotInProgress();
+
+		locationHandoff = new LocationHandoff(executor, handoffQueueCapacity, overflowPolicy);
+	}
+
+	/**
+	 * Sets how late the tracer's alarms may go off, as a fraction of their intervals, so that the
+	 * {@link AlarmScheduler} can handle alarms whose windows overlap - such as the reporting alarm and the active
+	 * location update alarm - in a single wakeup.  Adaptive reporting alarms use their minimum interval.  Takes effect the
+	 * next time an alarm is started.
+	 *
+	 * @param alarmToleranceFraction The tolerance as a fraction of each alarm's interval.  Defaults to a quarter.
+	 */
+	public synchronized void setAlarmToleranceFraction(double alarmToleranceFraction) {
+		if(alarmToleranceFraction < 0) {
+			throw new IllegalArgumentException("Alarm tolerance fraction cannot be negative.");
 		}
+
+		this.alarmToleranceFraction = alarmToleranceFraction;
 	}
 
-	private void reportStoredLocations() {
-		if(locationStore.getLocationCount() > 0) {
-			List<StorageLocation> locations = locationStore.getLocations();
-			locationReporter.reportLocations(locations, new LocationRemovingReportCompletionHandler<StorageLocation>(locationStore));
+	/**
+	 * Sets the scheduler that the tracer's alarms are scheduled with.  The scheduler's clock is also used to timestamp
+	 * observed and stored locations and to time reports, so a scheduler built with a
+	 * {@link com.coalminesoftware.locationtracer.time.VirtualClock} and
+	 * {@link com.coalminesoftware.locationtracer.alarm.VirtualAlarmTrigger} lets the tracer be run in simulated time.
+	 * Cannot be called while listening or reporting.
+	 *
+	 * @param alarmScheduler The scheduler.  Defaults to {@link AlarmScheduler#getInstance(Context)}.
+	 */
+	public synchronized void setAlarmScheduler(AlarmScheduler alarmScheduler) {
+		verifyListeningNotInProgress();
+		verifyReportingNotInProgress();
+
+		this.alarmScheduler = alarmScheduler;
+		if(baseLocationStore != null) {
+			baseLocationStore.setClock(alarmScheduler.getClock());
+		}
+		locationListener = createLocationListener();
+	}
+
+	private ProcessingLocationListener createLocationListener() {
+		ProcessingLocationListener listener = locationRecordTransformer != null?
+				new RecordingLocationListener(locationRecordTransformer, locationRecordStore, alarmScheduler.getClock()) :
+				new CachingLocationListener<StorageLocation>(locationTransformer, locationStore, alarmScheduler.getClock());
+		listener.setLocationProcessor(determineListeningLocationProcessor());
+
+		return listener;
+	}
+
+	/**
+	 * @return The processor that observed locations pass through: the one set by
+	 * {@link #setLocationProcessor(LocationProcessor)}, followed by the stationary detector if there is one.
+	 */
+	private LocationProcessor determineListeningLocationProcessor() {
+		if(stationaryDetector == null || stationaryDetector == locationProcessor) {
+			return locationProcessor;
+		}
+
+		return locationProcessor == null?
+				stationaryDetector :
+				new LocationProcessingPipeline(locationProcessor, stationaryDetector);
+	}
+
+	/**
+	 * Sets a processor that observed locations pass through before being transformed and stored, such as a
+	 * {@link com.coalminesoftware.locationtracer.processing.LocationProcessingPipeline} of filters that drops
+	 * inaccurate and duplicate fixes.  When listening stops, locations that the processor is holding back are stored.
+	 * Cannot be called while listening.
+	 *
+	 * @param locationProcessor The processor, or null if observed locations should all be stored.
+	 */
+	public synchronized void setLocationProcessor(LocationProcessor locationProcessor) {
+		verifyListeningNotInProgress();
+
+		this.locationProcessor = locationProcessor;
+		locationListener.setLocationProcessor(determineListeningLocationProcessor());
+	}
+
+	/**
+	 * Requests locations less often while the given detector judges the device to be stationary.  When passively
+	 * listening with active location requests, the requests are made at the given interval, rather than the one given
+	 * when listening started, from the time the device becomes stationary until it starts moving again.  Requests return
+	 * to the original interval as soon as the detector sees significant movement.
+	 * <p>
+	 * The tracer passes observed locations through the detector after the processor given to
+	 * {@link #setLocationProcessor(LocationProcessor)}, so it only sees fixes that make it past any filters there, and
+	 * shouldn't also be made part of that processor.  The tracer replaces the detector's
+	 * {@link StationaryStateListener}, which posts the rescheduling of active location requests to the main thread
+	 * rather than taking the tracer's lock on the thread processing locations.  Cannot be called while listening.
+	 *
+	 * @param stationaryDetector The detector, or null if requests should always be made at the same interval.
+	 * @param stationaryActiveLocationRequestInterval How long to wait since the last observed location before actively
+	 * requesting another while the device is stationary.
+	 */
+	public synchronized void setStationaryDetector(StationaryDetector stationaryDetector,
+			long stationaryActiveLocationRequestInterval) {
+		verifyListeningNotInProgress();
+
+		if(this.stationaryDetector != null) {
+			this.stationaryDetector.setStationaryStateListener(null);
+		}
+
+		this.stationaryDetector = stationaryDetector;
+		this.stationaryActiveLocationRequestInterval = stationaryActiveLocationRequestInterval;
+		locationListener.setLocationProcessor(determineListeningLocationProcessor());
+
+		if(stationaryDetector != null) {
+			final Handler mainHandler = new Handler(Looper.getMainLooper());
+			final Runnable rescheduler = new Runnable() {
+				@Override
+				public void run() {
+					rescheduleActiveLocationUpdateAlarm();
+				}
+			};
+
+			stationaryDetector.setStationaryStateListener(new StationaryStateListener() {
+				@Override
+				public void onStationaryStateChanged(boolean stationary) {
+					// The detector is called within the processor's lock, which stopListening() takes while holding the
+					// tracer's lock, so the tracer's lock can't be taken here.
+					mainHandler.post(rescheduler);
+				}
+			});
 		}
 	}
 
@@ -256,52 +760,127 @@ public class LocationTracer<StorageLocation> {
 		this.passiveListeningLocationProviderDeterminationStrategy = passiveListeningLocationProviderDeterminationStrategy;
 	}
 
-	private static class ReportingSession {
-		private RecurringAlarm reportingAlarm;
+	private static class ReportingSession<StorageLocation> {
+		private BaseRecurringAlarm reportingAlarm;
+		private ReportingPipeline<StorageLocation> reportingPipeline;
+		private HandlerThreadExecutor reportingThread;
 
-		public ReportingSession(RecurringAlarm reportingAlarm) {
+		/**
+		 * @param reportingThread The thread that reports are started on, or null if they're started on the alarm's thread.
+		 */
+		public ReportingSession(BaseRecurringAlarm reportingAlarm, ReportingPipeline<StorageLocation> reportingPipeline,
+				HandlerThreadExecutor reportingThread) {
 			this.reportingAlarm = reportingAlarm;
+			this.reportingPipeline = reportingPipeline;
+			this.reportingThread = reportingThread;
 		}
 
-		public RecurringAlarm getReportingAlarm() {
+		public BaseRecurringAlarm getReportingAlarm() {
 			return reportingAlarm;
 		}
+
+		public ReportingPipeline<StorageLocation> getReportingPipeline() {
+			return reportingPipeline;
+		}
+
+		public HandlerThreadExecutor getReportingThread() {
+			return reportingThread;
+		}
 	}
 
 	private static class ListeningSession {
-		private IrregularRecurringAlarm activeLocationUpdateAlarm;
+		private LocationListener registeredLocationListener;
+		private Executor locationProcessingExecutor;
+		private HandlerThreadExecutor locationProcessingThread;
+		private LocationTracer<?>.ActiveLocationUpdateAlarm activeLocationUpdateAlarm;
+
+		/**
+		 * @param locationProcessingExecutor The executor that locations are handed off to, or null if they aren't.
+		 * @param locationProcessingThread The thread that locations are handed off to, if it was started for the session.
+		 */
+		public ListeningSession(LocationListener registeredLocationListener, Executor locationProcessingExecutor,
+				HandlerThreadExecutor locationProcessingThread) {
+			this.registeredLocationListener = registeredLocationListener;
+			this.locationProcessingExecutor = locationProcessingExecutor;
+			this.locationProcessingThread = locationProcessingThread;
+		}
 
-		public ListeningSession() { }
+		public LocationListener getRegisteredLocationListener() {
+			return registeredLocationListener;
+		}
 
-		public ListeningSession(IrregularRecurringAlarm activeLocationUpdateAlarm) {
-			this.activeLocationUpdateAlarm = activeLocationUpdateAlarm;
+		public Executor getLocationProcessingExecutor() {
+			return locationProcessingExecutor;
 		}
 
-		public IrregularRecurringAlarm getActiveLocationUpdateAlarm() {
+		public HandlerThreadExecutor getLocationProcessingThread() {
+			return locationProcessingThread;
+		}
+
+		public LocationTracer<?>.ActiveLocationUpdateAlarm getActiveLocationUpdateAlarm() {
 			return activeLocationUpdateAlarm;
 		}
+
+		public void setActiveLocationUpdateAlarm(LocationTracer<?>.ActiveLocationUpdateAlarm activeLocationUpdateAlarm) {
+			this.activeLocationUpdateAlarm = activeLocationUpdateAlarm;
+		}
+	}
+
+	private static class LocationHandoff {
+		private Executor executor;
+		private int queueCapacity;
+		private HandoffOverflowPolicy overflowPolicy;
+
+		/**
+		 * @param executor The executor that locations are handed off to, or null if a dedicated thread should be used.
+		 */
+		public LocationHandoff(Executor executor, int queueCapacity, HandoffOverflowPolicy overflowPolicy) {
+			this.executor = executor;
+			this.queueCapacity = queueCapacity;
+			this.overflowPolicy = overflowPolicy;
+		}
+
+		public Executor getExecutor() {
+			return executor;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public HandoffOverflowPolicy getOverflowPolicy() {
+			return overflowPolicy;
+		}
 	}
 
+	/**
+	 * Actively requests a location once the interval has passed without one being observed.  Times are measured from
+	 * the last location the tracer's listener observed, before it passed through the location processor, rather than
+	 * from the last location the store accepted, so that fixes dropped by filters or held back by processors don't
+	 * cause additional active requests.
+	 */
 	public class ActiveLocationUpdateAlarm extends IrregularRecurringAlarm {
+		/** The listener when listening started, which can't be replaced until listening stops. */
+		private final ProcessingLocationListener observingLocationListener = locationListener;
 		private long locationUpdateIntervalDuration;
 
 		public ActiveLocationUpdateAlarm(boolean wakeForAlarm, long locationUpdateIntervalDuration) {
-			super(context, wakeForAlarm);
+			super(alarmScheduler, wakeForAlarm);
 
 			this.locationUpdateIntervalDuration = locationUpdateIntervalDuration;
 		}
 
 		@Override
 		protected long determineNextAlarmDelay(long alarmTime) {
-			Long timeElapsed = determineTimeElapsedSinceLastLocationAcceptance(alarmTime);
+			Long timeElapsed = determineTimeElapsedSinceLastLocationObservation(alarmTime);
 			return timeElapsed == null || hasAlarmExpired(timeElapsed)?
-					locationUpdateIntervalDuration :
+					determineLocationUpdateIntervalDuration() :
 					determineRemainingTime(timeElapsed);
 		}
 
 		@Override
 		public void handleAlarm(long alarmTime) {
-			Long timeElapsed = determineTimeElapsedSinceLastLocationAcceptance(alarmTime);
+			Long timeElapsed = determineTimeElapsedSinceLastLocationObservation(alarmTime);
 			if(timeElapsed == null || hasAlarmExpired(timeElapsed)) {
 				// Since a passive listener should already be listening for the location update that this request hopes
 				// to cause, a no-op location listener is used to avoid offering duplicate updates to the cache.
@@ -312,42 +891,31 @@ public class LocationTracer<StorageLocation> {
 			}
 		}
 
-		private Long determineTimeElapsedSinceLastLocationAcceptance(long alarmTime) {
-			Long lastLocationAcceptanceTime = locationStore.getLastLocationAcceptanceTime();
-			return lastLocationAcceptanceTime == null?
+		private Long determineTimeElapsedSinceLastLocationObservation(long alarmTime) {
+			Long lastLocationObservationTime = observingLocationListener.getLastLocationObservationTime();
+			return lastLocationObservationTime == null?
 					null :
-					alarmTime - lastLocationAcceptanceTime;
+					alarmTime - lastLocationObservationTime;
 		}
 
 		private long determineRemainingTime(long timeElapsed) {
-			return locationUpdateIntervalDuration - timeElapsed;
+			return determineLocationUpdateIntervalDuration() - timeElapsed;
 		}
 
 		private boolean hasAlarmExpired(long timeElapsed) {
-			return timeElapsed >= locationUpdateIntervalDuration;
+			return timeElapsed >= determineLocationUpdateIntervalDuration();
 		}
-	}
 
-	/**
-	 * {@link ReportCompletionHandler} implementation that removes locations from the store once reported.
-	 */
-	private static class LocationRemovingReportCompletionHandler<StorageLocation> implements ReportCompletionHandler<StorageLocation> {
-		private final WeakReference<LocationStore<StorageLocation>> storeReference;
-		
-		public LocationRemovingReportCompletionHandler(LocationStore<StorageLocation> locationStore) {
-			storeReference = new WeakReference<LocationStore<StorageLocation>>(locationStore);
+		/**
+		 * @return The stationary interval if the stationary detector judges the device to be stationary, or the interval
+		 * given when listening started otherwise.
+		 */
+		private long determineLocationUpdateIntervalDuration() {
+			return stationaryDetector != null && stationaryDetector.isStationary()?
+					stationaryActiveLocationRequestInterval :
+					locationUpdateIntervalDuration;
 		}
-
-		@Override
-		public void onLocationReportComplete(Collection<StorageLocation> locations) {
-			LocationStore<StorageLocation> store = storeReference.get();
-			if(store == null) {
-				Log.w(LOGGING_TAG, "Location store no longer exists. Ignoring reporting completion.");
-			} else {
-				store.removeLocations(locations);
-			}
-		}			
-	};
+	}
 }
 
 
@@ -0,0 +1,76 @@
+package com.coalminesoftware.locationtracer.alarm;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * An {@link AlarmTrigger} that arms the {@link AlarmManager} with one {@link PendingIntent} for wakeup times and another
+ * for times that don't wake the device, and dispatches alarms from a single {@link BroadcastReceiver}.
+ */
+public class AlarmManagerTrigger implements AlarmTrigger {
+	private static final String DISPATCH_ACTION = "com.coalminesoftware.locationtracer.DISPATCH_ALARMS";
+	private static final int WAKEUP_REQUEST_CODE = 0;
+	private static final int NON_WAKEUP_REQUEST_CODE = 1;
+
+	private final Context context;
+	private final PendingIntent wakeupDispatchIntent;
+	private final PendingIntent nonWakeupDispatchIntent;
+	private final IntentFilter dispatchIntentFilter;
+	private volatile AlarmScheduler alarmScheduler;
+
+	private final BroadcastReceiver dispatchReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			alarmScheduler.dispatchAlarms(alarmScheduler.getClock().elapsedRealtime());
+		}
+	};
+
+	public AlarmManagerTrigger(Context context) {
+		this.context = context.getApplicationContext();
+
+		String dispatchAction = context.getPackageName() + "/" + DISPATCH_ACTION;
+		wakeupDispatchIntent = PendingIntent.getBroadcast(this.context, WAKEUP_REQUEST_CODE,
+				new Intent(dispatchAction), PendingIntent.FLAG_UPDATE_CURRENT);
+		nonWakeupDispatchIntent = PendingIntent.getBroadcast(this.context, NON_WAKEUP_REQUEST_CODE,
+				new Intent(dispatchAction), PendingIntent.FLAG_UPDATE_CURRENT);
+		dispatchIntentFilter = new IntentFilter(dispatchAction);
+	}
+
+	@Override
+	public void register(AlarmScheduler alarmScheduler) {
+		this.alarmScheduler = alarmScheduler;
+		context.registerReceiver(dispatchReceiver, dispatchIntentFilter);
+	}
+
+	@Override
+	public void unregister() {
+		context.unregisterReceiver(dispatchReceiver);
+	}
+
+	@Override
+	public void arm(long elapsedRealtime, boolean wakeup) {
+		// As of Android 4.4, set() is inexact, as the setInexactRepeating() alarms used before the scheduler existed
+		// were, so the system may still batch dispatches with other apps' alarms.  Earlier versions dispatch exactly.
+		getAlarmManager().set(
+				wakeup? AlarmManager.ELAPSED_REALTIME_WAKEUP : AlarmManager.ELAPSED_REALTIME,
+				elapsedRealtime,
+				getDispatchIntent(wakeup));
+	}
+
+	@Override
+	public void cancel(boolean wakeup) {
+		getAlarmManager().cancel(getDispatchIntent(wakeup));
+	}
+
+	private PendingIntent getDispatchIntent(boolean wakeup) {
+		return wakeup? wakeupDispatchIntent : nonWakeupDispatchIntent;
+	}
+
+	private AlarmManager getAlarmManager() {
+		return (AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
+	}
+}
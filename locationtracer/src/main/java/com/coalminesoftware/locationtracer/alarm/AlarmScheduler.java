@@ -0,0 +1,349 @@
+package com.coalminesoftware.locationtracer.alarm;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import android.app.AlarmManager;
+import android.content.Context;
+
+import com.coalminesoftware.locationtracer.time.Clock;
+import com.coalminesoftware.locationtracer.time.ElapsedRealtimeClock;
+
+/**
+ * Multiplexes recurring alarms over a single {@link AlarmTrigger}, arming only one time with it at a time.  The
+ * scheduler returned by {@link #getInstance(Context)} is shared by every alarm in the process and arms a single
+ * {@link AlarmManager} alarm.  Schedulers created with a {@link com.coalminesoftware.locationtracer.time.VirtualClock}
+ * and a {@link VirtualAlarmTrigger} run alarms in virtual time.
+ * <p>
+ * Each alarm may go off at any point in a window from its deadline to its deadline plus its tolerance.  Alarms are kept
+ * in a queue ordered by the ends of their windows.  The time armed is the latest deadline that isn't after the earliest
+ * window end, so an alarm whose window overlaps no other goes off at its own deadline, while alarms whose windows
+ * overlap share a single wakeup.  When it goes off, every alarm whose window has opened is handled.  Each handled alarm
+ * is then queued again one delay after its previous deadline, so that going off late in its window doesn't stretch its
+ * interval, and the next time is armed.
+ * <p>
+ * The time for the alarms that wake the device is armed as a wakeup time, and the time for all alarms is armed as a time
+ * that doesn't wake the device, unless the wakeup time comes first.  Alarms that don't wake the device therefore never
+ * cause a wakeup, but go off alongside the next one if the device is asleep.
+ */
+public class AlarmScheduler {
+	private static AlarmScheduler instance;
+
+	private final Clock clock;
+	private final AlarmTrigger alarmTrigger;
+
+	private static final Comparator<ScheduledAlarm> LATEST_TIME_ORDER = new Comparator<ScheduledAlarm>() {
+		@Override
+		public int compare(ScheduledAlarm alarm1, ScheduledAlarm alarm2) {
+			return alarm1.getLatestTime() < alarm2.getLatestTime()? -1 :
+					alarm1.getLatestTime() > alarm2.getLatestTime()? 1 :
+					0;
+		}
+	};
+
+	/** Every queued alarm. */
+	private final PriorityQueue<ScheduledAlarm> alarmQueue = new PriorityQueue<>(11, LATEST_TIME_ORDER);
+	/** The queued alarms that wake the device. */
+	private final PriorityQueue<ScheduledAlarm> wakeupAlarmQueue = new PriorityQueue<>(11, LATEST_TIME_ORDER);
+	/** The entry of each started alarm, whether it is queued or being handled. */
+	private final Map<BaseRecurringAlarm, ScheduledAlarm> scheduledAlarms = new HashMap<>();
+
+	private boolean triggerRegistered;
+	private Long armedWakeupTime;
+	private Long armedNonWakeupTime;
+
+	private int dispatchCount;
+	private int savedWakeupCount;
+
+	public AlarmScheduler(Clock clock, AlarmTrigger alarmTrigger) {
+		this.clock = clock;
+		this.alarmTrigger = alarmTrigger;
+	}
+
+	/**
+	 * @return The scheduler shared by every alarm in the process, which uses the device's elapsed realtime and arms
+	 * alarms with the {@link AlarmManager}.
+	 */
+	public static synchronized AlarmScheduler getInstance(Context context) {
+		if(instance == null) {
+			instance = new AlarmScheduler(ElapsedRealtimeClock.INSTANCE, new AlarmManagerTrigger(context));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Queues the alarm to go off at the given deadline, replacing its current deadline if it is already scheduled.
+	 *
+	 * @param deadline The elapsed realtime at which the alarm should go off.  It may go off as late as its tolerance
+	 * allows after that time.
+	 */
+	public synchronized void scheduleAlarm(BaseRecurringAlarm alarm, long deadline) {
+		removeAlarm(alarm);
+		queueAlarm(new ScheduledAlarm(alarm, deadline));
+
+		armEarliestTime();
+	}
+
+	/**
+	 * Moves a started alarm to the given deadline if its next deadline is earlier, after which it recurs as usual.
+	 * Unlike {@link #scheduleAlarm(BaseRecurringAlarm, long)}, this does nothing if the alarm has been stopped.  If the
+	 * alarm is being handled, it is queued at the later of the given deadline and its next deadline.
+	 */
+	public synchronized void postponeAlarm(BaseRecurringAlarm alarm, long deadline) {
+		ScheduledAlarm scheduledAlarm = scheduledAlarms.get(alarm);
+		if(scheduledAlarm == null) {
+			return;
+		}
+
+		if(alarmQueue.contains(scheduledAlarm)) {
+			if(deadline > scheduledAlarm.getDeadline()) {
+				scheduleAlarm(alarm, deadline);
+			}
+		} else {
+			scheduledAlarm.postpone(deadline);
+		}
+	}
+
+	/**
+	 * Removes the alarm from the queue.  If the alarm is being handled, it won't be queued again afterwards.
+	 */
+	public synchronized void cancelAlarm(BaseRecurringAlarm alarm) {
+		removeAlarm(alarm);
+
+		armEarliestTime();
+	}
+
+	private void queueAlarm(ScheduledAlarm scheduledAlarm) {
+		scheduledAlarms.put(scheduledAlarm.getAlarm(), scheduledAlarm);
+		alarmQueue.add(scheduledAlarm);
+		if(scheduledAlarm.getAlarm().isWakeForAlarm()) {
+			wakeupAlarmQueue.add(scheduledAlarm);
+		}
+	}
+
+	private void removeAlarm(BaseRecurringAlarm alarm) {
+		ScheduledAlarm scheduledAlarm = scheduledAlarms.remove(alarm);
+		if(scheduledAlarm != null) {
+			dequeueAlarm(scheduledAlarm);
+		}
+	}
+
+	private void dequeueAlarm(ScheduledAlarm scheduledAlarm) {
+		alarmQueue.remove(scheduledAlarm);
+		wakeupAlarmQueue.remove(scheduledAlarm);
+	}
+
+	/**
+	 * Handles every alarm whose deadline has passed, and queues each of them again at its next deadline.  An alarm is
+	 * queued again even if handling it throws, and if it does, the due alarms that weren't yet handled are queued at
+	 * their current deadlines so that they go off straight away.  Called by the scheduler's {@link AlarmTrigger}.
+	 *
+	 * @param time The current elapsed realtime.
+	 */
+	public void dispatchAlarms(long time) {
+		List<ScheduledAlarm> dueAlarms = new ArrayList<>();
+		synchronized(this) {
+			for(ScheduledAlarm scheduledAlarm : alarmQueue) {
+				if(scheduledAlarm.getDeadline() <= time) {
+					dueAlarms.add(scheduledAlarm);
+				}
+			}
+			for(ScheduledAlarm dueAlarm : dueAlarms) {
+				dequeueAlarm(dueAlarm);
+			}
+
+			if(!dueAlarms.isEmpty()) {
+				dispatchCount++;
+				savedWakeupCount += countSavedWakeups(dueAlarms);
+			}
+
+			// Whichever armed time went off, both are armed again.
+			armedWakeupTime = null;
+			armedNonWakeupTime = null;
+			armEarliestTime();
+		}
+
+		int handledAlarmCount = 0;
+		try {
+			for(ScheduledAlarm dueAlarm : dueAlarms) {
+				BaseRecurringAlarm alarm = dueAlarm.getAlarm();
+				handledAlarmCount++;
+				try {
+					alarm.handleAlarm(time);
+				} finally {
+					requeueAlarm(dueAlarm, determineNextDeadline(dueAlarm, time));
+				}
+			}
+		} finally {
+			for(ScheduledAlarm dueAlarm : dueAlarms.subList(handledAlarmCount, dueAlarms.size())) {
+				requeueAlarm(dueAlarm, dueAlarm.getDeadline());
+			}
+		}
+	}
+
+	/**
+	 * @return The number of wakeup alarms among the due alarms beyond the one whose wakeup they shared.  Alarms that
+	 * don't wake the device never needed a wakeup of their own, so they aren't counted.
+	 */
+	private static int countSavedWakeups(List<ScheduledAlarm> dueAlarms) {
+		int wakeupAlarmCount = 0;
+		for(ScheduledAlarm dueAlarm : dueAlarms) {
+			if(dueAlarm.getAlarm().isWakeForAlarm()) {
+				wakeupAlarmCount++;
+			}
+		}
+
+		return Math.max(0, wakeupAlarmCount - 1);
+	}
+
+	/**
+	 * @return One delay after the alarm's previous deadline, or, if that has already passed, as when an alarm that
+	 * doesn't wake the device waited for the device to wake, one delay from now.
+	 */
+	private long determineNextDeadline(ScheduledAlarm dueAlarm, long time) {
+		long delay = dueAlarm.getAlarm().determineNextAlarmDelay(time);
+		long nextDeadline = dueAlarm.getDeadline() + delay;
+
+		long currentTime = clock.elapsedRealtime();
+		return nextDeadline > currentTime?
+				nextDeadline :
+				currentTime + delay;
+	}
+
+	private synchronized void requeueAlarm(ScheduledAlarm dueAlarm, long deadline) {
+		// The alarm may have been stopped or rescheduled while it was being handled.
+		BaseRecurringAlarm alarm = dueAlarm.getAlarm();
+		if(scheduledAlarms.get(alarm) == dueAlarm) {
+			queueAlarm(new ScheduledAlarm(alarm, Math.max(deadline, dueAlarm.getPostponedDeadline())));
+			armEarliestTime();
+		}
+	}
+
+	/**
+	 * Arms the dispatch time of the queued wakeup alarms as a wakeup time, and the dispatch time of every queued alarm,
+	 * if it's earlier, as a time that doesn't wake the device.  Times that are no longer needed are cancelled.  The
+	 * trigger is only registered while alarms are started.
+	 */
+	private void armEarliestTime() {
+		if(alarmQueue.isEmpty()) {
+			armedWakeupTime = armTime(null, armedWakeupTime, true);
+			armedNonWakeupTime = armTime(null, armedNonWakeupTime, false);
+			if(triggerRegistered && scheduledAlarms.isEmpty()) {
+				alarmTrigger.unregister();
+				triggerRegistered = false;
+			}
+			return;
+		}
+
+		if(!triggerRegistered) {
+			alarmTrigger.register(this);
+			triggerRegistered = true;
+		}
+
+		Long wakeupTime = wakeupAlarmQueue.isEmpty()? null : determineDispatchTime(wakeupAlarmQueue);
+		long earliestTime = determineDispatchTime(alarmQueue);
+		// Alarms that don't wake the device go off with the wakeup if it's no later than they would.
+		Long nonWakeupTime = wakeupTime != null && wakeupTime <= earliestTime? null : earliestTime;
+
+		armedWakeupTime = armTime(wakeupTime, armedWakeupTime, true);
+		armedNonWakeupTime = armTime(nonWakeupTime, armedNonWakeupTime, false);
+	}
+
+	/**
+	 * @return The latest deadline among the queued alarms that isn't after the earliest end of their windows, at which
+	 * the alarm whose window ends first goes off alongside as many others as possible.
+	 */
+	private static long determineDispatchTime(PriorityQueue<ScheduledAlarm> queue) {
+		long earliestLatestTime = queue.peek().getLatestTime();
+
+		long dispatchTime = Long.MIN_VALUE;
+		for(ScheduledAlarm scheduledAlarm : queue) {
+			long deadline = scheduledAlarm.getDeadline();
+			if(deadline <= earliestLatestTime && deadline > dispatchTime) {
+				dispatchTime = deadline;
+			}
+		}
+
+		return dispatchTime;
+	}
+
+	/**
+	 * @param time The time to arm, or null if no time of the given kind should be armed.
+	 * @param armedTime The time of the given kind that is currently armed, or null if none is.
+	 * @return The time of the given kind that is now armed.
+	 */
+	private Long armTime(Long time, Long armedTime, boolean wakeup) {
+		if(time == null) {
+			if(armedTime != null) {
+				alarmTrigger.cancel(wakeup);
+			}
+		} else if(!time.equals(armedTime)) {
+			alarmTrigger.arm(time, wakeup);
+		}
+
+		return time;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	/** @return The number of alarms that are started. */
+	public synchronized int getScheduledAlarmCount() {
+		return scheduledAlarms.size();
+	}
+
+	/** @return The number of times that alarms have gone off. */
+	public synchronized int getDispatchCount() {
+		return dispatchCount;
+	}
+
+	/**
+	 * @return The number of wakeup alarms that went off alongside another wakeup alarm, sharing its wakeup rather than
+	 * needing their own.
+	 */
+	public synchronized int getSavedWakeupCount() {
+		return savedWakeupCount;
+	}
+
+	private static class ScheduledAlarm {
+		private final BaseRecurringAlarm alarm;
+		private final long deadline;
+		private final long latestTime;
+		/** The earliest deadline at which the alarm may be queued again once it has been handled. */
+		private long postponedDeadline = Long.MIN_VALUE;
+
+		public ScheduledAlarm(BaseRecurringAlarm alarm, long deadline) {
+			this.alarm = alarm;
+			this.deadline = deadline;
+
+			latestTime = deadline + alarm.getAlarmTolerance();
+		}
+
+		public BaseRecurringAlarm getAlarm() {
+			return alarm;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		/** @return The end of the alarm's window, after which it shouldn't be put off any longer. */
+		public long getLatestTime() {
+			return latestTime;
+		}
+
+		public void postpone(long deadline) {
+			postponedDeadline = Math.max(postponedDeadline, deadline);
+		}
+
+		public long getPostponedDeadline() {
+			return postponedDeadline;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.coalminesoftware.locationtracer.alarm;
+
+/**
+ * Wakes an {@link AlarmScheduler} when the time it has armed arrives, by calling
+ * {@link AlarmScheduler#dispatchAlarms(long)}.
+ */
+public interface AlarmTrigger {
+	/**
+	 * Starts listening for armed times on the scheduler's behalf.  Called before the first time is armed.
+	 */
+	void register(AlarmScheduler alarmScheduler);
+
+	/**
+	 * Stops listening for armed times.  Called once no alarms are started.
+	 */
+	void unregister();
+
+	/**
+	 * Replaces the armed time of the given kind, if any, with the given time.  A wakeup time and a time that doesn't
+	 * wake the device may be armed at once, and alarms are dispatched at each of them.
+	 *
+	 * @param elapsedRealtime The time at which to dispatch alarms.
+	 * @param wakeup Whether the device should be woken at that time.
+	 */
+	void arm(long elapsedRealtime, boolean wakeup);
+
+	/**
+	 * Cancels the armed time of the given kind, if any.
+	 */
+	void cancel(boolean wakeup);
+}
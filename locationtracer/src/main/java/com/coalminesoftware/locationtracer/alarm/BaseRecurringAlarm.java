@@ -1,91 +1,63 @@
 package com.coalminesoftware.locationtracer.alarm;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.os.SystemClock;
 
-public abstract class BaseRecurringAlarm extends BroadcastReceiver {
-	private static final String BASE_ALARM_ACTION = "com.coalminesoftware.locationtracer.TRIGGER_RECURRING_ALARM";
-
-	private static int generatedActionCount = 0;
-
-	private Context context;
-	private int alarmType;
-
-	private String alarmAction;
-	private PendingIntent alarmIntent;
+/**
+ * An alarm that goes off repeatedly, scheduled by the process's {@link AlarmScheduler}.  An alarm with a tolerance may
+ * go off up to that long after its deadline, allowing the scheduler to handle it in the same wakeup as other alarms.
+ */
+public abstract class BaseRecurringAlarm {
+	private boolean wakeForAlarm;
+	private volatile long alarmTolerance;
+	private AlarmScheduler alarmScheduler;
 
 	public BaseRecurringAlarm(Context context, boolean wakeForAlarm) {
-		this.context = context.getApplicationContext();
-		this.alarmType = determineAlarmType(wakeForAlarm);
+		this(AlarmScheduler.getInstance(context), wakeForAlarm);
+	}
 
-		alarmAction = generateAction(context);
-		alarmIntent = buildPendingIntent(context, alarmAction);
+	public BaseRecurringAlarm(AlarmScheduler alarmScheduler, boolean wakeForAlarm) {
+		this.alarmScheduler = alarmScheduler;
+		this.wakeForAlarm = wakeForAlarm;
 	}
 
 	public abstract void handleAlarm(long alarmElapsedRealtime);
 
+	/**
+	 * @param alarmElapsedRealtime The time at which the alarm went off or was started.
+	 * @return The number of milliseconds until the alarm should next go off.
+	 */
+	protected abstract long determineNextAlarmDelay(long alarmElapsedRealtime);
+
 	public void startRecurringAlarm() {
-		registerAlarmReceiver();
-		scheduleAlarm(SystemClock.elapsedRealtime());
+		long elapsedRealtime = alarmScheduler.getClock().elapsedRealtime();
+		alarmScheduler.scheduleAlarm(this, elapsedRealtime + determineNextAlarmDelay(elapsedRealtime));
 	}
 
 	public void stopRecurringAlarm() {
-		cancelAlarm();
-		unregisterAlarmReceiver();
+		alarmScheduler.cancelAlarm(this);
 	}
 
-	@Override
-	public void onReceive(Context context, Intent intent) {
-		handleAlarm(SystemClock.elapsedRealtime());
-	}
-
-	private void registerAlarmReceiver() {
-		context.registerReceiver(this, new IntentFilter(alarmAction));
-	}
-
-	private void unregisterAlarmReceiver() {
-		context.unregisterReceiver(this);
-	}
-
-	protected abstract void scheduleAlarm(long alarmElapsedRealtime);
-
-	protected int determineAlarmType(boolean wakeForAlarm) {
-		return wakeForAlarm? AlarmManager.ELAPSED_REALTIME_WAKEUP : AlarmManager.ELAPSED_REALTIME;
-	}
-
-	private void cancelAlarm() {
-		getAlarmManager(context).cancel(alarmIntent);
-	}
-
-	protected static AlarmManager getAlarmManager(Context context) {
-		return (AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
-	}
-
-	protected Context getContext() {
-		return context;
-	}
+	/**
+	 * @param alarmTolerance The number of milliseconds after each deadline that the alarm may go off.  Takes effect
+	 * from the next deadline.
+	 */
+	public void setAlarmTolerance(long alarmTolerance) {
+		if(alarmTolerance < 0) {
+			throw new IllegalArgumentException("Alarm tolerance cannot be negative.");
+		}
 
-	protected int getAlarmType() {
-		return alarmType;
+		this.alarmTolerance = alarmTolerance;
 	}
 
-	protected PendingIntent getAlarmPendingIntent() {
-		return alarmIntent;
+	public long getAlarmTolerance() {
+		return alarmTolerance;
 	}
 
-	private static String generateAction(Context context) {
-		return context.getPackageName() + "/" +
-				BASE_ALARM_ACTION + "/" +
-				generatedActionCount++;
+	protected AlarmScheduler getAlarmScheduler() {
+		return alarmScheduler;
 	}
 
-	private static PendingIntent buildPendingIntent(Context context, String action) {
-		Intent intent = new Intent(action);
-		return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+	public boolean isWakeForAlarm() {
+		return wakeForAlarm;
 	}
 }
@@ -0,0 +1,94 @@
+package com.coalminesoftware.locationtracer.alarm;
+
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+
+/**
+ * An {@link AlarmTrigger} driven by a {@link VirtualClock}.  Advancing the trigger moves the clock forward, stopping at
+ * each armed time along the way to dispatch the scheduler's alarms, so that alarms go off in order and at the times
+ * they would on a device.
+ * <p>
+ * A scheduler for virtual time is created with {@code new AlarmScheduler(clock, new VirtualAlarmTrigger(clock))}.
+ */
+public class VirtualAlarmTrigger implements AlarmTrigger {
+	private final VirtualClock clock;
+	private AlarmScheduler alarmScheduler;
+	private Long armedWakeupTime;
+	private Long armedNonWakeupTime;
+
+	public VirtualAlarmTrigger(VirtualClock clock) {
+		this.clock = clock;
+	}
+
+	@Override
+	public void register(AlarmScheduler alarmScheduler) {
+		this.alarmScheduler = alarmScheduler;
+	}
+
+	@Override
+	public void unregister() { }
+
+	@Override
+	public synchronized void arm(long elapsedRealtime, boolean wakeup) {
+		if(wakeup) {
+			armedWakeupTime = elapsedRealtime;
+		} else {
+			armedNonWakeupTime = elapsedRealtime;
+		}
+	}
+
+	@Override
+	public synchronized void cancel(boolean wakeup) {
+		if(wakeup) {
+			armedWakeupTime = null;
+		} else {
+			armedNonWakeupTime = null;
+		}
+	}
+
+	/**
+	 * Advances the clock by the given duration, dispatching alarms at each armed time that is reached.
+	 */
+	public void advance(long duration) {
+		advanceTo(clock.elapsedRealtime() + duration);
+	}
+
+	/**
+	 * Advances the clock to the given time, dispatching alarms at each armed time that is reached.  Virtual devices
+	 * never sleep, so times that don't wake the device are reached just as wakeup times are.
+	 */
+	public void advanceTo(long elapsedRealtime) {
+		while(true) {
+			long dispatchTime;
+			synchronized(this) {
+				Long armedTime = getArmedTime();
+				if(armedTime == null || armedTime > elapsedRealtime) {
+					break;
+				}
+
+				// Alarms armed in the past go off immediately, as they would on a device.
+				dispatchTime = Math.max(armedTime, clock.elapsedRealtime());
+				if(armedTime.equals(armedWakeupTime)) {
+					armedWakeupTime = null;
+				} else {
+					armedNonWakeupTime = null;
+				}
+			}
+
+			clock.setElapsedRealtime(dispatchTime);
+			alarmScheduler.dispatchAlarms(dispatchTime);
+		}
+
+		clock.setElapsedRealtime(elapsedRealtime);
+	}
+
+	/** @return The earliest armed time, whether or not it wakes the device, or null if no time is armed. */
+	public synchronized Long getArmedTime() {
+		if(armedWakeupTime == null) {
+			return armedNonWakeupTime;
+		}
+
+		return armedNonWakeupTime == null || armedWakeupTime <= armedNonWakeupTime?
+				armedWakeupTime :
+				armedNonWakeupTime;
+	}
+}
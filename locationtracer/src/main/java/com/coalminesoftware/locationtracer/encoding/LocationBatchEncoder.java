@@ -0,0 +1,14 @@
+package com.coalminesoftware.locationtracer.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Serializes a batch of locations to a stream, for use as a report payload.
+ *
+ * @param <StorageLocation>
+ */
+public interface LocationBatchEncoder<StorageLocation> {
+	void encodeLocations(List<StorageLocation> locations, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,23 @@
+package com.coalminesoftware.locationtracer.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import android.location.Location;
+
+/**
+ * A {@link LocationBatchEncoder} that writes each batch as a trace in the format read by {@link TraceDecoder}.  A
+ * single {@link TraceEncoder} is reused for every batch, so instances should not be used by multiple threads at once.
+ */
+public class TraceBatchEncoder implements LocationBatchEncoder<Location> {
+	private final TraceEncoder traceEncoder = new TraceEncoder(null);
+
+	@Override
+	public void encodeLocations(List<Location> locations, OutputStream outputStream) throws IOException {
+		traceEncoder.reset(outputStream);
+		for(Location location : locations) {
+			traceEncoder.encode(location);
+		}
+	}
+}
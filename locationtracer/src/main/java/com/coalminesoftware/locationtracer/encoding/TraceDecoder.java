@@ -0,0 +1,152 @@
+package com.coalminesoftware.locationtracer.encoding;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.LocationFlags;
+
+/**
+ * Reads locations, one at a time, from a trace written by {@link TraceEncoder}.  Each location is read into a
+ * {@link Location} provided by the caller, so a trace of any length can be read using a single Location.
+ * <p>
+ * Decoders read their input a byte at a time, so a buffered stream should be provided when reading from a file or
+ * socket.
+ */
+public class TraceDecoder {
+	private final InputStream inputStream;
+
+	private boolean headerRead;
+	private String provider;
+	private long time;
+	private long latitude;
+	private long longitude;
+	private long altitude;
+	private long accuracy;
+	private long speed;
+	private long bearing;
+
+	public TraceDecoder(InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+
+	/**
+	 * Reads the next location in the trace into the given location, replacing its previous contents.
+	 *
+	 * @return Whether a location was read, or false if the end of the trace was reached.
+	 * @throws IOException If the stream could not be read or does not hold a trace.
+	 */
+	public boolean decode(Location location) throws IOException {
+		if(!headerRead && !readHeader()) {
+			return false;
+		}
+
+		int flags = inputStream.read();
+		if(flags == -1) {
+			return false;
+		}
+
+		if((flags & TraceFormat.PROVIDER_CHANGED) != 0) {
+			provider = readProvider();
+		}
+
+		time += readDelta();
+		latitude += readDelta();
+		longitude += readDelta();
+		if((flags & LocationFlags.HAS_ALTITUDE) != 0) {
+			altitude += readDelta();
+		}
+		if((flags & LocationFlags.HAS_SPEED) != 0) {
+			speed += readDelta();
+		}
+		if((flags & LocationFlags.HAS_BEARING) != 0) {
+			bearing += readDelta();
+		}
+		if((flags & LocationFlags.HAS_ACCURACY) != 0) {
+			accuracy += readDelta();
+		}
+
+		location.reset();
+		location.setProvider(provider);
+		location.setTime(time);
+		location.setLatitude(latitude / TraceFormat.COORDINATE_SCALE);
+		location.setLongitude(longitude / TraceFormat.COORDINATE_SCALE);
+		LocationFlags.setOptionalFields(location, flags,
+				altitude / TraceFormat.DISTANCE_SCALE,
+				(float)(speed / TraceFormat.SPEED_SCALE),
+				(float)(bearing / TraceFormat.BEARING_SCALE),
+				(float)(accuracy / TraceFormat.DISTANCE_SCALE));
+
+		return true;
+	}
+
+	/**
+	 * @return Whether a header was read, or false if the stream is empty.
+	 */
+	private boolean readHeader() throws IOException {
+		int firstByte = inputStream.read();
+		if(firstByte == -1) {
+			return false;
+		}
+
+		if(firstByte != TraceFormat.MAGIC_NUMBER_FIRST_BYTE || readByte() != TraceFormat.MAGIC_NUMBER_SECOND_BYTE) {
+			throw new IOException("Stream does not hold a trace.");
+		}
+
+		int version = readByte();
+		if(version != TraceFormat.VERSION) {
+			throw new IOException("Unsupported trace format version " + version);
+		}
+
+		headerRead = true;
+		return true;
+	}
+
+	private String readProvider() throws IOException {
+		int providerLength = (int)readVarint();
+		if(providerLength == 0) {
+			return null;
+		}
+
+		byte[] providerBytes = new byte[providerLength];
+
+		int offset = 0;
+		while(offset < providerBytes.length) {
+			int byteCount = inputStream.read(providerBytes, offset, providerBytes.length - offset);
+			if(byteCount == -1) {
+				throw new EOFException("Trace ended within a record.");
+			}
+			offset += byteCount;
+		}
+
+		return new String(providerBytes, TraceFormat.PROVIDER_CHARSET);
+	}
+
+	private long readDelta() throws IOException {
+		return TraceFormat.decodeZigZag(readVarint());
+	}
+
+	private long readVarint() throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed varint in trace.");
+	}
+
+	private int readByte() throws IOException {
+		int b = inputStream.read();
+		if(b == -1) {
+			throw new EOFException("Trace ended within a record.");
+		}
+
+		return b;
+	}
+}
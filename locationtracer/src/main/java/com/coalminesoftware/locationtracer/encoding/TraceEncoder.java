@@ -0,0 +1,144 @@
+package com.coalminesoftware.locationtracer.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.LocationFlags;
+
+/**
+ * Writes locations, one at a time, to an {@link OutputStream} in a compact binary format that encodes each location
+ * as its difference from the previous location.  Consecutive fixes typically take under a dozen bytes each.  The
+ * format is suitable both for files that are read sequentially and as a report payload, and is read by
+ * {@link TraceDecoder}.
+ * <p>
+ * An encoder can be reused for any number of traces by calling {@link #reset(OutputStream)} between them.  Encoders
+ * don't buffer their output, so a buffered stream should be provided when writing to a file or socket.
+ */
+public class TraceEncoder {
+	/** Large enough for a flags byte and every numeric field as a 64 bit varint. */
+	private static final int MAXIMUM_RECORD_SIZE_EXCLUDING_PROVIDER = 1 + 7 * 10;
+
+	private OutputStream outputStream;
+	private final byte[] buffer = new byte[MAXIMUM_RECORD_SIZE_EXCLUDING_PROVIDER];
+	private int bufferLength;
+
+	private boolean headerWritten;
+	private String previousProvider;
+	private long previousTime;
+	private long previousLatitude;
+	private long previousLongitude;
+	private long previousAltitude;
+	private long previousAccuracy;
+	private long previousSpeed;
+	private long previousBearing;
+
+	public TraceEncoder(OutputStream outputStream) {
+		reset(outputStream);
+	}
+
+	/**
+	 * Starts a new trace, written to the given stream.
+	 */
+	public void reset(OutputStream outputStream) {
+		this.outputStream = outputStream;
+
+		headerWritten = false;
+		previousProvider = null;
+		previousTime = 0;
+		previousLatitude = 0;
+		previousLongitude = 0;
+		previousAltitude = 0;
+		previousAccuracy = 0;
+		previousSpeed = 0;
+		previousBearing = 0;
+	}
+
+	public void encode(Location location) throws IOException {
+		if(!headerWritten) {
+			writeHeader();
+		}
+
+		int flags = LocationFlags.determineFlags(location);
+		String provider = location.getProvider();
+		boolean providerChanged = provider == null? previousProvider != null : !provider.equals(previousProvider);
+		if(providerChanged) {
+			flags |= TraceFormat.PROVIDER_CHANGED;
+		}
+
+		outputStream.write(flags);
+		if(providerChanged) {
+			writeProvider(provider);
+		}
+
+		bufferLength = 0;
+
+		long time = location.getTime();
+		writeDelta(time, previousTime);
+		previousTime = time;
+
+		long latitude = Math.round(location.getLatitude() * TraceFormat.COORDINATE_SCALE);
+		writeDelta(latitude, previousLatitude);
+		previousLatitude = latitude;
+
+		long longitude = Math.round(location.getLongitude() * TraceFormat.COORDINATE_SCALE);
+		writeDelta(longitude, previousLongitude);
+		previousLongitude = longitude;
+
+		if(location.hasAltitude()) {
+			long altitude = Math.round(location.getAltitude() * TraceFormat.DISTANCE_SCALE);
+			writeDelta(altitude, previousAltitude);
+			previousAltitude = altitude;
+		}
+		if(location.hasSpeed()) {
+			long speed = Math.round(location.getSpeed() * TraceFormat.SPEED_SCALE);
+			writeDelta(speed, previousSpeed);
+			previousSpeed = speed;
+		}
+		if(location.hasBearing()) {
+			long bearing = Math.round(location.getBearing() * TraceFormat.BEARING_SCALE);
+			writeDelta(bearing, previousBearing);
+			previousBearing = bearing;
+		}
+		if(location.hasAccuracy()) {
+			long accuracy = Math.round(location.getAccuracy() * TraceFormat.DISTANCE_SCALE);
+			writeDelta(accuracy, previousAccuracy);
+			previousAccuracy = accuracy;
+		}
+
+		outputStream.write(buffer, 0, bufferLength);
+	}
+
+	private void writeHeader() throws IOException {
+		outputStream.write(TraceFormat.MAGIC_NUMBER_FIRST_BYTE);
+		outputStream.write(TraceFormat.MAGIC_NUMBER_SECOND_BYTE);
+		outputStream.write(TraceFormat.VERSION);
+
+		headerWritten = true;
+	}
+
+	private void writeProvider(String provider) throws IOException {
+		// A location without a provider is written with an empty provider name.
+		byte[] providerBytes = provider == null? new byte[0] : provider.getBytes(TraceFormat.PROVIDER_CHARSET);
+
+		bufferLength = 0;
+		writeVarint(providerBytes.length);
+		outputStream.write(buffer, 0, bufferLength);
+		outputStream.write(providerBytes);
+
+		previousProvider = provider;
+	}
+
+	private void writeDelta(long value, long previousValue) {
+		writeVarint(TraceFormat.encodeZigZag(value - previousValue));
+	}
+
+	private void writeVarint(long value) {
+		while((value & ~0x7FL) != 0) {
+			buffer[bufferLength++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[bufferLength++] = (byte)value;
+	}
+}
@@ -0,0 +1,43 @@
+package com.coalminesoftware.locationtracer.encoding;
+
+import com.coalminesoftware.locationtracer.storage.LocationFlags;
+
+/**
+ * Constants describing the compact trace format written by {@link TraceEncoder} and read by {@link TraceDecoder}.
+ * <p>
+ * A trace begins with a two byte magic number and a format version, followed by one record per location.  Each record
+ * begins with a flags byte holding the {@link LocationFlags} of the location, and whether the location's provider
+ * differs from that of the previous record.  If it does, the provider's name follows as a length-prefixed UTF-8
+ * string, which is empty if the location has no provider.  The location's time, latitude and longitude follow, and
+ * then each optional field that is present.  Every numeric field is written as the zig-zag varint encoded difference
+ * between its fixed-point value and the value of the same field in the previous record that had it, so that the small
+ * changes between consecutive fixes take a byte or two each.
+ */
+final class TraceFormat {
+	public static final int MAGIC_NUMBER_FIRST_BYTE = 'L';
+	public static final int MAGIC_NUMBER_SECOND_BYTE = 'T';
+	public static final int VERSION = 1;
+
+	public static final int PROVIDER_CHANGED = 1 << 4;
+
+	/** Latitude and longitude are stored in units of 10<sup>-7</sup> degrees. */
+	public static final double COORDINATE_SCALE = 1e7;
+	/** Altitude and accuracy are stored in centimeters. */
+	public static final double DISTANCE_SCALE = 100;
+	/** Speed is stored in centimeters per second. */
+	public static final double SPEED_SCALE = 100;
+	/** Bearing is stored in hundredths of a degree. */
+	public static final double BEARING_SCALE = 100;
+
+	public static final String PROVIDER_CHARSET = "UTF-8";
+
+	private TraceFormat() { }
+
+	public static long encodeZigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long decodeZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
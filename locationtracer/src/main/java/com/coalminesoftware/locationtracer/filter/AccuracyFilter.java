@@ -0,0 +1,23 @@
+package com.coalminesoftware.locationtracer.filter;
+
+import android.location.Location;
+
+/**
+ * Drops locations whose accuracy is worse than a threshold, such as coarse fixes from network providers observed while
+ * listening passively.  Locations without an accuracy are dropped, since nothing is known about their quality.
+ */
+public class AccuracyFilter extends LocationFilter {
+	private final float maximumAccuracy;
+
+	/**
+	 * @param maximumAccuracy The largest accepted accuracy radius, in meters.
+	 */
+	public AccuracyFilter(float maximumAccuracy) {
+		this.maximumAccuracy = maximumAccuracy;
+	}
+
+	@Override
+	protected boolean isLocationAccepted(Location location) {
+		return location.hasAccuracy() && location.getAccuracy() <= maximumAccuracy;
+	}
+}
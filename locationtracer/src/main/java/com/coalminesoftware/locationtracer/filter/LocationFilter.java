@@ -0,0 +1,27 @@
+package com.coalminesoftware.locationtracer.filter;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.processing.LocationProcessor;
+import com.coalminesoftware.locationtracer.processing.LocationSink;
+
+/**
+ * Convenience implementation of {@link LocationProcessor} for processors that only decide whether each location is
+ * passed along unchanged or dropped.
+ */
+public abstract class LocationFilter implements LocationProcessor {
+	@Override
+	public void processLocation(Location location, LocationSink sink) {
+		if(isLocationAccepted(location)) {
+			sink.acceptLocation(location);
+		}
+	}
+
+	/**
+	 * @return Whether the location should be passed along.
+	 */
+	protected abstract boolean isLocationAccepted(Location location);
+
+	@Override
+	public void flush(LocationSink sink) { }
+}
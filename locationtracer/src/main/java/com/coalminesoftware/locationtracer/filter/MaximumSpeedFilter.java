@@ -0,0 +1,47 @@
+package com.coalminesoftware.locationtracer.filter;
+
+import android.location.Location;
+
+/**
+ * Drops locations that could only have been reached from the last location passed along by travelling faster than a
+ * given speed, such as fixes that jump between cell towers or to a multipath reflection.  Locations that are no newer
+ * than the last location passed along are dropped, since no speed can be determined for them.
+ */
+public class MaximumSpeedFilter extends LocationFilter {
+	private final float maximumSpeed;
+	private final float[] distanceResult = new float[1];
+
+	private boolean locationAccepted;
+	private long lastAcceptedTime;
+	private double lastAcceptedLatitude;
+	private double lastAcceptedLongitude;
+
+	/**
+	 * @param maximumSpeed The fastest plausible speed between locations, in meters per second.
+	 */
+	public MaximumSpeedFilter(float maximumSpeed) {
+		this.maximumSpeed = maximumSpeed;
+	}
+
+	@Override
+	protected boolean isLocationAccepted(Location location) {
+		if(locationAccepted) {
+			long elapsedTime = location.getTime() - lastAcceptedTime;
+			if(elapsedTime <= 0) {
+				return false;
+			}
+
+			Location.distanceBetween(lastAcceptedLatitude, lastAcceptedLongitude,
+					location.getLatitude(), location.getLongitude(), distanceResult);
+			if(distanceResult[0] * 1000.0 / elapsedTime > maximumSpeed) {
+				return false;
+			}
+		}
+
+		locationAccepted = true;
+		lastAcceptedTime = location.getTime();
+		lastAcceptedLatitude = location.getLatitude();
+		lastAcceptedLongitude = location.getLongitude();
+		return true;
+	}
+}
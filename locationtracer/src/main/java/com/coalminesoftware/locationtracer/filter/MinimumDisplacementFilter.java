@@ -0,0 +1,39 @@
+package com.coalminesoftware.locationtracer.filter;
+
+import android.location.Location;
+
+/**
+ * Drops locations that are less than a given distance from the last location passed along, such as duplicate fixes and
+ * the jitter of a stationary device.
+ */
+public class MinimumDisplacementFilter extends LocationFilter {
+	private final float minimumDisplacement;
+	private final float[] distanceResult = new float[1];
+
+	private boolean locationAccepted;
+	private double lastAcceptedLatitude;
+	private double lastAcceptedLongitude;
+
+	/**
+	 * @param minimumDisplacement The minimum distance between accepted locations, in meters.
+	 */
+	public MinimumDisplacementFilter(float minimumDisplacement) {
+		this.minimumDisplacement = minimumDisplacement;
+	}
+
+	@Override
+	protected boolean isLocationAccepted(Location location) {
+		if(locationAccepted) {
+			Location.distanceBetween(lastAcceptedLatitude, lastAcceptedLongitude,
+					location.getLatitude(), location.getLongitude(), distanceResult);
+			if(distanceResult[0] < minimumDisplacement) {
+				return false;
+			}
+		}
+
+		locationAccepted = true;
+		lastAcceptedLatitude = location.getLatitude();
+		lastAcceptedLongitude = location.getLongitude();
+		return true;
+	}
+}
@@ -0,0 +1,32 @@
+package com.coalminesoftware.locationtracer.filter;
+
+import android.location.Location;
+
+/**
+ * Drops locations whose times are less than a given duration after that of the last location passed along, including
+ * duplicates of that location and locations that are older than it.
+ */
+public class MinimumTimeGapFilter extends LocationFilter {
+	private final long minimumTimeGap;
+
+	private boolean locationAccepted;
+	private long lastAcceptedTime;
+
+	/**
+	 * @param minimumTimeGap The minimum number of milliseconds between the times of accepted locations.
+	 */
+	public MinimumTimeGapFilter(long minimumTimeGap) {
+		this.minimumTimeGap = minimumTimeGap;
+	}
+
+	@Override
+	protected boolean isLocationAccepted(Location location) {
+		if(locationAccepted && location.getTime() - lastAcceptedTime < minimumTimeGap) {
+			return false;
+		}
+
+		locationAccepted = true;
+		lastAcceptedTime = location.getTime();
+		return true;
+	}
+}
@@ -0,0 +1,27 @@
+package com.coalminesoftware.locationtracer.filter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.location.Location;
+
+/**
+ * Drops locations that didn't come from one of a given set of providers.
+ */
+public class ProviderFilter extends LocationFilter {
+	private final Set<String> acceptedProviders;
+
+	/**
+	 * @param acceptedProviders The names of the providers whose locations are passed along, such as
+	 * {@link android.location.LocationManager#GPS_PROVIDER}.
+	 */
+	public ProviderFilter(String... acceptedProviders) {
+		this.acceptedProviders = new HashSet<>(Arrays.asList(acceptedProviders));
+	}
+
+	@Override
+	protected boolean isLocationAccepted(Location location) {
+		return acceptedProviders.contains(location.getProvider());
+	}
+}
@@ -1,9 +1,10 @@
 package com.coalminesoftware.locationtracer.listener;
 
 import android.location.Location;
-import android.os.SystemClock;
 
 import com.coalminesoftware.locationtracer.storage.LocationStore;
+import com.coalminesoftware.locationtracer.time.Clock;
+import com.coalminesoftware.locationtracer.time.ElapsedRealtimeClock;
 import com.coalminesoftware.locationtracer.transformation.LocationTransformer;
 
 /**
@@ -12,25 +13,27 @@ import com.coalminesoftware.locationtracer.transformation.LocationTransformer;
  *
  * @param <StorageLocation> The type that Locations will be transformed into and stored as.
  */
-public class CachingLocationListener<StorageLocation> extends DefaultLocationListener {
+public class CachingLocationListener<StorageLocation> extends ProcessingLocationListener {
 	private LocationTransformer<StorageLocation> locationTransformer;
 	private LocationStore<StorageLocation> locationStore;
-	private Long lastLocationObservationTime;
 
 	public CachingLocationListener(LocationTransformer<StorageLocation> locationTransformer, LocationStore<StorageLocation> locationStore) {
+		this(locationTransformer, locationStore, ElapsedRealtimeClock.INSTANCE);
+	}
+
+	/**
+	 * @param clock The clock used to timestamp observed locations.
+	 */
+	public CachingLocationListener(LocationTransformer<StorageLocation> locationTransformer,
+			LocationStore<StorageLocation> locationStore, Clock clock) {
+		super(clock);
+
 		this.locationTransformer = locationTransformer;
 		this.locationStore = locationStore;
 	}
 
 	@Override
-	public void onLocationChanged(Location location) {
-		lastLocationObservationTime = SystemClock.elapsedRealtime();
+	protected void storeLocation(Location location) {
 		locationStore.offerLocation(locationTransformer.transformLocation(location));
 	}
-
-	public Long getLastLocationObservationTime() {
-		return lastLocationObservationTime;
-	}
 }
-
-
@@ -0,0 +1,44 @@
+package com.coalminesoftware.locationtracer.listener;
+
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * An {@link Executor} that runs tasks, in the order they were submitted, on a dedicated {@link HandlerThread}.
+ */
+public class HandlerThreadExecutor implements Executor {
+	private final HandlerThread thread;
+	private final Handler handler;
+
+	public HandlerThreadExecutor(String threadName) {
+		thread = new HandlerThread(threadName, Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+
+		handler = new Handler(thread.getLooper());
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		handler.post(task);
+	}
+
+	/**
+	 * Stops the thread once the tasks that have already been submitted have run.
+	 */
+	public void shutDown() {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				Looper.myLooper().quit();
+			}
+		});
+	}
+
+	public Looper getLooper() {
+		return thread.getLooper();
+	}
+}
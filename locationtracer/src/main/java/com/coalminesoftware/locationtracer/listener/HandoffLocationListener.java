@@ -0,0 +1,177 @@
+package com.coalminesoftware.locationtracer.listener;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+
+/**
+ * Listener that hands observed {@link Location} updates off to another listener on an {@link Executor}, so that work
+ * done by that listener - transforming and storing locations, for example - doesn't happen on the thread that
+ * delivers location updates.  Locations waiting to be handed off are held in a bounded queue, and locations that
+ * arrive while the queue is full are handled according to a {@link HandoffOverflowPolicy}.
+ * <p>
+ * Locations are handed off one at a time, in the order they were observed.  Status and provider callbacks are passed
+ * to the other listener immediately, on the delivering thread.
+ * <p>
+ * With {@link HandoffOverflowPolicy#BLOCK}, the delivering thread waits no longer than {@link #MAXIMUM_BLOCK_DURATION}
+ * for room in the queue, and doesn't wait at all if it is the thread that the executor drains the queue on, since the
+ * queue couldn't be drained while it waited.  In either case, the new location is dropped.
+ */
+public class HandoffLocationListener implements LocationListener {
+	/** The longest time, in milliseconds, that a location is held waiting for room in a full queue. */
+	public static final long MAXIMUM_BLOCK_DURATION = 1000;
+
+	private final LocationListener locationListener;
+	private final Executor executor;
+	private final int queueCapacity;
+	private final HandoffOverflowPolicy overflowPolicy;
+
+	private final Deque<Location> queuedLocations;
+	private boolean drainScheduled;
+	private long droppedLocationCount;
+	/** The thread that the queue was last drained on. */
+	private Thread drainThread;
+
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drainQueuedLocations();
+		}
+	};
+
+	/**
+	 * @param locationListener The listener that locations will be handed off to.
+	 * @param executor Used to call the given listener.
+	 * @param queueCapacity The maximum number of locations waiting to be handed off.
+	 * @param overflowPolicy Determines what happens to a location that arrives while the queue is full.
+	 */
+	public HandoffLocationListener(LocationListener locationListener, Executor executor, int queueCapacity,
+			HandoffOverflowPolicy overflowPolicy) {
+		if(queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be positive.");
+		}
+
+		this.locationListener = locationListener;
+		this.executor = executor;
+		this.queueCapacity = queueCapacity;
+		this.overflowPolicy = overflowPolicy;
+
+		queuedLocations = new ArrayDeque<>(queueCapacity);
+	}
+
+	@Override
+	public void onLocationChanged(Location location) {
+		synchronized(queuedLocations) {
+			if(!makeRoomForLocation()) {
+				droppedLocationCount++;
+				return;
+			}
+
+			queuedLocations.addLast(location);
+			if(drainScheduled) {
+				return;
+			}
+			drainScheduled = true;
+		}
+
+		executor.execute(drainTask);
+	}
+
+	/**
+	 * @return Whether there is room in the queue for another location.
+	 */
+	private boolean makeRoomForLocation() {
+		while(queuedLocations.size() >= queueCapacity) {
+			switch(overflowPolicy) {
+			case DROP_OLDEST:
+				queuedLocations.removeFirst();
+				droppedLocationCount++;
+				break;
+			case DROP_NEWEST:
+				return false;
+			case BLOCK:
+				if(!awaitRoomForLocation()) {
+					return false;
+				}
+				break;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Waits for the queue to have room for another location, unless waiting would deadlock.
+	 *
+	 * @return Whether there is room in the queue for another location.
+	 */
+	private boolean awaitRoomForLocation() {
+		if(Thread.currentThread() == drainThread) {
+			return false;
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAXIMUM_BLOCK_DURATION);
+		while(queuedLocations.size() >= queueCapacity) {
+			long remainingDuration = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if(remainingDuration <= 0) {
+				return false;
+			}
+
+			try {
+				queuedLocations.wait(remainingDuration);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void drainQueuedLocations() {
+		while(true) {
+			Location location;
+			synchronized(queuedLocations) {
+				drainThread = Thread.currentThread();
+				location = queuedLocations.pollFirst();
+				if(location == null) {
+					drainScheduled = false;
+					return;
+				}
+
+				queuedLocations.notifyAll();
+			}
+
+			locationListener.onLocationChanged(location);
+		}
+	}
+
+	/**
+	 * @return The number of locations that have been discarded because they arrived while the queue was full.
+	 */
+	public long getDroppedLocationCount() {
+		synchronized(queuedLocations) {
+			return droppedLocationCount;
+		}
+	}
+
+	@Override
+	public void onStatusChanged(String provider, int status, Bundle extras) {
+		locationListener.onStatusChanged(provider, status, extras);
+	}
+
+	@Override
+	public void onProviderEnabled(String provider) {
+		locationListener.onProviderEnabled(provider);
+	}
+
+	@Override
+	public void onProviderDisabled(String provider) {
+		locationListener.onProviderDisabled(provider);
+	}
+}
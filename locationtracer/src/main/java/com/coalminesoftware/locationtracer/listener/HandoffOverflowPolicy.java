@@ -0,0 +1,17 @@
+package com.coalminesoftware.locationtracer.listener;
+
+/**
+ * Determines what a {@link HandoffLocationListener} does with a location that arrives while its queue is full.
+ */
+public enum HandoffOverflowPolicy {
+	/** Discard the oldest queued location to make room for the new location. */
+	DROP_OLDEST,
+	/** Discard the new location. */
+	DROP_NEWEST,
+	/**
+	 * Block the thread delivering the new location until there is room for it in the queue, or discard the new location
+	 * if there isn't room within {@link HandoffLocationListener#MAXIMUM_BLOCK_DURATION} or the delivering thread is the
+	 * one that drains the queue.
+	 */
+	BLOCK
+}
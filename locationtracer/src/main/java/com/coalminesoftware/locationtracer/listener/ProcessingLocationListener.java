@@ -0,0 +1,80 @@
+package com.coalminesoftware.locationtracer.listener;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.processing.LocationProcessor;
+import com.coalminesoftware.locationtracer.processing.LocationSink;
+import com.coalminesoftware.locationtracer.time.Clock;
+
+/**
+ * Listener that passes observed {@link Location} updates through an optional {@link LocationProcessor}, such as a
+ * {@link com.coalminesoftware.locationtracer.processing.LocationProcessingPipeline} of filters, before having
+ * subclasses store the locations that make it through.
+ */
+public abstract class ProcessingLocationListener extends DefaultLocationListener {
+	private static final long NO_OBSERVATION_TIME = Long.MIN_VALUE;
+
+	private final Clock clock;
+	private volatile LocationProcessor locationProcessor;
+	private volatile long lastLocationObservationTime = NO_OBSERVATION_TIME;
+
+	private final LocationSink storingSink = new LocationSink() {
+		@Override
+		public void acceptLocation(Location location) {
+			storeLocation(location);
+		}
+	};
+
+	/**
+	 * @param clock The clock used to timestamp observed locations.
+	 */
+	protected ProcessingLocationListener(Clock clock) {
+		this.clock = clock;
+	}
+
+	@Override
+	public void onLocationChanged(Location location) {
+		lastLocationObservationTime = clock.elapsedRealtime();
+
+		LocationProcessor processor = locationProcessor;
+		if(processor == null) {
+			storeLocation(location);
+		} else {
+			processor.processLocation(location, storingSink);
+		}
+	}
+
+	/**
+	 * Stores a location that made it through the processor.
+	 */
+	protected abstract void storeLocation(Location location);
+
+	/**
+	 * Stores any locations that the processor is holding back.  Should be called, on the thread that observes locations,
+	 * once no more locations will be observed.
+	 */
+	public void flushLocations() {
+		LocationProcessor processor = locationProcessor;
+		if(processor != null) {
+			processor.flush(storingSink);
+		}
+	}
+
+	/**
+	 * @param locationProcessor The processor that observed locations pass through before being stored, or null if they
+	 * should be stored as observed.
+	 */
+	public void setLocationProcessor(LocationProcessor locationProcessor) {
+		this.locationProcessor = locationProcessor;
+	}
+
+	public LocationProcessor getLocationProcessor() {
+		return locationProcessor;
+	}
+
+	/** @return The time, on the listener's clock, at which a location was last observed, or null if none has been. */
+	public Long getLastLocationObservationTime() {
+		long time = lastLocationObservationTime;
+		return time == NO_OBSERVATION_TIME? null : time;
+	}
+}
@@ -0,0 +1,39 @@
+package com.coalminesoftware.locationtracer.listener;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.LocationRecordStore;
+import com.coalminesoftware.locationtracer.time.Clock;
+import com.coalminesoftware.locationtracer.time.ElapsedRealtimeClock;
+import com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer;
+
+/**
+ * Listener that stores observed {@link Location} updates by having the given {@link LocationRecordTransformer} write
+ * them directly into a {@link LocationRecordStore}.  Unlike {@link CachingLocationListener}, storing a location
+ * allocates nothing.
+ */
+public class RecordingLocationListener extends ProcessingLocationListener {
+	private final LocationRecordTransformer locationRecordTransformer;
+	private final LocationRecordStore locationStore;
+
+	public RecordingLocationListener(LocationRecordTransformer locationRecordTransformer,
+			LocationRecordStore locationStore) {
+		this(locationRecordTransformer, locationStore, ElapsedRealtimeClock.INSTANCE);
+	}
+
+	/**
+	 * @param clock The clock used to timestamp observed locations.
+	 */
+	public RecordingLocationListener(LocationRecordTransformer locationRecordTransformer,
+			LocationRecordStore locationStore, Clock clock) {
+		super(clock);
+
+		this.locationRecordTransformer = locationRecordTransformer;
+		this.locationStore = locationStore;
+	}
+
+	@Override
+	protected void storeLocation(Location location) {
+		locationStore.offerLocation(location, locationRecordTransformer);
+	}
+}
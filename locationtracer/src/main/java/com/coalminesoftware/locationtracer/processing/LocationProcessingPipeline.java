@@ -0,0 +1,100 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.location.Location;
+
+/**
+ * A {@link LocationProcessor} that passes locations through an ordered series of processors, counting the locations
+ * that enter and leave each of them.  The stages are linked together when the pipeline is created, so passing a
+ * location through the pipeline allocates nothing beyond what its processors allocate.
+ * <p>
+ * For example, a pipeline that drops inaccurate fixes, and then fixes less than ten meters from the last stored one:
+ *
+ * <pre><code>new LocationProcessingPipeline(new AccuracyFilter(50), new MinimumDisplacementFilter(10));</code></pre>
+ */
+public class LocationProcessingPipeline implements LocationProcessor {
+	private final Stage[] stages;
+	private LocationSink sink;
+
+	private final LocationSink outputSink = new LocationSink() {
+		@Override
+		public void acceptLocation(Location location) {
+			sink.acceptLocation(location);
+		}
+	};
+
+	public LocationProcessingPipeline(LocationProcessor... processors) {
+		stages = new Stage[processors.length];
+		for(int i = processors.length - 1; i >= 0; i--) {
+			stages[i] = new Stage(processors[i], i == processors.length - 1? outputSink : stages[i + 1]);
+		}
+	}
+
+	@Override
+	public synchronized void processLocation(Location location, LocationSink sink) {
+		if(stages.length == 0) {
+			sink.acceptLocation(location);
+			return;
+		}
+
+		this.sink = sink;
+		stages[0].acceptLocation(location);
+	}
+
+	/**
+	 * Flushes each stage in turn, so that locations released by a stage pass through, and can be held back by, the
+	 * stages after it.
+	 */
+	@Override
+	public synchronized void flush(LocationSink sink) {
+		this.sink = sink;
+		for(Stage stage : stages) {
+			stage.flush();
+		}
+	}
+
+	/** @return The counts of each stage, in order. */
+	public synchronized List<ProcessingStageStatistics> getStageStatistics() {
+		List<ProcessingStageStatistics> statistics = new ArrayList<>(stages.length);
+		for(Stage stage : stages) {
+			statistics.add(new ProcessingStageStatistics(
+					stage.processor,
+					stage.receivedLocationCount,
+					stage.passedLocationCount));
+		}
+
+		return statistics;
+	}
+
+	private static class Stage implements LocationSink {
+		private final LocationProcessor processor;
+		private final LocationSink nextSink;
+		private long receivedLocationCount;
+		private long passedLocationCount;
+
+		private final LocationSink passingSink = new LocationSink() {
+			@Override
+			public void acceptLocation(Location location) {
+				passedLocationCount++;
+				nextSink.acceptLocation(location);
+			}
+		};
+
+		public Stage(LocationProcessor processor, LocationSink nextSink) {
+			this.processor = processor;
+			this.nextSink = nextSink;
+		}
+
+		@Override
+		public void acceptLocation(Location location) {
+			receivedLocationCount++;
+			processor.processLocation(location, passingSink);
+		}
+
+		public void flush() {
+			processor.flush(passingSink);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import android.location.Location;
+
+/**
+ * A stage that observed {@link Location}s pass through before they are transformed and stored.  A processor may pass a
+ * location along unchanged, drop it, replace it, or hold it back to be passed along later.
+ * <p>
+ * Processors are called from one thread at a time, and should avoid allocating for each location since they run for
+ * every observed location.
+ */
+public interface LocationProcessor {
+	/**
+	 * Processes an observed location, passing any locations that should continue on to the given sink.
+	 */
+	void processLocation(Location location, LocationSink sink);
+
+	/**
+	 * Passes any locations that are being held back on to the given sink.  Called when listening stops.
+	 */
+	void flush(LocationSink sink);
+}
@@ -0,0 +1,10 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import android.location.Location;
+
+/**
+ * Receives the locations passed along by a {@link LocationProcessor}.
+ */
+public interface LocationSink {
+	void acceptLocation(Location location);
+}
@@ -0,0 +1,46 @@
+package com.coalminesoftware.locationtracer.processing;
+
+/**
+ * Counts the locations that entered and left a stage of a {@link LocationProcessingPipeline}.
+ */
+public class ProcessingStageStatistics {
+	private final LocationProcessor processor;
+	private final long receivedLocationCount;
+	private final long passedLocationCount;
+
+	public ProcessingStageStatistics(LocationProcessor processor, long receivedLocationCount,
+			long passedLocationCount) {
+		this.processor = processor;
+		this.receivedLocationCount = receivedLocationCount;
+		this.passedLocationCount = passedLocationCount;
+	}
+
+	public LocationProcessor getProcessor() {
+		return processor;
+	}
+
+	/** @return The number of locations given to the stage. */
+	public long getReceivedLocationCount() {
+		return receivedLocationCount;
+	}
+
+	/** @return The number of locations the stage passed along to the next one. */
+	public long getPassedLocationCount() {
+		return passedLocationCount;
+	}
+
+	/**
+	 * @return The number of locations the stage didn't pass along.  Stages that hold locations back, or that pass along
+	 * more locations than they receive, may make this differ from the number of locations actually discarded.
+	 */
+	public long getDroppedLocationCount() {
+		return receivedLocationCount - passedLocationCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ProcessingStageStatistics[processor=" + processor.getClass().getSimpleName() +
+				", received=" + receivedLocationCount +
+				", passed=" + passedLocationCount + "]";
+	}
+}
@@ -0,0 +1,150 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import android.location.Location;
+
+/**
+ * Simplifies the trace as it is observed, passing along only the locations needed to keep every dropped location within
+ * a given cross-track distance of the line between the locations passed along before and after it.
+ * <p>
+ * This is the opening window algorithm: the last location passed along is an anchor, and observed locations are held in
+ * a window for as long as every location in the window stays within the tolerance of the line from the anchor to the
+ * newest location.  When a location can't be added without some location in the window straying from that line, the
+ * newest location in the window is passed along and becomes the anchor.  Only the window is held, so the delay before a
+ * location is passed along is bounded by the window's size.  Held locations are passed along when the processor is
+ * flushed.
+ * <p>
+ * Distances are measured on a local flat projection around the anchor, which is accurate for the short distances
+ * spanned by a window.  Held locations are kept by reference, so locations must not be modified once observed.
+ */
+public class SimplifyingLocationProcessor implements LocationProcessor {
+	public static final int DEFAULT_MAXIMUM_WINDOW_SIZE = 64;
+
+	private static final double EARTH_RADIUS = 6371009;
+	private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+	private final float tolerance;
+
+	private Location anchor;
+	private double anchorLatitude;
+	private double anchorLongitude;
+	private double anchorMetersPerLongitudeDegree;
+
+	private final Location[] windowLocations;
+	private final double[] windowLatitudes;
+	private final double[] windowLongitudes;
+	private int windowSize;
+
+	/**
+	 * @param tolerance The greatest distance, in meters, that a dropped location may be from the simplified trace.
+	 */
+	public SimplifyingLocationProcessor(float tolerance) {
+		this(tolerance, DEFAULT_MAXIMUM_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param tolerance The greatest distance, in meters, that a dropped location may be from the simplified trace.
+	 * @param maximumWindowSize The most locations that may be held back at once.
+	 */
+	public SimplifyingLocationProcessor(float tolerance, int maximumWindowSize) {
+		if(maximumWindowSize < 1) {
+			throw new IllegalArgumentException("Maximum window size must be positive.");
+		}
+
+		this.tolerance = tolerance;
+
+		windowLocations = new Location[maximumWindowSize];
+		windowLatitudes = new double[maximumWindowSize];
+		windowLongitudes = new double[maximumWindowSize];
+	}
+
+	@Override
+	public void processLocation(Location location, LocationSink sink) {
+		if(anchor == null) {
+			setAnchor(location);
+			sink.acceptLocation(location);
+			return;
+		}
+
+		if(windowSize == windowLocations.length ||
+				(windowSize > 0 && !isWindowWithinTolerance(location.getLatitude(), location.getLongitude()))) {
+			passNewestWindowLocation(sink);
+		}
+
+		windowLocations[windowSize] = location;
+		windowLatitudes[windowSize] = location.getLatitude();
+		windowLongitudes[windowSize] = location.getLongitude();
+		windowSize++;
+	}
+
+	@Override
+	public void flush(LocationSink sink) {
+		if(windowSize > 0) {
+			passNewestWindowLocation(sink);
+		}
+	}
+
+	/**
+	 * Passes along the newest location in the window, which becomes the anchor, and discards the rest of the window.
+	 */
+	private void passNewestWindowLocation(LocationSink sink) {
+		Location location = windowLocations[windowSize - 1];
+		for(int i = 0; i < windowSize; i++) {
+			windowLocations[i] = null;
+		}
+		windowSize = 0;
+
+		setAnchor(location);
+		sink.acceptLocation(location);
+	}
+
+	private void setAnchor(Location location) {
+		anchor = location;
+		anchorLatitude = location.getLatitude();
+		anchorLongitude = location.getLongitude();
+		anchorMetersPerLongitudeDegree = METERS_PER_DEGREE * Math.cos(Math.toRadians(anchorLatitude));
+	}
+
+	/**
+	 * @return Whether every location in the window is within the tolerance of the segment from the anchor to the given
+	 * position.
+	 */
+	private boolean isWindowWithinTolerance(double latitude, double longitude) {
+		double endX = projectLongitude(longitude);
+		double endY = projectLatitude(latitude);
+		double segmentLengthSquared = endX * endX + endY * endY;
+		double toleranceSquared = (double)tolerance * tolerance;
+
+		for(int i = 0; i < windowSize; i++) {
+			double x = projectLongitude(windowLongitudes[i]);
+			double y = projectLatitude(windowLatitudes[i]);
+
+			// Find the point on the segment closest to the location, clamped to the segment's ends.
+			double fraction = segmentLengthSquared == 0? 0 :
+					Math.max(0, Math.min(1, (x * endX + y * endY) / segmentLengthSquared));
+			double offsetX = x - fraction * endX;
+			double offsetY = y - fraction * endY;
+
+			if(offsetX * offsetX + offsetY * offsetY > toleranceSquared) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private double projectLatitude(double latitude) {
+		return (latitude - anchorLatitude) * METERS_PER_DEGREE;
+	}
+
+	/** Projects a longitude, taking the shorter way around the antimeridian. */
+	private double projectLongitude(double longitude) {
+		double degrees = longitude - anchorLongitude;
+		if(degrees > 180) {
+			degrees -= 360;
+		} else if(degrees < -180) {
+			degrees += 360;
+		}
+
+		return degrees * anchorMetersPerLongitudeDegree;
+	}
+}
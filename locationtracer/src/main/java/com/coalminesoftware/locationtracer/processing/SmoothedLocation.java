@@ -0,0 +1,44 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import android.location.Location;
+
+/**
+ * A {@link Location} whose position and accuracy were estimated by a {@link SmoothingLocationProcessor}, and that
+ * carries the position and accuracy of the fix it was estimated from.  Transformers can tell smoothed locations apart
+ * with {@code instanceof} to store or report the raw values alongside the smoothed ones.
+ */
+public class SmoothedLocation extends Location {
+	private final double rawLatitude;
+	private final double rawLongitude;
+	private final boolean rawAccuracyPresent;
+	private final float rawAccuracy;
+
+	/**
+	 * Creates a copy of the given fix, whose position and accuracy can then be replaced with smoothed values.
+	 */
+	public SmoothedLocation(Location rawLocation) {
+		super(rawLocation);
+
+		rawLatitude = rawLocation.getLatitude();
+		rawLongitude = rawLocation.getLongitude();
+		rawAccuracyPresent = rawLocation.hasAccuracy();
+		rawAccuracy = rawLocation.getAccuracy();
+	}
+
+	public double getRawLatitude() {
+		return rawLatitude;
+	}
+
+	public double getRawLongitude() {
+		return rawLongitude;
+	}
+
+	public boolean hasRawAccuracy() {
+		return rawAccuracyPresent;
+	}
+
+	/** @return The accuracy reported with the fix, in meters, or 0 if it had none. */
+	public float getRawAccuracy() {
+		return rawAccuracy;
+	}
+}
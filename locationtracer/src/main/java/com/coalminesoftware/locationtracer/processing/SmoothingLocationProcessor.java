@@ -0,0 +1,172 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import android.location.Location;
+
+/**
+ * Smooths the jitter out of observed positions with a constant-velocity Kalman filter, passing along a
+ * {@link SmoothedLocation} for each observed location.  Each fix is weighted by its reported accuracy, so precise fixes
+ * pull the estimate further than imprecise ones, and the smoothed location's accuracy is the filter's estimate of its
+ * own error.
+ * <p>
+ * The filter tracks position and velocity along the east and north axes of a local flat projection, as primitive
+ * values.  It starts over from the observed fix when a fix is older than the last one, or when fixes are too far apart
+ * in time for the previous velocity to mean anything.
+ * <p>
+ * Unlike the filter's state, each fix's output is allocated: a {@link SmoothedLocation} is created for every observed
+ * location, and since it copies the fix, the fix's extras {@link android.os.Bundle} is copied along with it when it has
+ * one.  Listening through this processor is therefore not free of per-fix allocation, even when locations are stored
+ * through a {@link com.coalminesoftware.locationtracer.storage.LocationRecordStore}.
+ */
+public class SmoothingLocationProcessor implements LocationProcessor {
+	public static final float DEFAULT_ACCELERATION_STANDARD_DEVIATION = 3;
+	public static final float DEFAULT_ACCURACY = 20;
+	public static final long DEFAULT_MAXIMUM_TIME_GAP = 60000;
+
+	private static final double EARTH_RADIUS = 6371009;
+	private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+	/** Expected uncertainty of the velocity when the filter starts, in meters per second. */
+	private static final double INITIAL_SPEED_UNCERTAINTY = 30;
+	/** Distance from the projection's origin, in meters, past which the origin is moved to the current estimate. */
+	private static final double MAXIMUM_PROJECTION_DISTANCE = 10000;
+
+	private final double accelerationVariance;
+	private final float defaultAccuracy;
+	private final long maximumTimeGap;
+
+	private boolean initialized;
+	private long lastTime;
+
+	private double originLatitude;
+	private double originLongitude;
+	private double metersPerLongitudeDegree;
+
+	private final AxisState east = new AxisState();
+	private final AxisState north = new AxisState();
+
+	public SmoothingLocationProcessor() {
+		this(DEFAULT_ACCELERATION_STANDARD_DEVIATION, DEFAULT_ACCURACY, DEFAULT_MAXIMUM_TIME_GAP);
+	}
+
+	/**
+	 * @param accelerationStandardDeviation How sharply the device is expected to change velocity, in meters per second
+	 * squared.  Lower values give smoother traces that are slower to follow turns.
+	 * @param defaultAccuracy The accuracy, in meters, assumed for fixes that don't report one.
+	 * @param maximumTimeGap The longest time, in milliseconds, between fixes that the filter will carry its velocity
+	 * across.
+	 */
+	public SmoothingLocationProcessor(float accelerationStandardDeviation, float defaultAccuracy,
+			long maximumTimeGap) {
+		accelerationVariance = (double)accelerationStandardDeviation * accelerationStandardDeviation;
+		this.defaultAccuracy = defaultAccuracy;
+		this.maximumTimeGap = maximumTimeGap;
+	}
+
+	@Override
+	public void processLocation(Location location, LocationSink sink) {
+		double accuracy = location.hasAccuracy() && location.getAccuracy() > 0? location.getAccuracy() : defaultAccuracy;
+		double measurementVariance = accuracy * accuracy;
+		long elapsedTime = location.getTime() - lastTime;
+
+		if(!initialized || elapsedTime < 0 || elapsedTime > maximumTimeGap) {
+			setOrigin(location.getLatitude(), location.getLongitude());
+			east.initialize(0, measurementVariance);
+			north.initialize(0, measurementVariance);
+			initialized = true;
+		} else {
+			double seconds = elapsedTime / 1000.0;
+			east.predict(seconds, accelerationVariance);
+			north.predict(seconds, accelerationVariance);
+
+			east.update(projectLongitude(location.getLongitude()), measurementVariance);
+			north.update(projectLatitude(location.getLatitude()), measurementVariance);
+		}
+		lastTime = location.getTime();
+
+		SmoothedLocation smoothedLocation = new SmoothedLocation(location);
+		smoothedLocation.setLatitude(originLatitude + north.position / METERS_PER_DEGREE);
+		smoothedLocation.setLongitude(originLongitude + east.position / metersPerLongitudeDegree);
+		smoothedLocation.setAccuracy((float)Math.sqrt(Math.max(east.positionVariance, north.positionVariance)));
+
+		if(Math.abs(east.position) > MAXIMUM_PROJECTION_DISTANCE || Math.abs(north.position) > MAXIMUM_PROJECTION_DISTANCE) {
+			setOrigin(smoothedLocation.getLatitude(), smoothedLocation.getLongitude());
+			east.position = 0;
+			north.position = 0;
+		}
+
+		sink.acceptLocation(smoothedLocation);
+	}
+
+	@Override
+	public void flush(LocationSink sink) { }
+
+	private void setOrigin(double latitude, double longitude) {
+		originLatitude = latitude;
+		originLongitude = longitude;
+		metersPerLongitudeDegree = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+	}
+
+	private double projectLatitude(double latitude) {
+		return (latitude - originLatitude) * METERS_PER_DEGREE;
+	}
+
+	/** Projects a longitude, taking the shorter way around the antimeridian. */
+	private double projectLongitude(double longitude) {
+		double degrees = longitude - originLongitude;
+		if(degrees > 180) {
+			degrees -= 360;
+		} else if(degrees < -180) {
+			degrees += 360;
+		}
+
+		return degrees * metersPerLongitudeDegree;
+	}
+
+	/**
+	 * The position and velocity along one axis, and their covariance.
+	 */
+	private static class AxisState {
+		private double position;
+		private double velocity;
+		private double positionVariance;
+		private double covariance;
+		private double velocityVariance;
+
+		public void initialize(double position, double measurementVariance) {
+			this.position = position;
+			velocity = 0;
+			positionVariance = measurementVariance;
+			covariance = 0;
+			velocityVariance = INITIAL_SPEED_UNCERTAINTY * INITIAL_SPEED_UNCERTAINTY;
+		}
+
+		/**
+		 * Advances the state by the given number of seconds, with uncertainty growing as if the velocity were subject to
+		 * random accelerations of the given variance.
+		 */
+		public void predict(double seconds, double accelerationVariance) {
+			double seconds2 = seconds * seconds;
+			double seconds3 = seconds2 * seconds;
+			double seconds4 = seconds3 * seconds;
+
+			position += velocity * seconds;
+			positionVariance += 2 * seconds * covariance + seconds2 * velocityVariance +
+					accelerationVariance * seconds4 / 4;
+			covariance += seconds * velocityVariance + accelerationVariance * seconds3 / 2;
+			velocityVariance += accelerationVariance * seconds2;
+		}
+
+		public void update(double measuredPosition, double measurementVariance) {
+			double innovationVariance = positionVariance + measurementVariance;
+			double positionGain = positionVariance / innovationVariance;
+			double velocityGain = covariance / innovationVariance;
+			double innovation = measuredPosition - position;
+
+			position += positionGain * innovation;
+			velocity += velocityGain * innovation;
+
+			velocityVariance -= velocityGain * covariance;
+			covariance *= 1 - positionGain;
+			positionVariance *= 1 - positionGain;
+		}
+	}
+}
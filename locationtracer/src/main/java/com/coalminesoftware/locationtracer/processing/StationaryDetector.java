@@ -0,0 +1,123 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import android.location.Location;
+
+/**
+ * Judges whether the device is stationary from the locations passing through it, and drops locations while it is, so
+ * that a parked device doesn't keep storing near-identical fixes.
+ * <p>
+ * The anchor is the mean position of the fixes since the last significant movement.  A fix is significant movement if it
+ * is outside a radius of the anchor by more than its own accuracy, so that jitter in a stationary device's fixes isn't
+ * mistaken for movement.  The device is judged stationary once it has gone a
+ * given duration without significant movement.  Until then, every fix is passed along, and significant movement becomes
+ * the new anchor.  Once stationary, fixes are dropped until one is significant movement, which is passed along, becomes
+ * the new anchor, and ends the stationary period.
+ * <p>
+ * A {@link StationaryStateListener} is notified as the device becomes stationary and starts moving again, which
+ * {@link com.coalminesoftware.locationtracer.LocationTracer} uses to request locations less often while stationary.  A
+ * detector given to the tracer is added to the end of its processing, after any processor set on the tracer.
+ */
+public class StationaryDetector implements LocationProcessor {
+	private final float stationaryRadius;
+	private final long stationaryDuration;
+	private final float[] distanceResult = new float[1];
+
+	private boolean anchored;
+	private double anchorLatitude;
+	private double anchorLongitude;
+	private long anchorTime;
+	private int anchorFixCount;
+
+	private volatile boolean stationary;
+	private volatile StationaryStateListener stationaryStateListener;
+
+	/**
+	 * @param stationaryRadius The distance, in meters, from the anchor beyond which a fix may be significant
+	 * movement.
+	 * @param stationaryDuration How long, in milliseconds, the device must go without significant movement to be judged
+	 * stationary.
+	 */
+	public StationaryDetector(float stationaryRadius, long stationaryDuration) {
+		this.stationaryRadius = stationaryRadius;
+		this.stationaryDuration = stationaryDuration;
+	}
+
+	@Override
+	public void processLocation(Location location, LocationSink sink) {
+		if(!anchored) {
+			setAnchor(location);
+			sink.acceptLocation(location);
+			return;
+		}
+
+		Location.distanceBetween(anchorLatitude, anchorLongitude,
+				location.getLatitude(), location.getLongitude(), distanceResult);
+		float accuracy = location.hasAccuracy()? location.getAccuracy() : 0;
+		boolean significantMovement = distanceResult[0] - accuracy > stationaryRadius;
+
+		if(stationary) {
+			if(significantMovement) {
+				setAnchor(location);
+				setStationary(false);
+				sink.acceptLocation(location);
+			} else {
+				addToAnchor(location);
+			}
+
+			return;
+		}
+
+		if(significantMovement) {
+			setAnchor(location);
+		} else {
+			addToAnchor(location);
+			if(location.getTime() - anchorTime >= stationaryDuration) {
+				setStationary(true);
+			}
+		}
+
+		sink.acceptLocation(location);
+	}
+
+	@Override
+	public void flush(LocationSink sink) { }
+
+	private void setAnchor(Location location) {
+		anchored = true;
+		anchorLatitude = location.getLatitude();
+		anchorLongitude = location.getLongitude();
+		anchorTime = location.getTime();
+		anchorFixCount = 1;
+	}
+
+	private void addToAnchor(Location location) {
+		anchorFixCount++;
+		anchorLatitude += (location.getLatitude() - anchorLatitude) / anchorFixCount;
+		anchorLongitude += (location.getLongitude() - anchorLongitude) / anchorFixCount;
+	}
+
+	private void setStationary(boolean stationary) {
+		this.stationary = stationary;
+
+		StationaryStateListener listener = stationaryStateListener;
+		if(listener != null) {
+			listener.onStationaryStateChanged(stationary);
+		}
+	}
+
+	public boolean isStationary() {
+		return stationary;
+	}
+
+	/**
+	 * @param stationaryStateListener Notified, on the thread processing locations, when the device becomes stationary
+	 * or starts moving again.  Null if no listener should be notified.
+	 */
+	public void setStationaryStateListener(StationaryStateListener stationaryStateListener) {
+		this.stationaryStateListener = stationaryStateListener;
+	}
+
+	public interface StationaryStateListener {
+		void onStationaryStateChanged(boolean stationary);
+	}
+}
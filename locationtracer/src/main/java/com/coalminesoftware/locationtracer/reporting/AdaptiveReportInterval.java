@@ -0,0 +1,86 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Determines the delay before each report from the number of unreported locations and how long recent batches took to
+ * be reported, rather than reporting at a fixed interval.
+ * <p>
+ * When nothing awaits reporting, reports are put off for the maximum interval.  Otherwise, no location waits longer than
+ * the target latency for the next report, and the delay shrinks below that as recent batches are reported faster
+ * relative to the target latency: fast reports are cheap enough to make often, while slow ones suggest a congested
+ * connection that more frequent reports would only add to.  Until a batch has been reported, reports are assumed to
+ * be slow.  The delay then shrinks towards the minimum interval as the backlog grows towards a given size - such as a
+ * full batch - so that large backlogs are drained without waiting out a full interval between reports.
+ */
+public class AdaptiveReportInterval {
+	private final long minimumInterval;
+	private final long maximumInterval;
+	private final long targetLatency;
+	private final int backlogLocationCount;
+
+	/**
+	 * @param minimumInterval The shortest number of milliseconds between reports.
+	 * @param maximumInterval The longest number of milliseconds between reports.
+	 * @param targetLatency The longest number of milliseconds that a stored location should wait to be reported, and
+	 * the batch latency at or above which reports are considered slow.
+	 * @param backlogLocationCount The number of unreported locations at which reports are made as often as the minimum
+	 * interval allows.
+	 */
+	public AdaptiveReportInterval(long minimumInterval, long maximumInterval, long targetLatency,
+			int backlogLocationCount) {
+		if(minimumInterval < 0 || maximumInterval < minimumInterval) {
+			throw new IllegalArgumentException("Intervals must be non-negative, with the maximum no less than the minimum.");
+		}
+		if(targetLatency < 1) {
+			throw new IllegalArgumentException("Target latency must be positive.");
+		}
+		if(backlogLocationCount < 1) {
+			throw new IllegalArgumentException("Backlog location count must be positive.");
+		}
+
+		this.minimumInterval = minimumInterval;
+		this.maximumInterval = maximumInterval;
+		this.targetLatency = targetLatency;
+		this.backlogLocationCount = backlogLocationCount;
+	}
+
+	/**
+	 * @param unreportedLocationCount The number of locations awaiting a report.
+	 * @param averageBatchLatency The average number of milliseconds recent batches took to be reported, or null if
+	 * none have been.
+	 * @return The number of milliseconds until the next report.
+	 */
+	public long determineReportDelay(int unreportedLocationCount, Long averageBatchLatency) {
+		if(unreportedLocationCount == 0) {
+			return maximumInterval;
+		}
+
+		long latestDelay = clamp(targetLatency);
+		double slowReportFraction = averageBatchLatency == null?
+				1.0 :
+				Math.min(1.0, (double)averageBatchLatency / targetLatency);
+		long latencyBoundDelay = minimumInterval + (long)((latestDelay - minimumInterval) * slowReportFraction);
+
+		double backlogFraction = Math.min(1.0, (double)unreportedLocationCount / backlogLocationCount);
+		return clamp(latencyBoundDelay - (long)((latencyBoundDelay - minimumInterval) * backlogFraction));
+	}
+
+	private long clamp(long delay) {
+		return Math.max(minimumInterval, Math.min(maximumInterval, delay));
+	}
+
+	public long getMinimumInterval() {
+		return minimumInterval;
+	}
+
+	public long getMaximumInterval() {
+		return maximumInterval;
+	}
+
+	public long getTargetLatency() {
+		return targetLatency;
+	}
+
+	public int getBacklogLocationCount() {
+		return backlogLocationCount;
+	}
+}
@@ -0,0 +1,207 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import android.location.Location;
+import android.os.Debug;
+
+import com.coalminesoftware.locationtracer.encoding.LocationBatchEncoder;
+import com.coalminesoftware.locationtracer.encoding.TraceBatchEncoder;
+import com.coalminesoftware.locationtracer.storage.LocationBatch;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+
+/**
+ * A {@link LocationReporter} that encodes each batch of locations with a {@link LocationBatchEncoder}, compresses the
+ * result with DEFLATE (in the zlib format), and hands the resulting payload to a {@link PayloadTransport}.  The batch is
+ * considered reported once the transport has sent its payload.
+ * <p>
+ * The encoding buffer and {@link Deflater} are reused for every batch, and payload buffers are returned to a pool once
+ * their payloads have been sent, so that reporting doesn't allocate buffers once enough have been created to cover the
+ * batches in flight.
+ *
+ * @param <StorageLocation>
+ */
+public class CompressingLocationReporter<StorageLocation> implements SequencedLocationReporter<StorageLocation> {
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	private final LocationBatchEncoder<StorageLocation> batchEncoder;
+	private final PayloadTransport payloadTransport;
+	private final CompressionMetricsListener compressionMetricsListener;
+
+	private final Deflater deflater;
+	private final EncodingBuffer encodingBuffer = new EncodingBuffer();
+	private final Deque<byte[]> payloadBuffers = new ArrayDeque<>();
+
+	/**
+	 * Creates a reporter for {@link Location}s that encodes batches with a {@link TraceBatchEncoder} and compresses them
+	 * at the default compression level.
+	 */
+	public static CompressingLocationReporter<Location> forLocations(PayloadTransport payloadTransport) {
+		return new CompressingLocationReporter<>(new TraceBatchEncoder(), payloadTransport,
+				Deflater.DEFAULT_COMPRESSION, null);
+	}
+
+	/**
+	 * @param compressionLevel A {@link Deflater} compression level, from {@link Deflater#NO_COMPRESSION} to
+	 * {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+	 * @param compressionMetricsListener Notified as each batch is compressed.  May be null.
+	 */
+	public CompressingLocationReporter(LocationBatchEncoder<StorageLocation> batchEncoder,
+			PayloadTransport payloadTransport, int compressionLevel,
+			CompressionMetricsListener compressionMetricsListener) {
+		this.batchEncoder = batchEncoder;
+		this.payloadTransport = payloadTransport;
+		this.compressionMetricsListener = compressionMetricsListener;
+
+		deflater = new Deflater(compressionLevel);
+	}
+
+	@Override
+	public void reportLocations(final List<StorageLocation> locations,
+			final ReportCompletionHandler<StorageLocation> reportCompletionHandler) {
+		sendLocations(null, locations, reportCompletionHandler, new Runnable() {
+			@Override
+			public void run() {
+				reportCompletionHandler.onLocationReportComplete(locations);
+			}
+		});
+	}
+
+	@Override
+	public void reportLocations(LocationBatch<StorageLocation> batch,
+			final SequencedReportCompletionHandler<StorageLocation> reportCompletionHandler) {
+		final SequenceRange reportedRange = batch.getSequenceRange();
+		sendLocations(batch.getBatchId(), batch.getLocations(), reportCompletionHandler, new Runnable() {
+			@Override
+			public void run() {
+				reportCompletionHandler.onLocationReportComplete(reportedRange);
+			}
+		});
+	}
+
+	/**
+	 * @param completionAction Run once the payload has been sent, to notify the completion handler.
+	 */
+	private void sendLocations(String batchId, List<StorageLocation> locations,
+			final ReportCompletionHandler<StorageLocation> reportCompletionHandler, final Runnable completionAction) {
+		final Payload payload;
+		try {
+			payload = preparePayload(locations);
+		} catch(IOException e) {
+			reportCompletionHandler.onLocationReportFailed(e);
+			return;
+		}
+
+		if(compressionMetricsListener != null) {
+			compressionMetricsListener.onBatchCompressed(payload.getMetrics());
+		}
+
+		payloadTransport.sendPayload(batchId, payload.getBuffer(), payload.getMetrics().getCompressedSize(),
+				new PayloadTransport.PayloadCompletionHandler() {
+					@Override
+					public void onPayloadSent() {
+						returnPayloadBuffer(payload.getBuffer());
+						completionAction.run();
+					}
+
+					@Override
+					public void onPayloadFailed(Exception cause) {
+						returnPayloadBuffer(payload.getBuffer());
+						reportCompletionHandler.onLocationReportFailed(cause);
+					}
+				});
+	}
+
+	private synchronized Payload preparePayload(List<StorageLocation> locations) throws IOException {
+		long startCpuTime = Debug.threadCpuTimeNanos();
+
+		encodingBuffer.reset();
+		batchEncoder.encodeLocations(locations, encodingBuffer);
+		byte[] payloadBuffer = compress(takePayloadBuffer());
+
+		return new Payload(payloadBuffer, new CompressionMetrics(
+				locations.size(),
+				encodingBuffer.size(),
+				deflater.getTotalOut(),
+				Debug.threadCpuTimeNanos() - startCpuTime));
+	}
+
+	/**
+	 * Compresses the contents of the encoding buffer into the given payload buffer, growing it as necessary.
+	 *
+	 * @return The payload buffer holding the compressed batch, which may be larger than the one given.
+	 */
+	private byte[] compress(byte[] payloadBuffer) {
+		deflater.reset();
+		deflater.setInput(encodingBuffer.getBuffer(), 0, encodingBuffer.size());
+		deflater.finish();
+
+		int payloadLength = 0;
+		while(!deflater.finished()) {
+			if(payloadLength == payloadBuffer.length) {
+				payloadBuffer = Arrays.copyOf(payloadBuffer, payloadBuffer.length * 2);
+			}
+			payloadLength += deflater.deflate(payloadBuffer, payloadLength, payloadBuffer.length - payloadLength);
+		}
+
+		return payloadBuffer;
+	}
+
+	private byte[] takePayloadBuffer() {
+		byte[] payloadBuffer = payloadBuffers.pollFirst();
+		return payloadBuffer == null? new byte[INITIAL_BUFFER_SIZE] : payloadBuffer;
+	}
+
+	private synchronized void returnPayloadBuffer(byte[] payloadBuffer) {
+		payloadBuffers.addFirst(payloadBuffer);
+	}
+
+	/**
+	 * Releases the native resources held by the compressor.  The reporter can't be used once it has been closed.
+	 */
+	public synchronized void close() {
+		deflater.end();
+	}
+
+	/**
+	 * Notified with the {@link CompressionMetrics} of each batch, before its payload is handed to the transport.
+	 */
+	public interface CompressionMetricsListener {
+		void onBatchCompressed(CompressionMetrics metrics);
+	}
+
+	private static class Payload {
+		private final byte[] buffer;
+		private final CompressionMetrics metrics;
+
+		public Payload(byte[] buffer, CompressionMetrics metrics) {
+			this.buffer = buffer;
+			this.metrics = metrics;
+		}
+
+		public byte[] getBuffer() {
+			return buffer;
+		}
+
+		public CompressionMetrics getMetrics() {
+			return metrics;
+		}
+	}
+
+	/** A {@link ByteArrayOutputStream} whose contents can be read without being copied. */
+	private static class EncodingBuffer extends ByteArrayOutputStream {
+		public EncodingBuffer() {
+			super(INITIAL_BUFFER_SIZE);
+		}
+
+		public byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
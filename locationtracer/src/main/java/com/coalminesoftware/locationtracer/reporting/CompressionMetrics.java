@@ -0,0 +1,50 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Describes the encoding and compression of a single report batch by a {@link CompressingLocationReporter}.
+ */
+public class CompressionMetrics {
+	private final int locationCount;
+	private final int encodedSize;
+	private final int compressedSize;
+	private final long cpuTimeNanos;
+
+	public CompressionMetrics(int locationCount, int encodedSize, int compressedSize, long cpuTimeNanos) {
+		this.locationCount = locationCount;
+		this.encodedSize = encodedSize;
+		this.compressedSize = compressedSize;
+		this.cpuTimeNanos = cpuTimeNanos;
+	}
+
+	public int getLocationCount() {
+		return locationCount;
+	}
+
+	/** @return The size of the batch, in bytes, once encoded and before being compressed. */
+	public int getEncodedSize() {
+		return encodedSize;
+	}
+
+	/** @return The size of the payload, in bytes. */
+	public int getCompressedSize() {
+		return compressedSize;
+	}
+
+	/** @return The encoded size divided by the compressed size. */
+	public double getCompressionRatio() {
+		return compressedSize == 0? 0 : (double)encodedSize / compressedSize;
+	}
+
+	/** @return The CPU time spent by the reporting thread encoding and compressing the batch, in nanoseconds. */
+	public long getCpuTimeNanos() {
+		return cpuTimeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "CompressionMetrics[locations=" + locationCount +
+				", encoded=" + encodedSize +
+				", compressed=" + compressedSize +
+				", cpuTimeNanos=" + cpuTimeNanos + "]";
+	}
+}
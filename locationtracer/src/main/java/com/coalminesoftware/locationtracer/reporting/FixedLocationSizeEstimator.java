@@ -0,0 +1,20 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * A {@link LocationSizeEstimator} that estimates every location to be the same size.
+ */
+public class FixedLocationSizeEstimator<StorageLocation> implements LocationSizeEstimator<StorageLocation> {
+	private long locationSize;
+
+	/**
+	 * @param locationSize The number of bytes that each location is estimated to occupy.
+	 */
+	public FixedLocationSizeEstimator(long locationSize) {
+		this.locationSize = locationSize;
+	}
+
+	@Override
+	public long estimateSize(StorageLocation location) {
+		return locationSize;
+	}
+}
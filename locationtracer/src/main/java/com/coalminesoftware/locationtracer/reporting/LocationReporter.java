@@ -7,7 +7,10 @@ public interface LocationReporter<StorageLocation> {
 	/**
 	 * Attempt to report the given locations. Implementers must call
 	 * {@link ReportCompletionHandler#onLocationReportComplete(Collection)} on the provided
-	 * {@link ReportCompletionHandler} once the given locations have been reported.
+	 * {@link ReportCompletionHandler} once the given locations have been reported, or
+	 * {@link ReportCompletionHandler#onLocationReportFailed(Exception)} if they couldn't be.  If only some of the
+	 * locations were reported, a prefix of the given list may be passed to
+	 * {@link ReportCompletionHandler#onLocationReportComplete(Collection)}, and the rest will be reported again.
 	 * 
 	 * @param locations Locations to report.
 	 */
@@ -20,5 +23,13 @@ public interface LocationReporter<StorageLocation> {
 	 */
 	interface ReportCompletionHandler<StorageLocation> {
 		void onLocationReportComplete(Collection<StorageLocation> reportedLocations);
+
+		/**
+		 * Notifies the library that the report failed.  None of the locations are removed, and further reports are held
+		 * off according to the tracer's {@link RetryPolicy}.
+		 *
+		 * @param cause Describes the failure.  May be null.
+		 */
+		void onLocationReportFailed(Exception cause);
 	}
 }
@@ -0,0 +1,13 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Estimates how many bytes a location will occupy in a report, so that report batches can be limited by size.
+ *
+ * @param <StorageLocation>
+ */
+public interface LocationSizeEstimator<StorageLocation> {
+	/**
+	 * @return The estimated number of bytes that the given location will add to a report.
+	 */
+	long estimateSize(StorageLocation location);
+}
@@ -0,0 +1,29 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Sends an encoded report payload, such as one prepared by {@link CompressingLocationReporter}, to wherever locations
+ * are reported.
+ */
+public interface PayloadTransport {
+	/**
+	 * Attempt to send the given payload.  Implementers must call {@link PayloadCompletionHandler#onPayloadSent()} on the
+	 * provided handler once the payload has been sent, or {@link PayloadCompletionHandler#onPayloadFailed(Exception)} if
+	 * it couldn't be.  The payload array is reused for later payloads once the handler has been called, so it must not
+	 * be retained beyond that point.
+	 *
+	 * @param batchId The ID of the batch that the payload holds, or null if the batch has no ID.
+	 * @param payload An array holding the payload, starting at its first element.
+	 * @param payloadLength The number of bytes in the payload.
+	 * @see com.coalminesoftware.locationtracer.storage.LocationBatch#getBatchId()
+	 */
+	void sendPayload(String batchId, byte[] payload, int payloadLength, PayloadCompletionHandler payloadCompletionHandler);
+
+	/**
+	 * Used by {@link PayloadTransport} implementers to notify the library whether a payload was successfully sent.
+	 */
+	interface PayloadCompletionHandler {
+		void onPayloadSent();
+
+		void onPayloadFailed(Exception cause);
+	}
+}
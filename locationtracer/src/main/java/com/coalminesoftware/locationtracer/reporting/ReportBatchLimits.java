@@ -0,0 +1,65 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Limits on the size of each batch of locations handed to a {@link LocationReporter}, and on how long successive
+ * batches may be reported before the remaining locations are left for the next report.
+ *
+ * @param <StorageLocation>
+ */
+public class ReportBatchLimits<StorageLocation> {
+	private final int maximumBatchLocationCount;
+	private final long maximumBatchSize;
+	private final LocationSizeEstimator<StorageLocation> locationSizeEstimator;
+	private final Long reportDurationLimit;
+
+	/**
+	 * @param maximumBatchLocationCount The maximum number of locations in a batch.
+	 */
+	public ReportBatchLimits(int maximumBatchLocationCount) {
+		this(maximumBatchLocationCount, Long.MAX_VALUE, null, null);
+	}
+
+	/**
+	 * @param maximumBatchLocationCount The maximum number of locations in a batch.
+	 * @param maximumBatchSize The maximum estimated size of a batch, in bytes.  A batch always contains at least one
+	 * location, even if that location alone is estimated to exceed this size.
+	 * @param locationSizeEstimator Used to estimate the size of each location, or null if batches aren't limited by
+	 * size.
+	 * @param reportDurationLimit The number of milliseconds after a report starts that no further batches will be
+	 * started, or null if batches should be reported until no unreported locations remain.
+	 */
+	public ReportBatchLimits(int maximumBatchLocationCount, long maximumBatchSize,
+			LocationSizeEstimator<StorageLocation> locationSizeEstimator, Long reportDurationLimit) {
+		if(maximumBatchLocationCount < 1) {
+			throw new IllegalArgumentException("Batches must be allowed to contain at least one location.");
+		}
+
+		this.maximumBatchLocationCount = maximumBatchLocationCount;
+		this.maximumBatchSize = maximumBatchSize;
+		this.locationSizeEstimator = locationSizeEstimator;
+		this.reportDurationLimit = reportDurationLimit;
+	}
+
+	/**
+	 * @return Limits under which every stored location is reported in a single batch.
+	 */
+	public static <StorageLocation> ReportBatchLimits<StorageLocation> unlimited() {
+		return new ReportBatchLimits<StorageLocation>(Integer.MAX_VALUE);
+	}
+
+	public int getMaximumBatchLocationCount() {
+		return maximumBatchLocationCount;
+	}
+
+	public long getMaximumBatchSize() {
+		return maximumBatchSize;
+	}
+
+	public LocationSizeEstimator<StorageLocation> getLocationSizeEstimator() {
+		return locationSizeEstimator;
+	}
+
+	public Long getReportDurationLimit() {
+		return reportDurationLimit;
+	}
+}
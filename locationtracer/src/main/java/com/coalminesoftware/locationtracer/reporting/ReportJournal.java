@@ -0,0 +1,31 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+
+/**
+ * Persists the state that a {@link ReportingPipeline} needs to assign the same batch IDs to the same batches after the
+ * process restarts: the epoch that IDs are derived from, how far the store has been read, and the ranges of batches
+ * that may have been sent without being acknowledged.
+ */
+public interface ReportJournal {
+	/** @return Whether the journal holds state written by {@link #write(long, long, Collection)}. */
+	boolean isEmpty();
+
+	long getEpoch();
+
+	/** @return The sequence number of the first location that hadn't been read from the store. */
+	long getNextSequence();
+
+	/** @return The ranges of batches that were in flight or waiting to be reported again, ordered by their starts. */
+	List<SequenceRange> getOutstandingRanges();
+
+	/**
+	 * Replaces the journal's state.
+	 *
+	 * @param outstandingRanges The ranges of batches that are in flight or waiting to be reported again.
+	 */
+	void write(long epoch, long nextSequence, Collection<SequenceRange> outstandingRanges);
+}
@@ -0,0 +1,576 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+import com.coalminesoftware.locationtracer.storage.LocationBatch;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStore;
+import com.coalminesoftware.locationtracer.time.Clock;
+import com.coalminesoftware.locationtracer.time.ElapsedRealtimeClock;
+
+/**
+ * Reports the locations held by a {@link SequencedLocationStore} in successive batches bounded by
+ * {@link ReportBatchLimits}, reading the store a page at a time rather than copying it in its entirety.
+ * <p>
+ * Up to a given number of disjoint batches may be in flight at once.  Batches are read from the store starting where
+ * the previous batch ended, so locations that are already in flight are never handed to the reporter again.
+ * <p>
+ * Reporters may acknowledge part of a batch.  The unacknowledged remainder is queued, without reading the store again,
+ * and reported ahead of locations that haven't yet been reported.  Locations are removed from the store up to a
+ * watermark - the oldest location that is in flight, queued, or not yet read - so stores are only ever asked to remove
+ * their oldest locations, and acknowledged locations that follow unacknowledged ones are removed once those have been
+ * reported.
+ * <p>
+ * A failed batch is queued in its entirety and ends the report in progress.  When given a {@link RetryPolicy}, reports
+ * are then skipped until the policy allows another attempt, and the pipeline's {@link RetryListener} is told when that
+ * is so that a report can be scheduled for then.  Each call to {@link #report()} counts as a single attempt, however
+ * many of its batches fail.  While the policy's circuit is half-open, only a single batch is put in flight.
+ * <p>
+ * Each batch handed to a {@link SequencedLocationReporter} carries a batch ID derived from its range, which stays the
+ * same when the batch is reported again.  Given a {@link ReportJournal}, the pipeline records the ranges of batches that
+ * may have been sent without being acknowledged, and after a restart reports those ranges first, under the same IDs, so
+ * that servers can discard batches they already received.
+ * <p>
+ * Completing a batch removes reported locations from the store, writes the journal, and reads the batches that follow
+ * it.  Since reporters typically complete batches on a network or main thread, a pipeline may be given a dispatch
+ * executor to do that work on instead.
+ *
+ * @param <StorageLocation>
+ */
+public class ReportingPipeline<StorageLocation> {
+	/** Weight given to each completed batch's latency in the average batch latency. */
+	private static final double BATCH_LATENCY_SMOOTHING_FACTOR = 0.25;
+
+	private final SequencedLocationStore<StorageLocation> locationStore;
+	private final LocationReporter<StorageLocation> locationReporter;
+	private final ReportBatchLimits<StorageLocation> batchLimits;
+	private final int maximumInFlightBatchCount;
+	private final RetryScheduler retryScheduler;
+	private final ReportJournal reportJournal;
+	private volatile RetryListener retryListener;
+	private volatile Executor dispatchExecutor;
+	private Clock clock = ElapsedRealtimeClock.INSTANCE;
+
+	/** Distinguishes batch IDs from those assigned to the same ranges of an unrelated sequence of locations. */
+	private long epoch;
+
+	/** Batches that have been handed to the reporter and not yet completed, keyed by the start of their ranges. */
+	private final TreeMap<Long, LocationBatch<StorageLocation>> inFlightBatches = new TreeMap<>();
+	/** Unacknowledged parts of completed batches, waiting to be reported again, keyed by the start of their ranges. */
+	private final TreeMap<Long, LocationBatch<StorageLocation>> queuedBatches = new TreeMap<>();
+
+	/** Sequence number of the first location that hasn't been read from the store. */
+	private long nextSequence = Long.MIN_VALUE;
+	/** Sequence number before which every reported location has been removed from the store. */
+	private long removalWatermark = Long.MIN_VALUE;
+
+	private boolean reporting;
+	private Long reportDeadline;
+	private boolean dispatching;
+	/** Whether a batch has failed since the last report attempt began, so that later failures aren't counted again. */
+	private boolean attemptFailed;
+
+	/** Exponentially weighted moving average of the time between dispatching and completing a batch. */
+	private Long averageBatchLatency;
+
+	/**
+	 * @param maximumInFlightBatchCount The maximum number of batches that may be handed to the reporter without having
+	 * been reported.
+	 */
+	public ReportingPipeline(SequencedLocationStore<StorageLocation> locationStore,
+			LocationReporter<StorageLocation> locationReporter, ReportBatchLimits<StorageLocation> batchLimits,
+			int maximumInFlightBatchCount) {
+		this(locationStore, locationReporter, batchLimits, maximumInFlightBatchCount, null);
+	}
+
+	/**
+	 * @param maximumInFlightBatchCount The maximum number of batches that may be handed to the reporter without having
+	 * been reported.
+	 * @param retryPolicy Determines how long reporting is held off after failed reports, or null if reports should be
+	 * attempted whenever {@link #report()} is called.
+	 */
+	public ReportingPipeline(SequencedLocationStore<StorageLocation> locationStore,
+			LocationReporter<StorageLocation> locationReporter, ReportBatchLimits<StorageLocation> batchLimits,
+			int maximumInFlightBatchCount, RetryPolicy retryPolicy) {
+		this(locationStore, locationReporter, batchLimits, maximumInFlightBatchCount, retryPolicy, null);
+	}
+
+	/**
+	 * @param maximumInFlightBatchCount The maximum number of batches that may be handed to the reporter without having
+	 * been reported.
+	 * @param retryPolicy Determines how long reporting is held off after failed reports, or null if reports should be
+	 * attempted whenever {@link #report()} is called.
+	 * @param reportJournal Records outstanding batches so that they can be reported under the same IDs after a restart,
+	 * or null if batch IDs needn't outlive the pipeline.  Only stores that retain their locations and sequence numbers
+	 * across restarts should be used with a journal.
+	 */
+	public ReportingPipeline(SequencedLocationStore<StorageLocation> locationStore,
+			LocationReporter<StorageLocation> locationReporter, ReportBatchLimits<StorageLocation> batchLimits,
+			int maximumInFlightBatchCount, RetryPolicy retryPolicy, ReportJournal reportJournal) {
+		if(maximumInFlightBatchCount < 1) {
+			throw new IllegalArgumentException("At least one batch must be allowed in flight.");
+		}
+
+		this.locationStore = locationStore;
+		this.locationReporter = locationReporter;
+		this.batchLimits = batchLimits;
+		this.maximumInFlightBatchCount = maximumInFlightBatchCount;
+		retryScheduler = retryPolicy == null? null : new RetryScheduler(retryPolicy);
+		this.reportJournal = reportJournal;
+
+		recoverReportJournal();
+	}
+
+	/**
+	 * Restores the epoch and read position recorded by the journal, and queues the batches that were outstanding so
+	 * that they're reported first.  Locations read before the recorded position that weren't outstanding were reported,
+	 * so they're removed.  If the journal is empty, or the store no longer holds the locations it describes, a new
+	 * epoch is started.
+	 */
+	private void recoverReportJournal() {
+		SequenceRange storedRange = locationStore.getSequenceRange();
+		if(reportJournal == null || reportJournal.isEmpty() || reportJournal.getNextSequence() > storedRange.getEnd()) {
+			epoch = new Random().nextLong();
+			return;
+		}
+
+		epoch = reportJournal.getEpoch();
+		nextSequence = reportJournal.getNextSequence();
+
+		for(SequenceRange range : reportJournal.getOutstandingRanges()) {
+			long start = Math.max(range.getStart(), storedRange.getStart());
+			long end = Math.min(range.getEnd(), storedRange.getEnd());
+			if(start < end) {
+				queueBatch(locationStore.getLocationBatch(start, (int)(end - start)));
+			}
+		}
+
+		removeReportedLocations();
+	}
+
+	/**
+	 * Starts reporting stored locations that aren't already in flight, until no unreported locations remain or the
+	 * report duration limit is reached.  If a report is already in progress, its duration limit is restarted.  Nothing
+	 * is reported if the retry policy is holding off reports following a failure.
+	 */
+	public void report() {
+		synchronized(this) {
+			if(retryScheduler != null && !retryScheduler.isAttemptAllowed(clock.elapsedRealtime())) {
+				return;
+			}
+
+			reporting = true;
+			reportDeadline = determineReportDeadline();
+			attemptFailed = false;
+		}
+
+		dispatchBatches();
+	}
+
+	/** @return The number of batches that have been handed to the reporter and not yet reported. */
+	public synchronized int getOutstandingBatchCount() {
+		return inFlightBatches.size();
+	}
+
+	/** @return The number of locations from partially acknowledged or failed batches waiting to be reported again. */
+	public synchronized int getQueuedLocationCount() {
+		int queuedLocationCount = 0;
+		for(LocationBatch<StorageLocation> batch : queuedBatches.values()) {
+			queuedLocationCount += batch.size();
+		}
+
+		return queuedLocationCount;
+	}
+
+	/**
+	 * @return An exponentially weighted moving average of the number of milliseconds between handing a batch to the
+	 * reporter and the reporter completing it, or null if no batch has been completed.
+	 */
+	public synchronized Long getAverageBatchLatency() {
+		return averageBatchLatency;
+	}
+
+	/**
+	 * @param clock The clock used for report deadlines, batch latencies and retry times.  Defaults to the device's
+	 * elapsed realtime.
+	 */
+	public synchronized void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @param retryListener Notified of the time at which a report may next be attempted, whenever a failed report holds
+	 * off reporting.
+	 */
+	public void setRetryListener(RetryListener retryListener) {
+		this.retryListener = retryListener;
+	}
+
+	/**
+	 * @param dispatchExecutor Runs the work that follows each completed batch - removing its locations from the store,
+	 * writing the journal and dispatching further batches - or null if it should be done on the thread that completes
+	 * the batch.
+	 */
+	public void setDispatchExecutor(Executor dispatchExecutor) {
+		this.dispatchExecutor = dispatchExecutor;
+	}
+
+	/** @return The scheduler tracking failed reports, or null if the pipeline has no retry policy. */
+	public RetryScheduler getRetryScheduler() {
+		return retryScheduler;
+	}
+
+	private Long determineReportDeadline() {
+		Long reportDurationLimit = batchLimits.getReportDurationLimit();
+		return reportDurationLimit == null?
+				null :
+				clock.elapsedRealtime() + reportDurationLimit;
+	}
+
+	/**
+	 * Hands batches to the reporter until the window is full or no unreported locations remain.  Only one thread
+	 * dispatches at a time; batches that complete during a dispatch, including those that reporters complete before
+	 * reportLocations returns, are followed up by the dispatching thread's loop rather than by recursion.
+	 */
+	private void dispatchBatches() {
+		synchronized(this) {
+			if(dispatching) {
+				return;
+			}
+			dispatching = true;
+		}
+
+		while(true) {
+			LocationBatch<StorageLocation> batch;
+			synchronized(this) {
+				batch = startNextBatch();
+				if(batch == null) {
+					dispatching = false;
+					return;
+				}
+			}
+
+			dispatchBatch(batch, new LocationRemovingReportCompletionHandler(batch));
+		}
+	}
+
+	/**
+	 * @return The next batch to report - the oldest queued batch if there is one, or otherwise a batch read from the
+	 * store - or null if no batch should be reported now.
+	 */
+	private LocationBatch<StorageLocation> startNextBatch() {
+		if(!reporting || inFlightBatches.size() >= determineInFlightBatchLimit()) {
+			return null;
+		}
+
+		if(reportDeadline != null && clock.elapsedRealtime() >= reportDeadline) {
+			reporting = false;
+			return null;
+		}
+
+		LocationBatch<StorageLocation> batch;
+		if(!queuedBatches.isEmpty()) {
+			batch = queuedBatches.pollFirstEntry().getValue();
+		} else {
+			batch = readBatch(nextSequence);
+			if(batch.isEmpty()) {
+				reporting = false;
+				return null;
+			}
+
+			nextSequence = batch.getSequenceRange().getEnd();
+		}
+
+		if(batch.getBatchId() == null) {
+			batch = new LocationBatch<StorageLocation>(batch.getSequenceRange(), batch.getLocations(),
+					determineBatchId(batch.getSequenceRange()));
+		}
+
+		inFlightBatches.put(batch.getSequenceRange().getStart(), batch);
+		writeReportJournal();
+
+		return batch;
+	}
+
+	private String determineBatchId(SequenceRange range) {
+		return Long.toHexString(epoch) + ":" + range.getStart() + ":" + range.getEnd();
+	}
+
+	private int determineInFlightBatchLimit() {
+		return retryScheduler != null && retryScheduler.getCircuitState() == RetryScheduler.CircuitState.HALF_OPEN?
+				1 :
+				maximumInFlightBatchCount;
+	}
+
+	private LocationBatch<StorageLocation> readBatch(long startSequence) {
+		return limitBatchSize(locationStore.getLocationBatch(startSequence, batchLimits.getMaximumBatchLocationCount()));
+	}
+
+	private LocationBatch<StorageLocation> limitBatchSize(LocationBatch<StorageLocation> batch) {
+		LocationSizeEstimator<StorageLocation> locationSizeEstimator = batchLimits.getLocationSizeEstimator();
+		if(locationSizeEstimator == null) {
+			return batch;
+		}
+
+		List<StorageLocation> locations = batch.getLocations();
+		long batchSize = 0;
+		int locationCount = 0;
+		for(StorageLocation location : locations) {
+			batchSize += locationSizeEstimator.estimateSize(location);
+			if(locationCount > 0 && batchSize > batchLimits.getMaximumBatchSize()) {
+				break;
+			}
+
+			locationCount++;
+		}
+
+		if(locationCount == locations.size()) {
+			return batch;
+		}
+
+		long startSequence = batch.getSequenceRange().getStart();
+		return new LocationBatch<StorageLocation>(
+				new SequenceRange(startSequence, startSequence + locationCount),
+				new ArrayList<StorageLocation>(locations.subList(0, locationCount)));
+	}
+
+	private void dispatchBatch(LocationBatch<StorageLocation> batch,
+			SequencedReportCompletionHandler<StorageLocation> reportCompletionHandler) {
+		if(locationReporter instanceof SequencedLocationReporter) {
+			((SequencedLocationReporter<StorageLocation>)locationReporter).reportLocations(batch, reportCompletionHandler);
+		} else {
+			locationReporter.reportLocations(batch.getLocations(), reportCompletionHandler);
+		}
+	}
+
+	/**
+	 * Completes an in-flight batch, queueing the parts of it outside the acknowledged range to be reported again and
+	 * removing locations from the store up to the new watermark.  If nothing was acknowledged, the batch is treated as
+	 * having failed: the report in progress ends, so that a reporter that never acknowledges a batch isn't handed it
+	 * again and again, and the failure counts against the retry policy.
+	 *
+	 * @param acknowledgedRange The range of reported locations.
+	 * @param batchLatency The number of milliseconds between handing the batch to the reporter and its completion.
+	 */
+	private void finishBatch(LocationBatch<StorageLocation> batch, SequenceRange acknowledgedRange, long batchLatency) {
+		Long nextAttemptTime = null;
+		synchronized(this) {
+			if(!removeInFlightBatch(batch)) {
+				return;
+			}
+
+			recordBatchLatency(batchLatency);
+
+			SequenceRange range = batch.getSequenceRange();
+			long acknowledgedStart = Math.max(range.getStart(), acknowledgedRange.getStart());
+			long acknowledgedEnd = Math.min(range.getEnd(), acknowledgedRange.getEnd());
+
+			if(acknowledgedStart >= acknowledgedEnd) {
+				queueBatch(batch);
+				reporting = false;
+				nextAttemptTime = recordFailedAttempt();
+			} else {
+				queueBatch(batch.getSubBatch(new SequenceRange(range.getStart(), acknowledgedStart)));
+				queueBatch(batch.getSubBatch(new SequenceRange(acknowledgedEnd, range.getEnd())));
+
+				if(retryScheduler != null) {
+					retryScheduler.onReportSucceeded();
+				}
+			}
+
+			removeReportedLocations();
+			writeReportJournal();
+		}
+
+		notifyRetryListener(nextAttemptTime);
+		dispatchBatches();
+	}
+
+	/**
+	 * Queues a batch whose report failed to be reported again, and ends the report in progress so that it isn't
+	 * immediately handed to the reporter again.  Reporting resumes with the next call to {@link #report()} that the
+	 * retry policy allows, which the retry listener is told of if this is the report attempt's first failure.
+	 */
+	private void failBatch(LocationBatch<StorageLocation> batch) {
+		Long nextAttemptTime;
+		synchronized(this) {
+			if(!removeInFlightBatch(batch)) {
+				return;
+			}
+
+			queueBatch(batch);
+			reporting = false;
+			nextAttemptTime = recordFailedAttempt();
+		}
+
+		notifyRetryListener(nextAttemptTime);
+	}
+
+	/**
+	 * Counts a failure against the retry policy, unless one has already been counted for the report attempt in progress.
+	 *
+	 * @return The elapsed realtime at which a report may next be attempted, or null if the retry listener needn't be
+	 * told of a new time.
+	 */
+	private Long recordFailedAttempt() {
+		if(retryScheduler == null || attemptFailed) {
+			return null;
+		}
+
+		attemptFailed = true;
+		retryScheduler.onReportFailed(clock.elapsedRealtime());
+		return retryScheduler.getNextAttemptTime();
+	}
+
+	/**
+	 * Called without holding the pipeline's lock, since the listener typically schedules an alarm.
+	 */
+	private void notifyRetryListener(Long nextAttemptTime) {
+		RetryListener retryListener = this.retryListener;
+		if(retryListener != null && nextAttemptTime != null) {
+			retryListener.onRetryScheduled(nextAttemptTime);
+		}
+	}
+
+	private void recordBatchLatency(long batchLatency) {
+		averageBatchLatency = averageBatchLatency == null?
+				batchLatency :
+				Math.round(BATCH_LATENCY_SMOOTHING_FACTOR * batchLatency +
+						(1 - BATCH_LATENCY_SMOOTHING_FACTOR) * averageBatchLatency);
+	}
+
+	/** @return Whether the batch was in flight, as opposed to having already been completed. */
+	private boolean removeInFlightBatch(LocationBatch<StorageLocation> batch) {
+		Long start = batch.getSequenceRange().getStart();
+		if(inFlightBatches.get(start) != batch) {
+			return false;
+		}
+
+		inFlightBatches.remove(start);
+		return true;
+	}
+
+	private void queueBatch(LocationBatch<StorageLocation> batch) {
+		if(!batch.isEmpty()) {
+			queuedBatches.put(batch.getSequenceRange().getStart(), batch);
+		}
+	}
+
+	private void writeReportJournal() {
+		if(reportJournal == null) {
+			return;
+		}
+
+		TreeMap<Long, SequenceRange> outstandingRanges = new TreeMap<>();
+		for(LocationBatch<StorageLocation> batch : inFlightBatches.values()) {
+			outstandingRanges.put(batch.getSequenceRange().getStart(), batch.getSequenceRange());
+		}
+		for(LocationBatch<StorageLocation> batch : queuedBatches.values()) {
+			outstandingRanges.put(batch.getSequenceRange().getStart(), batch.getSequenceRange());
+		}
+
+		reportJournal.write(epoch, nextSequence, outstandingRanges.values());
+	}
+
+	/**
+	 * Removes every stored location preceding the oldest location that is in flight, queued, or not yet read.
+	 */
+	private void removeReportedLocations() {
+		long watermark = nextSequence;
+		if(!inFlightBatches.isEmpty()) {
+			watermark = Math.min(watermark, inFlightBatches.firstKey());
+		}
+		if(!queuedBatches.isEmpty()) {
+			watermark = Math.min(watermark, queuedBatches.firstKey());
+		}
+
+		if(watermark > removalWatermark) {
+			long storeStart = locationStore.getSequenceRange().getStart();
+			if(storeStart < watermark) {
+				locationStore.removeLocations(new SequenceRange(storeStart, watermark));
+			}
+
+			removalWatermark = watermark;
+		}
+	}
+
+	/**
+	 * {@link SequencedReportCompletionHandler} implementation that completes a batch, allowing its reported locations to
+	 * be removed from the store and another batch to take its place in flight.
+	 */
+	private class LocationRemovingReportCompletionHandler implements SequencedReportCompletionHandler<StorageLocation> {
+		private final LocationBatch<StorageLocation> batch;
+		private final long dispatchTime = clock.elapsedRealtime();
+
+		public LocationRemovingReportCompletionHandler(LocationBatch<StorageLocation> batch) {
+			this.batch = batch;
+		}
+
+		/**
+		 * Acknowledges the batch's leading locations if the given locations are a prefix of the batch's locations,
+		 * which includes all of them.  Otherwise, nothing is acknowledged and the batch is queued to be reported again.
+		 */
+		@Override
+		public void onLocationReportComplete(Collection<StorageLocation> reportedLocations) {
+			long start = batch.getSequenceRange().getStart();
+			completeBatch(new SequenceRange(start, start + determineReportedPrefixLength(reportedLocations)));
+		}
+
+		private int determineReportedPrefixLength(Collection<StorageLocation> reportedLocations) {
+			List<StorageLocation> locations = batch.getLocations();
+			if(reportedLocations.size() == locations.size()) {
+				return locations.size();
+			}
+			if(reportedLocations.size() > locations.size()) {
+				return 0;
+			}
+
+			Iterator<StorageLocation> locationIterator = locations.iterator();
+			for(StorageLocation reportedLocation : reportedLocations) {
+				if(!reportedLocation.equals(locationIterator.next())) {
+					return 0;
+				}
+			}
+
+			return reportedLocations.size();
+		}
+
+		@Override
+		public void onLocationReportComplete(SequenceRange reportedRange) {
+			completeBatch(reportedRange);
+		}
+
+		/**
+		 * Finishes the batch on the dispatch executor, if there is one, or otherwise on the calling thread.
+		 */
+		private void completeBatch(final SequenceRange acknowledgedRange) {
+			final long batchLatency = clock.elapsedRealtime() - dispatchTime;
+
+			Executor dispatchExecutor = ReportingPipeline.this.dispatchExecutor;
+			if(dispatchExecutor == null) {
+				finishBatch(batch, acknowledgedRange, batchLatency);
+			} else {
+				dispatchExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						finishBatch(batch, acknowledgedRange, batchLatency);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Queues the batch to be reported again without removing any of its locations.
+		 */
+		@Override
+		public void onLocationReportFailed(Exception cause) {
+			failBatch(batch);
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Notified when a failed report holds off reporting, so that the next report can be scheduled for the time at which
+ * the {@link RetryPolicy} allows it.
+ */
+public interface RetryListener {
+	/**
+	 * @param nextAttemptTime The elapsed realtime at which a report may next be attempted.
+	 */
+	void onRetryScheduled(long nextAttemptTime);
+}
@@ -0,0 +1,99 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+/**
+ * Determines how long reporting is held off after reports fail.  Each consecutive failure multiplies the delay before
+ * the next attempt, up to a maximum, and a random portion of each delay is dropped so that many devices recovering from
+ * the same outage don't retry in lockstep.  Once a given number of consecutive failures occurs, the circuit opens and no
+ * reports are attempted for a longer period, jittered the same way, after which a single batch is sent to probe whether
+ * reporting has recovered.  The first successful report restores normal reporting.
+ */
+public class RetryPolicy {
+	/** One second, doubling to at most five minutes, with the circuit opening for fifteen minutes after six failures. */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(1000, 5 * 60 * 1000, 2.0, 0.5, 6, 15 * 60 * 1000);
+
+	private final long initialRetryDelay;
+	private final long maximumRetryDelay;
+	private final double backoffMultiplier;
+	private final double jitterFraction;
+	private final int circuitFailureThreshold;
+	private final long circuitOpenDuration;
+
+	/**
+	 * @param initialRetryDelay The number of milliseconds to wait after the first failure.
+	 * @param maximumRetryDelay The greatest number of milliseconds to wait after a failure while the circuit is closed.
+	 * @param backoffMultiplier The factor by which the delay grows with each consecutive failure.
+	 * @param jitterFraction The largest fraction of each delay, from 0 to 1, that may be randomly dropped.
+	 * @param circuitFailureThreshold The number of consecutive failures that opens the circuit.
+	 * @param circuitOpenDuration The number of milliseconds the circuit stays open before a report is attempted.
+	 */
+	public RetryPolicy(long initialRetryDelay, long maximumRetryDelay, double backoffMultiplier, double jitterFraction,
+			int circuitFailureThreshold, long circuitOpenDuration) {
+		if(initialRetryDelay < 0 || maximumRetryDelay < initialRetryDelay) {
+			throw new IllegalArgumentException("Retry delays must be non-negative, with the maximum no less than the initial delay.");
+		}
+		if(backoffMultiplier < 1) {
+			throw new IllegalArgumentException("Backoff multiplier must be at least 1.");
+		}
+		if(jitterFraction < 0 || jitterFraction > 1) {
+			throw new IllegalArgumentException("Jitter fraction must be between 0 and 1.");
+		}
+		if(circuitFailureThreshold < 1) {
+			throw new IllegalArgumentException("Circuit failure threshold must be positive.");
+		}
+
+		this.initialRetryDelay = initialRetryDelay;
+		this.maximumRetryDelay = maximumRetryDelay;
+		this.backoffMultiplier = backoffMultiplier;
+		this.jitterFraction = jitterFraction;
+		this.circuitFailureThreshold = circuitFailureThreshold;
+		this.circuitOpenDuration = circuitOpenDuration;
+	}
+
+	/**
+	 * @param consecutiveFailureCount The number of consecutive failures, including the one just observed.
+	 * @param random A value from 0 (inclusive) to 1 (exclusive) determining how much jitter is applied.
+	 * @return The number of milliseconds to wait before the next attempt.
+	 */
+	public long determineRetryDelay(int consecutiveFailureCount, double random) {
+		double delay = initialRetryDelay * Math.pow(backoffMultiplier, consecutiveFailureCount - 1);
+		delay = Math.min(delay, maximumRetryDelay);
+
+		return applyJitter(delay, random);
+	}
+
+	/**
+	 * @param random A value from 0 (inclusive) to 1 (exclusive) determining how much jitter is applied.
+	 * @return The number of milliseconds the circuit stays open before a report is attempted.
+	 */
+	public long determineCircuitOpenDuration(double random) {
+		return applyJitter(circuitOpenDuration, random);
+	}
+
+	private long applyJitter(double delay, double random) {
+		return (long)(delay * (1 - jitterFraction * random));
+	}
+
+	public long getInitialRetryDelay() {
+		return initialRetryDelay;
+	}
+
+	public long getMaximumRetryDelay() {
+		return maximumRetryDelay;
+	}
+
+	public double getBackoffMultiplier() {
+		return backoffMultiplier;
+	}
+
+	public double getJitterFraction() {
+		return jitterFraction;
+	}
+
+	public int getCircuitFailureThreshold() {
+		return circuitFailureThreshold;
+	}
+
+	public long getCircuitOpenDuration() {
+		return circuitOpenDuration;
+	}
+}
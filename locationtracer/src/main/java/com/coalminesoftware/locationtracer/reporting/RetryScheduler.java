@@ -0,0 +1,90 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.util.Random;
+
+/**
+ * Tracks the outcome of reports and decides, according to a {@link RetryPolicy}, when the next report may be
+ * attempted.
+ */
+public class RetryScheduler {
+	public enum CircuitState {
+		/** Reports are attempted, subject to the backoff delay following any recent failures. */
+		CLOSED,
+		/** Too many consecutive failures occurred, and no reports are attempted until the circuit's open period ends. */
+		OPEN,
+		/** The circuit's open period ended, and a single batch may be sent to determine whether reporting recovered. */
+		HALF_OPEN
+	}
+
+	private final RetryPolicy retryPolicy;
+	private final Random random = new Random();
+
+	private CircuitState circuitState = CircuitState.CLOSED;
+	private int consecutiveFailureCount;
+	/** Elapsed realtime before which no report should be attempted, or null if one may be attempted at any time. */
+	private Long nextAttemptTime;
+
+	public RetryScheduler(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * @param time The current elapsed realtime.
+	 * @return Whether a report may be attempted at the given time.  If the circuit's open period has ended, the circuit
+	 * becomes half-open.
+	 */
+	public synchronized boolean isAttemptAllowed(long time) {
+		if(nextAttemptTime != null && time < nextAttemptTime) {
+			return false;
+		}
+
+		if(circuitState == CircuitState.OPEN) {
+			circuitState = CircuitState.HALF_OPEN;
+		}
+		return true;
+	}
+
+	/**
+	 * Restores normal reporting.
+	 */
+	public synchronized void onReportSucceeded() {
+		circuitState = CircuitState.CLOSED;
+		consecutiveFailureCount = 0;
+		nextAttemptTime = null;
+	}
+
+	/**
+	 * Holds off further reports until the backoff delay has passed, opening the circuit if the policy's failure
+	 * threshold has been reached or the failure occurred while probing a half-open circuit.
+	 *
+	 * @param time The elapsed realtime at which the failure occurred.
+	 */
+	public synchronized void onReportFailed(long time) {
+		consecutiveFailureCount++;
+
+		if(circuitState == CircuitState.HALF_OPEN ||
+				consecutiveFailureCount >= retryPolicy.getCircuitFailureThreshold()) {
+			circuitState = CircuitState.OPEN;
+			nextAttemptTime = time + retryPolicy.determineCircuitOpenDuration(random.nextDouble());
+		} else if(circuitState == CircuitState.CLOSED) {
+			nextAttemptTime = time + retryPolicy.determineRetryDelay(consecutiveFailureCount, random.nextDouble());
+		}
+	}
+
+	public synchronized CircuitState getCircuitState() {
+		return circuitState;
+	}
+
+	public synchronized int getConsecutiveFailureCount() {
+		return consecutiveFailureCount;
+	}
+
+	/** @return The elapsed realtime before which no report will be attempted, or null if there is no such time. */
+	public synchronized Long getNextAttemptTime() {
+		return nextAttemptTime;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+}
@@ -0,0 +1,24 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.util.List;
+
+import com.coalminesoftware.locationtracer.storage.LocationBatch;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+
+/**
+ * A {@link LocationReporter} that is given the {@link SequenceRange} of the locations it reports, and that acknowledges
+ * a completed report by that range.  When a reporter implements this interface, the library calls
+ * {@link #reportLocations(LocationBatch, SequencedReportCompletionHandler)} rather than
+ * {@link #reportLocations(List, ReportCompletionHandler)}.
+ */
+public interface SequencedLocationReporter<StorageLocation> extends LocationReporter<StorageLocation> {
+	/**
+	 * Attempt to report the given batch of locations. Implementers must call
+	 * {@link SequencedReportCompletionHandler#onLocationReportComplete(SequenceRange)} on the provided handler, with the
+	 * batch's range, once the batch has been reported, or
+	 * {@link SequencedReportCompletionHandler#onLocationReportFailed(Exception)} if it couldn't be.
+	 *
+	 * @param batch Locations to report, along with their sequence range.
+	 */
+	void reportLocations(LocationBatch<StorageLocation> batch, SequencedReportCompletionHandler<StorageLocation> reportCompletionHandler);
+}
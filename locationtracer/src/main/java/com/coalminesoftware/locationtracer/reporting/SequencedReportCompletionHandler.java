@@ -0,0 +1,23 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.util.Collection;
+
+import com.coalminesoftware.locationtracer.reporting.LocationReporter.ReportCompletionHandler;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+import com.coalminesoftware.locationtracer.storage.SequencedLocationStore;
+
+/**
+ * A {@link ReportCompletionHandler} that can be notified of a completed report by the {@link SequenceRange} of the
+ * reported locations, allowing them to be removed from a {@link SequencedLocationStore} without comparing their
+ * contents.
+ */
+public interface SequencedReportCompletionHandler<StorageLocation> extends ReportCompletionHandler<StorageLocation> {
+	/**
+	 * Notifies the library that the locations in the given range were successfully reported.  This is equivalent to,
+	 * and cheaper than, calling {@link #onLocationReportComplete(Collection)} with the batch's locations.
+	 * <p>
+	 * The range may cover only part of the batch, such as a prefix accepted by a server that rejected the rest.  The
+	 * batch's remaining locations are then reported again, ahead of locations that haven't yet been reported.
+	 */
+	void onLocationReportComplete(SequenceRange reportedRange);
+}
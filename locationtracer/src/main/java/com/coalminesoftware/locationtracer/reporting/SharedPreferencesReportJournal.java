@@ -0,0 +1,89 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+
+/**
+ * A {@link ReportJournal} kept in a {@link SharedPreferences} file.  Writes are committed before they return, so the
+ * journal keeps up with the pipeline, and should therefore be made off the main thread, as they are by pipelines
+ * given a dispatch executor.
+ */
+public class SharedPreferencesReportJournal implements ReportJournal {
+	private static final String EPOCH_KEY = "epoch";
+	private static final String NEXT_SEQUENCE_KEY = "next_sequence";
+	private static final String OUTSTANDING_RANGES_KEY = "outstanding_ranges";
+
+	private static final String RANGE_SEPARATOR = ",";
+	private static final String BOUND_SEPARATOR = ":";
+
+	private final SharedPreferences preferences;
+
+	/**
+	 * @param name The name of the preferences file, which should not be used for anything else.
+	 */
+	public SharedPreferencesReportJournal(Context context, String name) {
+		preferences = context.getApplicationContext().getSharedPreferences(name, Context.MODE_PRIVATE);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return preferences.getString(OUTSTANDING_RANGES_KEY, null) == null;
+	}
+
+	@Override
+	public long getEpoch() {
+		return preferences.getLong(EPOCH_KEY, 0);
+	}
+
+	@Override
+	public long getNextSequence() {
+		return preferences.getLong(NEXT_SEQUENCE_KEY, Long.MIN_VALUE);
+	}
+
+	@Override
+	public List<SequenceRange> getOutstandingRanges() {
+		List<SequenceRange> ranges = new ArrayList<>();
+
+		String encodedRanges = preferences.getString(OUTSTANDING_RANGES_KEY, "");
+		if(!encodedRanges.isEmpty()) {
+			for(String encodedRange : encodedRanges.split(RANGE_SEPARATOR)) {
+				ranges.add(decodeRange(encodedRange));
+			}
+		}
+
+		return ranges;
+	}
+
+	private static SequenceRange decodeRange(String encodedRange) {
+		int separatorIndex = encodedRange.indexOf(BOUND_SEPARATOR);
+		return new SequenceRange(
+				Long.parseLong(encodedRange.substring(0, separatorIndex)),
+				Long.parseLong(encodedRange.substring(separatorIndex + 1)));
+	}
+
+	@Override
+	public void write(long epoch, long nextSequence, Collection<SequenceRange> outstandingRanges) {
+		preferences.edit()
+				.putLong(EPOCH_KEY, epoch)
+				.putLong(NEXT_SEQUENCE_KEY, nextSequence)
+				.putString(OUTSTANDING_RANGES_KEY, encodeRanges(outstandingRanges))
+				.commit();
+	}
+
+	private static String encodeRanges(Collection<SequenceRange> ranges) {
+		StringBuilder encodedRanges = new StringBuilder();
+		for(SequenceRange range : ranges) {
+			if(encodedRanges.length() > 0) {
+				encodedRanges.append(RANGE_SEPARATOR);
+			}
+			encodedRanges.append(range.getStart()).append(BOUND_SEPARATOR).append(range.getEnd());
+		}
+
+		return encodedRanges.toString();
+	}
+}
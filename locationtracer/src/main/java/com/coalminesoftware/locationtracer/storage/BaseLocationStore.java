@@ -1,6 +1,7 @@
 package com.coalminesoftware.locationtracer.storage;
 
-import android.os.SystemClock;
+import com.coalminesoftware.locationtracer.time.Clock;
+import com.coalminesoftware.locationtracer.time.ElapsedRealtimeClock;
 
 /**
  * Convenience implementation of {@link LocationStore} that implements {@link #getLastLocationAcceptanceTime()} by
@@ -10,18 +11,29 @@ import android.os.SystemClock;
  * @param <StorageLocation>
  */
 public abstract class BaseLocationStore<StorageLocation> implements LocationStore<StorageLocation> {
-	private Long lastAcceptedLocationTime;
+	/** Held as a primitive, with {@link Long#MIN_VALUE} meaning none, so that accepting a location doesn't allocate. */
+	private static final long NO_ACCEPTED_LOCATION_TIME = Long.MIN_VALUE;
+
+	private volatile Clock clock = ElapsedRealtimeClock.INSTANCE;
+	private volatile long lastAcceptedLocationTime = NO_ACCEPTED_LOCATION_TIME;
 
 	/**
-	 * Updates the time returned by {@link #getLastLocationAcceptanceTime()} to the current value of
-	 * {@link SystemClock#elapsedRealtime()}.
+	 * Updates the time returned by {@link #getLastLocationAcceptanceTime()} to the current time of the store's clock.
 	 */
 	protected void updateLastAcceptedLocationTime() {
-		lastAcceptedLocationTime = SystemClock.elapsedRealtime();
+		lastAcceptedLocationTime = clock.elapsedRealtime();
+	}
+
+	/**
+	 * @param clock The clock used to timestamp accepted locations.  Defaults to the device's elapsed realtime.
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
 	}
 
 	@Override
 	public Long getLastLocationAcceptanceTime() {
-		return lastAcceptedLocationTime;
+		long time = lastAcceptedLocationTime;
+		return time == NO_ACCEPTED_LOCATION_TIME? null : time;
 	}
 }
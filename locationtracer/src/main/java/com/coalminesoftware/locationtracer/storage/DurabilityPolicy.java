@@ -0,0 +1,44 @@
+package com.coalminesoftware.locationtracer.storage;
+
+/**
+ * Determines when a {@link DurableLocationStore} syncs accepted locations to persistent storage.  Syncing is
+ * expensive, so rather than syncing each location as it is accepted, stores sync every location accepted since the
+ * last sync at once, on a background thread, whenever any of the policy's conditions is met.
+ */
+public class DurabilityPolicy {
+	/** A policy that never syncs in the background, leaving locations to be written out by the operating system. */
+	public static final DurabilityPolicy MANUAL = new DurabilityPolicy(0, null, false);
+
+	private int syncLocationCount;
+	private Long syncIntervalDuration;
+	private boolean syncedOnReportStart;
+
+	/**
+	 * @param syncLocationCount The number of unsynced locations that triggers a sync, or 0 if the number of unsynced
+	 * locations shouldn't trigger syncs.
+	 * @param syncIntervalDuration The number of milliseconds between syncs of any unsynced locations, or null if syncs
+	 * shouldn't happen periodically.
+	 * @param syncedOnReportStart Whether unsynced locations should be synced before a report starts.
+	 */
+	public DurabilityPolicy(int syncLocationCount, Long syncIntervalDuration, boolean syncedOnReportStart) {
+		if(syncLocationCount < 0) {
+			throw new IllegalArgumentException("Sync location count cannot be negative.");
+		}
+
+		this.syncLocationCount = syncLocationCount;
+		this.syncIntervalDuration = syncIntervalDuration;
+		this.syncedOnReportStart = syncedOnReportStart;
+	}
+
+	public int getSyncLocationCount() {
+		return syncLocationCount;
+	}
+
+	public Long getSyncIntervalDuration() {
+		return syncIntervalDuration;
+	}
+
+	public boolean isSyncedOnReportStart() {
+		return syncedOnReportStart;
+	}
+}
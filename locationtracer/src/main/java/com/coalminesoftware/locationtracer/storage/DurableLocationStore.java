@@ -0,0 +1,21 @@
+package com.coalminesoftware.locationtracer.storage;
+
+/**
+ * A {@link LocationStore} that persists locations, syncing them to persistent storage according to a
+ * {@link DurabilityPolicy}.
+ *
+ * @param <StorageLocation>
+ */
+public interface DurableLocationStore<StorageLocation> extends LocationStore<StorageLocation> {
+	/**
+	 * @return The number of stored locations that haven't been synced to persistent storage.
+	 */
+	int getUnsyncedLocationCount();
+
+	/**
+	 * Syncs every location accepted by the store to persistent storage, blocking until they have been synced.
+	 */
+	void sync();
+
+	DurabilityPolicy getDurabilityPolicy();
+}
@@ -0,0 +1,90 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+/**
+ * Syncs a {@link DurableLocationStore} on a background thread according to its {@link DurabilityPolicy}.  Locations
+ * accepted while a sync is waiting to run are synced along with it, so each sync commits a group of locations rather
+ * than one location at a time.
+ */
+public class GroupCommitSyncer {
+	private static final String LOGGING_TAG = "GroupCommitSyncer";
+	private static final String THREAD_NAME = "LocationTracer store sync";
+
+	private final DurableLocationStore<?> locationStore;
+	private final DurabilityPolicy durabilityPolicy;
+	private final ScheduledExecutorService executor;
+	private final AtomicBoolean syncPending = new AtomicBoolean();
+
+	private final Runnable syncTask = new Runnable() {
+		@Override
+		public void run() {
+			syncPending.set(false);
+			try {
+				locationStore.sync();
+			} catch(RuntimeException e) {
+				Log.e(LOGGING_TAG, "Unable to sync location store.", e);
+			}
+		}
+	};
+
+	public GroupCommitSyncer(final DurableLocationStore<?> locationStore, DurabilityPolicy durabilityPolicy) {
+		this.locationStore = locationStore;
+		this.durabilityPolicy = durabilityPolicy;
+
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		Long syncIntervalDuration = durabilityPolicy.getSyncIntervalDuration();
+		if(syncIntervalDuration != null) {
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					if(locationStore.getUnsyncedLocationCount() > 0) {
+						requestSync();
+					}
+				}
+			}, syncIntervalDuration, syncIntervalDuration, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Called by the store when it has accepted a location, to request a sync if the policy calls for one.
+	 *
+	 * @param unsyncedLocationCount The number of stored locations that haven't been synced.
+	 */
+	public void onLocationAccepted(int unsyncedLocationCount) {
+		int syncLocationCount = durabilityPolicy.getSyncLocationCount();
+		if(syncLocationCount > 0 && unsyncedLocationCount >= syncLocationCount) {
+			requestSync();
+		}
+	}
+
+	/**
+	 * Requests a sync on the background thread, unless one is already waiting to run.
+	 */
+	public void requestSync() {
+		if(syncPending.compareAndSet(false, true)) {
+			executor.execute(syncTask);
+		}
+	}
+
+	/**
+	 * Stops the background thread.  Syncs that haven't started yet will not run.
+	 */
+	public void shutDown() {
+		executor.shutdownNow();
+	}
+}
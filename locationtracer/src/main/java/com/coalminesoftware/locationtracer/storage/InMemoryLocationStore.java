@@ -2,16 +2,23 @@ package com.coalminesoftware.locationtracer.storage;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * A location store that retains no more than a given number of locations.  Once the store's capacity is reached, excess
  * locations are removed in the order they were offered to the store.
+ * <p>
+ * Locations are held in a list that is indexed by sequence number, so pages are read and ranges removed without
+ * copying the rest of the store.  Removing locations by content from anywhere but the start of the store renumbers the
+ * locations that follow them.
  */
-public class InMemoryLocationStore<StorageLocation> extends BaseLocationStore<StorageLocation> {
-	private Deque<StorageLocation> locations = new LinkedList<>();
+public class InMemoryLocationStore<StorageLocation> extends BaseLocationStore<StorageLocation>
+		implements SequencedLocationStore<StorageLocation> {
+	/** Holds the stored locations from {@link #firstIndex} on.  Earlier slots are cleared and reclaimed by compaction. */
+	private ArrayList<StorageLocation> locations = new ArrayList<>();
+	private int firstIndex;
+	/** Sequence number of the location at {@link #firstIndex}. */
+	private long firstSequence;
 	private int locationCountLimit;
 
 	public InMemoryLocationStore(int locationCountLimit) {
@@ -19,20 +26,41 @@ public class InMemoryLocationStore<StorageLocation> extends BaseLocationStore<St
 	}
 
 	@Override
-	public void offerLocation(StorageLocation location) {
-		locations.addLast(location);
+	public synchronized void offerLocation(StorageLocation location) {
+		locations.add(location);
 		updateLastAcceptedLocationTime();
 
 		purgeExcessLocations();
 	}
 
 	private void purgeExcessLocations() {
-		while(locations.size() > locationCountLimit) {
-			StorageLocation removedLocation = locations.removeFirst();
+		while(getLocationCount() > locationCountLimit) {
+			StorageLocation removedLocation = locations.get(firstIndex);
+			removeFirstLocations(1);
 			onLocationPurged(removedLocation);
 		}
 	}
 
+	/**
+	 * Removes the given number of the oldest locations, compacting the list once at least half of it is unused.
+	 */
+	private void removeFirstLocations(int locationCount) {
+		for(int index = firstIndex; index < firstIndex + locationCount; index++) {
+			locations.set(index, null);
+		}
+		firstIndex += locationCount;
+		firstSequence += locationCount;
+
+		if(firstIndex > locations.size() / 2) {
+			compact();
+		}
+	}
+
+	private void compact() {
+		locations.subList(0, firstIndex).clear();
+		firstIndex = 0;
+	}
+
 	/**
 	 * Called when an excess location is purged from the cache.
 	 * 
@@ -41,21 +69,67 @@ public class InMemoryLocationStore<StorageLocation> extends BaseLocationStore<St
 	protected void onLocationPurged(StorageLocation purgedLocation) { }
 
 	@Override
-	public int getLocationCount() {
-		return locations.size();
+	public synchronized int getLocationCount() {
+		return locations.size() - firstIndex;
 	}
 
 	@Override
-	public List<StorageLocation> getLocations() {
-		return new ArrayList<>(locations);
+	public synchronized List<StorageLocation> getLocations() {
+		return new ArrayList<>(locations.subList(firstIndex, locations.size()));
 	}
 
 	@Override
-	public void removeLocations(Collection<StorageLocation> locations) {
+	public synchronized void removeLocations(Collection<StorageLocation> locations) {
+		compact();
+
+		int locationCount = this.locations.size();
 		this.locations.removeAll(locations);
+		// The removed locations are counted as the oldest, so the newest locations keep their sequence numbers.
+		firstSequence += locationCount - this.locations.size();
+	}
+
+	@Override
+	public synchronized SequenceRange getSequenceRange() {
+		return new SequenceRange(firstSequence, firstSequence + getLocationCount());
+	}
+
+	@Override
+	public synchronized LocationBatch<StorageLocation> getLocationBatch(long startSequence, int maximumLocationCount) {
+		int startOffset = determineOffset(startSequence);
+		int endOffset = (int)Math.min((long)startOffset + maximumLocationCount, getLocationCount());
+
+		return new LocationBatch<StorageLocation>(
+				new SequenceRange(firstSequence + startOffset, firstSequence + endOffset),
+				new ArrayList<StorageLocation>(locations.subList(firstIndex + startOffset, firstIndex + endOffset)));
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the range begins after the oldest stored location, since locations can only be
+	 * removed from the start of the store.
+	 */
+	@Override
+	public synchronized void removeLocations(SequenceRange range) {
+		if(range.getStart() >= firstSequence + getLocationCount()) {
+			return;
+		}
+		if(range.getStart() > firstSequence) {
+			throw new IllegalArgumentException("Only the oldest stored locations can be removed.");
+		}
+
+		int endOffset = determineOffset(range.getEnd());
+		if(endOffset > 0) {
+			removeFirstLocations(endOffset);
+		}
+	}
+
+	/**
+	 * @return The offset of the given sequence number from the oldest stored location, clamped to the stored range.
+	 */
+	private int determineOffset(long sequence) {
+		return (int)Math.max(0, Math.min(sequence - firstSequence, getLocationCount()));
 	}
 
-	public void setLocationCountLimit(int locationCountLimit) {
+	public synchronized void setLocationCountLimit(int locationCountLimit) {
 		this.locationCountLimit = locationCountLimit;
 	}
 }
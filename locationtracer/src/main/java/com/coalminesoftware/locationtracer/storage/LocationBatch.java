@@ -0,0 +1,71 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.util.List;
+
+/**
+ * Locations read from a {@link SequencedLocationStore} along with the range of sequence numbers they occupy.
+ *
+ * @param <StorageLocation>
+ */
+public class LocationBatch<StorageLocation> {
+	private final SequenceRange sequenceRange;
+	private final List<StorageLocation> locations;
+	private final String batchId;
+
+	public LocationBatch(SequenceRange sequenceRange, List<StorageLocation> locations) {
+		this(sequenceRange, locations, null);
+	}
+
+	/**
+	 * @param batchId Identifies the batch to the reporter, or null if the batch has no ID.
+	 */
+	public LocationBatch(SequenceRange sequenceRange, List<StorageLocation> locations, String batchId) {
+		if(sequenceRange.getLength() != locations.size()) {
+			throw new IllegalArgumentException("A batch must contain one location per sequence number in its range.");
+		}
+
+		this.sequenceRange = sequenceRange;
+		this.locations = locations;
+		this.batchId = batchId;
+	}
+
+	public SequenceRange getSequenceRange() {
+		return sequenceRange;
+	}
+
+	/** @return The batch's locations, ordered by sequence number. */
+	public List<StorageLocation> getLocations() {
+		return locations;
+	}
+
+	/**
+	 * @return An ID that is the same whenever the same range of locations is reported, including when it is reported
+	 * again after a failure or a restart, or null if the batch wasn't given an ID.  Servers can use it to recognize
+	 * batches that they have already received.
+	 */
+	public String getBatchId() {
+		return batchId;
+	}
+
+	public int size() {
+		return locations.size();
+	}
+
+	public boolean isEmpty() {
+		return locations.isEmpty();
+	}
+
+	/**
+	 * @param range A range within this batch's range.
+	 * @return A batch holding the locations in the given range, backed by this batch's list of locations.  The
+	 * sub-batch has no ID.
+	 */
+	public LocationBatch<StorageLocation> getSubBatch(SequenceRange range) {
+		if(range.getStart() < sequenceRange.getStart() || range.getEnd() > sequenceRange.getEnd()) {
+			throw new IllegalArgumentException("A sub-batch's range must lie within the batch's range.");
+		}
+
+		int fromIndex = (int)(range.getStart() - sequenceRange.getStart());
+		return new LocationBatch<StorageLocation>(range, locations.subList(fromIndex, fromIndex + (int)range.getLength()));
+	}
+}
@@ -0,0 +1,53 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import android.location.Location;
+
+/**
+ * Packs the "has" state of a {@link Location}'s optional fields into a single byte, for code that keeps locations as
+ * primitive values rather than as Location objects.
+ */
+public final class LocationFlags {
+	public static final int HAS_ALTITUDE = 1;
+	public static final int HAS_SPEED = 1 << 1;
+	public static final int HAS_BEARING = 1 << 2;
+	public static final int HAS_ACCURACY = 1 << 3;
+
+	private LocationFlags() { }
+
+	public static byte determineFlags(Location location) {
+		int flags = 0;
+		if(location.hasAltitude()) {
+			flags |= HAS_ALTITUDE;
+		}
+		if(location.hasSpeed()) {
+			flags |= HAS_SPEED;
+		}
+		if(location.hasBearing()) {
+			flags |= HAS_BEARING;
+		}
+		if(location.hasAccuracy()) {
+			flags |= HAS_ACCURACY;
+		}
+
+		return (byte)flags;
+	}
+
+	/**
+	 * Sets each of the given optional field values on the location if the flags indicate that it is present.
+	 */
+	public static void setOptionalFields(Location location, int flags, double altitude, float speed, float bearing,
+			float accuracy) {
+		if((flags & HAS_ALTITUDE) != 0) {
+			location.setAltitude(altitude);
+		}
+		if((flags & HAS_SPEED) != 0) {
+			location.setSpeed(speed);
+		}
+		if((flags & HAS_BEARING) != 0) {
+			location.setBearing(bearing);
+		}
+		if((flags & HAS_ACCURACY) != 0) {
+			location.setAccuracy(accuracy);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import android.location.Location;
+
+/**
+ * A slot in a {@link LocationRecordStore}'s storage that a
+ * {@link com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer} writes a location's fields
+ * into.  Stores reuse a single record as a cursor over their storage, so a record must not be retained or written to
+ * once the transformer returns.
+ * <p>
+ * A record starts out with the provider of the location being stored, a time, latitude and longitude of zero, and none
+ * of the optional fields that a {@link Location} may have.
+ */
+public interface LocationRecord {
+	void setProvider(String provider);
+
+	void setTime(long time);
+
+	void setLatitude(double latitude);
+
+	void setLongitude(double longitude);
+
+	void setAltitude(double altitude);
+
+	void setAccuracy(float accuracy);
+
+	void setSpeed(float speed);
+
+	void setBearing(float bearing);
+}
@@ -0,0 +1,17 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer;
+
+/**
+ * A store of {@link Location}s that keeps their fields as primitive values, and that can have a location's fields
+ * written directly into its storage by a {@link LocationRecordTransformer}.  Storing a location this way allocates
+ * nothing, and the store retains nothing of the Location it was given.
+ */
+public interface LocationRecordStore extends LocationStore<Location> {
+	/**
+	 * Stores the given location, as written into a {@link LocationRecord} by the given transformer.
+	 */
+	void offerLocation(Location location, LocationRecordTransformer locationRecordTransformer);
+}
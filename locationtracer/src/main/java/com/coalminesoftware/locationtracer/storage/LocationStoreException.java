@@ -0,0 +1,12 @@
+package com.coalminesoftware.locationtracer.storage;
+
+/**
+ * Thrown when a {@link LocationStore} is unable to read or write the storage backing it.
+ */
+public class LocationStoreException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public LocationStoreException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,585 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.location.Location;
+
+/**
+ * A location store that persists locations to a directory of memory-mapped files, so that stored locations survive
+ * the death of the process that stored them.
+ * <p>
+ * Locations are appended as fixed-width binary records to segment files, each holding a fixed number of records.  A
+ * small header file holds the sequence numbers of the oldest stored location and of the next location to be stored,
+ * and is updated after each record is written, so offering a location amounts to a handful of writes to mapped memory
+ * and reopening the store only requires reading the header.  Segments are created as the store grows and are deleted
+ * once every location they hold has been removed.
+ * <p>
+ * The distinct providers of stored locations are listed in a providers file, one per line, with backslashes and line
+ * breaks escaped and a location without a provider listed as {@code \0}.
+ * <p>
+ * Writes to mapped memory are written out to disk by the operating system, so locations survive the death of the
+ * process, but locations that haven't been synced may be lost if the device itself loses power.  When locations are
+ * synced is determined by the store's {@link DurabilityPolicy}, with syncs happening on a background thread.
+ * <p>
+ * The store optionally retains no more than a given number of locations, removing excess locations in the order they
+ * were offered to the store.
+ */
+public class MappedFileLocationStore extends BaseLocationStore<Location>
+		implements SequencedLocationStore<Location>, DurableLocationStore<Location>, Closeable {
+	public static final int DEFAULT_RECORDS_PER_SEGMENT = 4096;
+
+	private static final int HEADER_MAGIC_NUMBER = 0x4C544D46;
+	/** Version 2 added the record marker.  Version 1 stores are migrated when opened. */
+	private static final int FORMAT_VERSION = 2;
+	private static final int UNMARKED_RECORDS_FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 32;
+	private static final int HEADER_MAGIC_NUMBER_OFFSET = 0;
+	private static final int HEADER_FORMAT_VERSION_OFFSET = 4;
+	private static final int HEADER_RECORDS_PER_SEGMENT_OFFSET = 8;
+	private static final int HEADER_FIRST_SEQUENCE_OFFSET = 16;
+	private static final int HEADER_END_SEQUENCE_OFFSET = 24;
+
+	private static final int RECORD_SIZE = 48;
+	private static final int RECORD_TIME_OFFSET = 0;
+	private static final int RECORD_LATITUDE_OFFSET = 8;
+	private static final int RECORD_LONGITUDE_OFFSET = 16;
+	private static final int RECORD_ALTITUDE_OFFSET = 24;
+	private static final int RECORD_ACCURACY_OFFSET = 32;
+	private static final int RECORD_SPEED_OFFSET = 36;
+	private static final int RECORD_BEARING_OFFSET = 40;
+	private static final int RECORD_FLAGS_OFFSET = 44;
+	private static final int RECORD_PROVIDER_OFFSET = 45;
+	private static final int RECORD_MARKER_OFFSET = 46;
+
+	/** Written after the rest of a record, so that records left incomplete by a loss of power can be detected. */
+	private static final byte RECORD_MARKER = 0x5A;
+
+	private static final String HEADER_FILE_NAME = "header";
+	private static final String PROVIDERS_FILE_NAME = "providers";
+	/** Listed in the providers file for locations without a provider, which can't be confused with an escaped name. */
+	private static final String NULL_PROVIDER_ENTRY = "\\0";
+	private static final String SEGMENT_FILE_NAME_PREFIX = "segment-";
+	private static final Pattern SEGMENT_FILE_NAME_PATTERN = Pattern.compile(SEGMENT_FILE_NAME_PREFIX + "(\\d{1,18})");
+
+	private final File directory;
+	private final int recordsPerSegment;
+	private final int locationCountLimit;
+
+	private final DurabilityPolicy durabilityPolicy;
+	private final GroupCommitSyncer syncer;
+	private final Object syncLock = new Object();
+
+	private final MappedByteBuffer header;
+	private final Map<Long, MappedByteBuffer> segments = new HashMap<>();
+	private final List<String> providers;
+
+	private long firstSequence;
+	private long endSequence;
+	/** Sequence number following the last location known to have been synced. */
+	private long syncedEndSequence;
+
+	/**
+	 * Opens, or creates, a store in the given directory with no limit on the number of stored locations, whose
+	 * locations are only synced when {@link #sync()} is called.
+	 */
+	public MappedFileLocationStore(File directory) throws IOException {
+		this(directory, DEFAULT_RECORDS_PER_SEGMENT, Integer.MAX_VALUE, DurabilityPolicy.MANUAL);
+	}
+
+	/**
+	 * Opens, or creates, a store in the given directory.
+	 *
+	 * @param directory The directory holding the store's files, which should not be used for anything else.
+	 * @param recordsPerSegment The number of locations held by each segment file.  This is ignored when opening an
+	 * existing store, which continues to use the value it was created with.
+	 * @param locationCountLimit The maximum number of locations to retain.
+	 * @param durabilityPolicy Determines when locations are synced to disk.
+	 */
+	public MappedFileLocationStore(File directory, int recordsPerSegment, int locationCountLimit,
+			DurabilityPolicy durabilityPolicy) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+
+		this.directory = directory;
+		this.locationCountLimit = locationCountLimit;
+		this.durabilityPolicy = durabilityPolicy;
+
+		File headerFile = new File(directory, HEADER_FILE_NAME);
+		boolean headerWritten = headerFile.length() >= HEADER_SIZE;
+		header = mapFile(headerFile, HEADER_SIZE);
+
+		// The magic number is written last, so a header without one belongs to a store whose creation never finished.
+		boolean newStore = !headerWritten || header.getInt(HEADER_MAGIC_NUMBER_OFFSET) == 0;
+
+		if(newStore) {
+			header.putInt(HEADER_FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+			header.putInt(HEADER_RECORDS_PER_SEGMENT_OFFSET, recordsPerSegment);
+			header.putLong(HEADER_FIRST_SEQUENCE_OFFSET, 0);
+			header.putLong(HEADER_END_SEQUENCE_OFFSET, 0);
+			header.putInt(HEADER_MAGIC_NUMBER_OFFSET, HEADER_MAGIC_NUMBER);
+		} else {
+			verifyHeader(headerFile);
+		}
+
+		this.recordsPerSegment = header.getInt(HEADER_RECORDS_PER_SEGMENT_OFFSET);
+		firstSequence = header.getLong(HEADER_FIRST_SEQUENCE_OFFSET);
+		endSequence = header.getLong(HEADER_END_SEQUENCE_OFFSET);
+
+		providers = readProviders();
+		deleteSegmentsBefore(determineSegmentIndex(firstSequence));
+		if(header.getInt(HEADER_FORMAT_VERSION_OFFSET) == UNMARKED_RECORDS_FORMAT_VERSION) {
+			markStoredRecords();
+		}
+		discardIncompleteRecords();
+
+		syncedEndSequence = endSequence;
+
+		syncer = durabilityPolicy.getSyncLocationCount() > 0 || durabilityPolicy.getSyncIntervalDuration() != null?
+				new GroupCommitSyncer(this, durabilityPolicy) :
+				null;
+	}
+
+	private void verifyHeader(File headerFile) throws IOException {
+		if(header.getInt(HEADER_MAGIC_NUMBER_OFFSET) != HEADER_MAGIC_NUMBER) {
+			throw new IOException(headerFile + " is not a location store header.");
+		}
+		int formatVersion = header.getInt(HEADER_FORMAT_VERSION_OFFSET);
+		if(formatVersion != FORMAT_VERSION && formatVersion != UNMARKED_RECORDS_FORMAT_VERSION) {
+			throw new IOException("Unsupported location store format version " + formatVersion + " in " + headerFile);
+		}
+	}
+
+	/**
+	 * Migrates a store written before records were marked as complete by marking each stored record, and then the
+	 * header, as being in the current format.  Stores of that format were written without any means of detecting
+	 * incomplete records, so every stored record is kept.
+	 */
+	private void markStoredRecords() {
+		for(long sequence = firstSequence; sequence < endSequence; sequence++) {
+			getSegment(determineSegmentIndex(sequence)).put(determineRecordOffset(sequence) + RECORD_MARKER_OFFSET,
+					RECORD_MARKER);
+		}
+
+		// The marked records are forced before the header so that a migrated header never refers to unmarked records.
+		for(MappedByteBuffer segment : segments.values()) {
+			segment.force();
+		}
+		header.putInt(HEADER_FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+		header.force();
+	}
+
+	/**
+	 * Discards records at the end of the store that were never completely written to disk.  This can only happen to
+	 * unsynced records, if power was lost after the header was written but before the records it refers to were, so
+	 * only the end of the store is examined.
+	 */
+	private void discardIncompleteRecords() {
+		long validEndSequence = endSequence;
+		while(validEndSequence > firstSequence && !isRecordComplete(validEndSequence - 1)) {
+			validEndSequence--;
+		}
+
+		if(validEndSequence != endSequence) {
+			endSequence = validEndSequence;
+			header.putLong(HEADER_END_SEQUENCE_OFFSET, endSequence);
+		}
+	}
+
+	private boolean isRecordComplete(long sequence) {
+		MappedByteBuffer segment = getSegment(determineSegmentIndex(sequence));
+		int offset = determineRecordOffset(sequence);
+
+		byte providerIndex = segment.get(offset + RECORD_PROVIDER_OFFSET);
+		return segment.get(offset + RECORD_MARKER_OFFSET) == RECORD_MARKER &&
+				providerIndex >= 0 && providerIndex < providers.size();
+	}
+
+	@Override
+	public synchronized void offerLocation(Location location) {
+		MappedByteBuffer segment = getSegment(determineSegmentIndex(endSequence));
+		int offset = determineRecordOffset(endSequence);
+
+		segment.putLong(offset + RECORD_TIME_OFFSET, location.getTime());
+		segment.putDouble(offset + RECORD_LATITUDE_OFFSET, location.getLatitude());
+		segment.putDouble(offset + RECORD_LONGITUDE_OFFSET, location.getLongitude());
+		segment.putDouble(offset + RECORD_ALTITUDE_OFFSET, location.getAltitude());
+		segment.putFloat(offset + RECORD_ACCURACY_OFFSET, location.getAccuracy());
+		segment.putFloat(offset + RECORD_SPEED_OFFSET, location.getSpeed());
+		segment.putFloat(offset + RECORD_BEARING_OFFSET, location.getBearing());
+		segment.put(offset + RECORD_FLAGS_OFFSET, LocationFlags.determineFlags(location));
+		segment.put(offset + RECORD_PROVIDER_OFFSET, determineProviderIndex(location.getProvider()));
+		segment.put(offset + RECORD_MARKER_OFFSET, RECORD_MARKER);
+
+		// The record is written before the header refers to it, so a reopened store never reads a partial record.
+		endSequence++;
+		header.putLong(HEADER_END_SEQUENCE_OFFSET, endSequence);
+
+		updateLastAcceptedLocationTime();
+
+		purgeExcessLocations();
+
+		if(syncer != null) {
+			syncer.onLocationAccepted(getUnsyncedLocationCount());
+		}
+	}
+
+	private void purgeExcessLocations() {
+		while(getLocationCount() > locationCountLimit) {
+			Location purgedLocation = readLocation(firstSequence);
+			advanceFirstSequence(firstSequence + 1);
+
+			onLocationPurged(purgedLocation);
+		}
+	}
+
+	/**
+	 * Called when an excess location is purged from the store.
+	 *
+	 * @param purgedLocation A copy of the location that was removed.
+	 */
+	protected void onLocationPurged(Location purgedLocation) { }
+
+	@Override
+	public synchronized int getLocationCount() {
+		return (int)Math.min(endSequence - firstSequence, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public synchronized List<Location> getLocations() {
+		return readLocations(firstSequence, endSequence);
+	}
+
+	@Override
+	public synchronized LocationBatch<Location> getLocationBatch(long startSequence, int maximumLocationCount) {
+		long batchStartSequence = Math.min(Math.max(startSequence, firstSequence), endSequence);
+		long batchEndSequence = Math.min(batchStartSequence + maximumLocationCount, endSequence);
+
+		return new LocationBatch<Location>(
+				new SequenceRange(batchStartSequence, batchEndSequence),
+				readLocations(batchStartSequence, batchEndSequence));
+	}
+
+	@Override
+	public synchronized SequenceRange getSequenceRange() {
+		return new SequenceRange(firstSequence, endSequence);
+	}
+
+	/**
+	 * Removes the given locations, which are expected to be in the order returned by {@link #getLocations()}.  As with
+	 * {@link RingBufferLocationStore#removeLocations(Collection)}, each given location is compared against the oldest
+	 * stored location and removed only if the two match.
+	 * <p>
+	 * Callers that track sequence numbers should prefer {@link #removeLocations(SequenceRange)}.
+	 */
+	@Override
+	public synchronized void removeLocations(Collection<Location> locations) {
+		long sequence = firstSequence;
+		for(Location location : locations) {
+			if(sequence < endSequence && isLocationStored(sequence, location)) {
+				sequence++;
+			}
+		}
+
+		advanceFirstSequence(sequence);
+	}
+
+	private boolean isLocationStored(long sequence, Location location) {
+		MappedByteBuffer segment = getSegment(determineSegmentIndex(sequence));
+		int offset = determineRecordOffset(sequence);
+
+		return segment.getLong(offset + RECORD_TIME_OFFSET) == location.getTime() &&
+				segment.getDouble(offset + RECORD_LATITUDE_OFFSET) == location.getLatitude() &&
+				segment.getDouble(offset + RECORD_LONGITUDE_OFFSET) == location.getLongitude() &&
+				StoredLocationMatcher.isSameProvider(providers.get(segment.get(offset + RECORD_PROVIDER_OFFSET)),
+						location.getProvider());
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the range begins after the oldest stored location, since locations can only be
+	 * removed from the start of the store.
+	 */
+	@Override
+	public synchronized void removeLocations(SequenceRange range) {
+		if(range.getStart() > firstSequence && range.getStart() < endSequence) {
+			throw new IllegalArgumentException("Only the oldest stored locations can be removed.");
+		}
+
+		advanceFirstSequence(Math.min(range.getEnd(), endSequence));
+	}
+
+	private void advanceFirstSequence(long sequence) {
+		if(sequence <= firstSequence) {
+			return;
+		}
+
+		long firstSegmentIndex = determineSegmentIndex(firstSequence);
+
+		firstSequence = sequence;
+		header.putLong(HEADER_FIRST_SEQUENCE_OFFSET, firstSequence);
+
+		long newFirstSegmentIndex = determineSegmentIndex(firstSequence);
+		for(long segmentIndex = firstSegmentIndex; segmentIndex < newFirstSegmentIndex; segmentIndex++) {
+			deleteSegment(segmentIndex);
+		}
+	}
+
+	@Override
+	public synchronized int getUnsyncedLocationCount() {
+		return (int)Math.max(0, endSequence - Math.max(syncedEndSequence, firstSequence));
+	}
+
+	/**
+	 * Forces every segment holding unsynced locations, and then the header, to be written to disk.  Locations can
+	 * continue to be offered while the store is being synced.
+	 */
+	@Override
+	public void sync() {
+		long syncingEndSequence;
+		List<MappedByteBuffer> unsyncedSegments = new ArrayList<>();
+		synchronized(this) {
+			syncingEndSequence = endSequence;
+
+			long firstUnsyncedSequence = Math.max(syncedEndSequence, firstSequence);
+			if(firstUnsyncedSequence < syncingEndSequence) {
+				long lastSegmentIndex = determineSegmentIndex(syncingEndSequence - 1);
+				for(long segmentIndex = determineSegmentIndex(firstUnsyncedSequence); segmentIndex <= lastSegmentIndex; segmentIndex++) {
+					unsyncedSegments.add(getSegment(segmentIndex));
+				}
+			}
+		}
+
+		// Segments are forced before the header so that a synced header never refers to unsynced records.
+		synchronized(syncLock) {
+			for(MappedByteBuffer segment : unsyncedSegments) {
+				segment.force();
+			}
+			header.force();
+		}
+
+		synchronized(this) {
+			syncedEndSequence = Math.max(syncedEndSequence, syncingEndSequence);
+		}
+	}
+
+	@Override
+	public DurabilityPolicy getDurabilityPolicy() {
+		return durabilityPolicy;
+	}
+
+	/**
+	 * Stops syncing in the background and syncs any unsynced locations.  The store should not be used once closed.
+	 */
+	@Override
+	public void close() {
+		if(syncer != null) {
+			syncer.shutDown();
+		}
+
+		sync();
+	}
+
+	private List<Location> readLocations(long fromSequence, long toSequence) {
+		List<Location> locations = new ArrayList<>((int)(toSequence - fromSequence));
+		for(long sequence = fromSequence; sequence < toSequence; sequence++) {
+			locations.add(readLocation(sequence));
+		}
+
+		return locations;
+	}
+
+	private Location readLocation(long sequence) {
+		MappedByteBuffer segment = getSegment(determineSegmentIndex(sequence));
+		int offset = determineRecordOffset(sequence);
+
+		Location location = new Location(providers.get(segment.get(offset + RECORD_PROVIDER_OFFSET)));
+		location.setTime(segment.getLong(offset + RECORD_TIME_OFFSET));
+		location.setLatitude(segment.getDouble(offset + RECORD_LATITUDE_OFFSET));
+		location.setLongitude(segment.getDouble(offset + RECORD_LONGITUDE_OFFSET));
+		LocationFlags.setOptionalFields(location, segment.get(offset + RECORD_FLAGS_OFFSET),
+				segment.getDouble(offset + RECORD_ALTITUDE_OFFSET),
+				segment.getFloat(offset + RECORD_SPEED_OFFSET),
+				segment.getFloat(offset + RECORD_BEARING_OFFSET),
+				segment.getFloat(offset + RECORD_ACCURACY_OFFSET));
+
+		return location;
+	}
+
+	private long determineSegmentIndex(long sequence) {
+		return sequence / recordsPerSegment;
+	}
+
+	private int determineRecordOffset(long sequence) {
+		return (int)(sequence % recordsPerSegment) * RECORD_SIZE;
+	}
+
+	private MappedByteBuffer getSegment(long segmentIndex) {
+		MappedByteBuffer segment = segments.get(segmentIndex);
+		if(segment == null) {
+			try {
+				segment = mapFile(getSegmentFile(segmentIndex), recordsPerSegment * RECORD_SIZE);
+			} catch(IOException e) {
+				throw new LocationStoreException("Unable to map segment " + segmentIndex, e);
+			}
+
+			segments.put(segmentIndex, segment);
+		}
+
+		return segment;
+	}
+
+	private void deleteSegment(long segmentIndex) {
+		segments.remove(segmentIndex);
+		getSegmentFile(segmentIndex).delete();
+	}
+
+	/**
+	 * Deletes segment files left behind by a process that died between updating the header and deleting them.  Files
+	 * whose names aren't those of segments are left alone.
+	 */
+	private void deleteSegmentsBefore(long segmentIndex) {
+		File[] files = directory.listFiles();
+		if(files == null) {
+			return;
+		}
+
+		for(File file : files) {
+			Matcher matcher = SEGMENT_FILE_NAME_PATTERN.matcher(file.getName());
+			if(matcher.matches() && Long.parseLong(matcher.group(1)) < segmentIndex) {
+				file.delete();
+			}
+		}
+	}
+
+	private File getSegmentFile(long segmentIndex) {
+		return new File(directory, SEGMENT_FILE_NAME_PREFIX + segmentIndex);
+	}
+
+	private static MappedByteBuffer mapFile(File file, int size) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private byte determineProviderIndex(String provider) {
+		int index = providers.indexOf(provider);
+		if(index == -1) {
+			if(providers.size() > Byte.MAX_VALUE) {
+				throw new IllegalStateException("Too many distinct location providers.");
+			}
+
+			appendProvider(provider);
+			index = providers.size();
+			providers.add(provider);
+		}
+
+		return (byte)index;
+	}
+
+	private List<String> readProviders() throws IOException {
+		List<String> providers = new ArrayList<>();
+
+		BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(new File(directory, PROVIDERS_FILE_NAME)), "UTF-8"));
+		} catch(FileNotFoundException e) {
+			return providers;
+		}
+
+		try {
+			String entry;
+			while((entry = reader.readLine()) != null) {
+				providers.add(decodeProvider(entry));
+			}
+		} finally {
+			reader.close();
+		}
+
+		return providers;
+	}
+
+	private void appendProvider(String provider) {
+		try {
+			FileOutputStream outputStream = new FileOutputStream(new File(directory, PROVIDERS_FILE_NAME), true);
+			try {
+				Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+				writer.write(encodeProvider(provider) + "\n");
+				writer.flush();
+				outputStream.getFD().sync();
+			} finally {
+				outputStream.close();
+			}
+		} catch(IOException e) {
+			throw new LocationStoreException("Unable to record location provider " + provider, e);
+		}
+	}
+
+	private static String encodeProvider(String provider) {
+		if(provider == null) {
+			return NULL_PROVIDER_ENTRY;
+		}
+
+		StringBuilder entry = new StringBuilder(provider.length());
+		for(int i = 0; i < provider.length(); i++) {
+			char character = provider.charAt(i);
+			if(character == '\\') {
+				entry.append("\\\\");
+			} else if(character == '\n') {
+				entry.append("\\n");
+			} else if(character == '\r') {
+				entry.append("\\r");
+			} else {
+				entry.append(character);
+			}
+		}
+
+		return entry.toString();
+	}
+
+	private static String decodeProvider(String entry) {
+		if(entry.equals(NULL_PROVIDER_ENTRY)) {
+			return null;
+		}
+
+		StringBuilder provider = new StringBuilder(entry.length());
+		for(int i = 0; i < entry.length(); i++) {
+			char character = entry.charAt(i);
+			if(character == '\\' && i + 1 < entry.length()) {
+				char escapedCharacter = entry.charAt(++i);
+				provider.append(escapedCharacter == 'n'? '\n' : escapedCharacter == 'r'? '\r' : escapedCharacter);
+			} else {
+				provider.append(character);
+			}
+		}
+
+		return provider.toString();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+}
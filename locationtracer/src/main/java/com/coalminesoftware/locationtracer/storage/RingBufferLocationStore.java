@@ -0,0 +1,303 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer;
+import com.coalminesoftware.locationtracer.transformation.PassthroughLocationRecordTransformer;
+
+/**
+ * A location store that retains no more than a given number of locations in a fixed-capacity ring buffer.  Rather than
+ * holding on to {@link Location} objects, the fields of each location are copied into parallel primitive arrays and
+ * Location objects are only recreated when they are read from the store.  Once the store's capacity is reached, excess
+ * locations are removed in the order they were offered to the store.
+ * <p>
+ * Each stored location takes 46 bytes.  Locations can be stored without allocating by writing them straight into the
+ * buffer with {@link #offerLocation(Location, LocationRecordTransformer)}.
+ * <p>
+ * Each accepted location is assigned a sequence number one greater than that of the location accepted before it.
+ * Stored locations can be removed by advancing the start of the buffer to a given sequence number with
+ * {@link #removeLocationsBefore(long)} or {@link #removeLocations(SequenceRange)}, which take constant time regardless of
+ * how many locations are removed.
+ */
+public class RingBufferLocationStore extends BaseLocationStore<Location>
+		implements SequencedLocationStore<Location>, LocationRecordStore {
+	private final int capacity;
+
+	private final long[] times;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final double[] altitudes;
+	private final float[] accuracies;
+	private final float[] speeds;
+	private final float[] bearings;
+	private final byte[] flags;
+	private final byte[] providerIndexes;
+
+	/** Distinct provider names seen by the store, so that each stored location needn't retain its own String. */
+	private final List<String> providers = new ArrayList<>();
+
+	private final Slot slot = new Slot();
+	/** Whether purged locations are rebuilt and passed to {@link #onLocationPurged(Location)}. */
+	private final boolean purgedLocationsObserved;
+
+	/** Sequence number of the oldest stored location. */
+	private long firstSequence;
+	/** Sequence number that will be assigned to the next accepted location. */
+	private long endSequence;
+
+	public RingBufferLocationStore(int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * @param purgedLocationsObserved Whether excess locations should be rebuilt and passed to
+	 * {@link #onLocationPurged(Location)} as they're purged.  Subclasses that override it must pass true, since
+	 * otherwise purging a location allocates nothing and it is never called.
+	 */
+	protected RingBufferLocationStore(int capacity, boolean purgedLocationsObserved) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+
+		this.capacity = capacity;
+		this.purgedLocationsObserved = purgedLocationsObserved;
+
+		times = new long[capacity];
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		altitudes = new double[capacity];
+		accuracies = new float[capacity];
+		speeds = new float[capacity];
+		bearings = new float[capacity];
+		flags = new byte[capacity];
+		providerIndexes = new byte[capacity];
+	}
+
+	@Override
+	public void offerLocation(Location location) {
+		offerLocation(location, PassthroughLocationRecordTransformer.INSTANCE);
+	}
+
+	@Override
+	public synchronized void offerLocation(Location location, LocationRecordTransformer locationRecordTransformer) {
+		if(getLocationCount() == capacity) {
+			purgeFirstLocation();
+		}
+
+		slot.clear(determineIndex(endSequence), location.getProvider());
+		locationRecordTransformer.transformLocation(location, slot);
+		endSequence++;
+
+		updateLastAcceptedLocationTime();
+	}
+
+	private void purgeFirstLocation() {
+		long purgedSequence = firstSequence++;
+		if(purgedLocationsObserved) {
+			onLocationPurged(buildLocation(purgedSequence));
+		}
+	}
+
+	/**
+	 * Called when an excess location is purged from the store, if the store was created to observe purged locations.
+	 *
+	 * @param purgedLocation A copy of the location that was removed.
+	 */
+	protected void onLocationPurged(Location purgedLocation) { }
+
+	@Override
+	public synchronized int getLocationCount() {
+		return (int)(endSequence - firstSequence);
+	}
+
+	@Override
+	public synchronized List<Location> getLocations() {
+		return buildLocations(firstSequence, endSequence);
+	}
+
+	@Override
+	public synchronized LocationBatch<Location> getLocationBatch(long startSequence, int maximumLocationCount) {
+		long batchStartSequence = Math.min(Math.max(startSequence, firstSequence), endSequence);
+		long batchEndSequence = Math.min(batchStartSequence + maximumLocationCount, endSequence);
+
+		return new LocationBatch<Location>(
+				new SequenceRange(batchStartSequence, batchEndSequence),
+				buildLocations(batchStartSequence, batchEndSequence));
+	}
+
+	private List<Location> buildLocations(long fromSequence, long toSequence) {
+		List<Location> locations = new ArrayList<>((int)(toSequence - fromSequence));
+		for(long sequence = fromSequence; sequence < toSequence; sequence++) {
+			locations.add(buildLocation(sequence));
+		}
+
+		return locations;
+	}
+
+	@Override
+	public synchronized SequenceRange getSequenceRange() {
+		return new SequenceRange(firstSequence, endSequence);
+	}
+
+	/**
+	 * Removes the given locations, which are expected to be in the order returned by {@link #getLocations()}.  Since the
+	 * store doesn't retain the Location objects that it returns, each given location is compared against the oldest
+	 * stored location and removed only if the two have the same provider, time, latitude and longitude.  Locations that
+	 * have already been purged are skipped.
+	 * <p>
+	 * Callers that track sequence numbers should prefer {@link #removeLocations(SequenceRange)}.
+	 */
+	@Override
+	public synchronized void removeLocations(Collection<Location> locations) {
+		for(Location location : locations) {
+			if(firstSequence < endSequence && isFirstLocation(location)) {
+				firstSequence++;
+			}
+		}
+	}
+
+	private boolean isFirstLocation(Location location) {
+		int index = determineIndex(firstSequence);
+		return times[index] == location.getTime() &&
+				latitudes[index] == location.getLatitude() &&
+				longitudes[index] == location.getLongitude() &&
+				StoredLocationMatcher.isSameProvider(providers.get(providerIndexes[index]), location.getProvider());
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the range begins after the oldest stored location, since locations can only be
+	 * removed from the start of the buffer.
+	 */
+	@Override
+	public synchronized void removeLocations(SequenceRange range) {
+		if(range.getStart() > firstSequence && range.getStart() < endSequence) {
+			throw new IllegalArgumentException("Only the oldest stored locations can be removed.");
+		}
+
+		removeLocationsBefore(range.getEnd());
+	}
+
+	/**
+	 * Removes every stored location whose sequence number is less than the given sequence number.
+	 *
+	 * @param sequence The sequence number that the oldest remaining location will have, if it is still stored.
+	 */
+	public synchronized void removeLocationsBefore(long sequence) {
+		firstSequence = Math.max(firstSequence, Math.min(sequence, endSequence));
+	}
+
+	/** @return The sequence number of the oldest stored location, or {@link #getEndSequence()} if the store is empty. */
+	public synchronized long getFirstSequence() {
+		return firstSequence;
+	}
+
+	/** @return The sequence number that will be assigned to the next accepted location. */
+	public synchronized long getEndSequence() {
+		return endSequence;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private int determineIndex(long sequence) {
+		return (int)(sequence % capacity);
+	}
+
+	private Location buildLocation(long sequence) {
+		int index = determineIndex(sequence);
+
+		Location location = new Location(providers.get(providerIndexes[index]));
+		location.setTime(times[index]);
+		location.setLatitude(latitudes[index]);
+		location.setLongitude(longitudes[index]);
+
+		LocationFlags.setOptionalFields(location, flags[index],
+				altitudes[index], speeds[index], bearings[index], accuracies[index]);
+
+		return location;
+	}
+
+	/**
+	 * A cursor over a single position in the buffer.
+	 */
+	private class Slot implements LocationRecord {
+		private int index;
+
+		public void clear(int index, String provider) {
+			this.index = index;
+
+			times[index] = 0;
+			latitudes[index] = 0;
+			longitudes[index] = 0;
+			altitudes[index] = 0;
+			accuracies[index] = 0;
+			speeds[index] = 0;
+			bearings[index] = 0;
+			flags[index] = 0;
+			providerIndexes[index] = determineProviderIndex(provider);
+		}
+
+		@Override
+		public void setProvider(String provider) {
+			providerIndexes[index] = determineProviderIndex(provider);
+		}
+
+		@Override
+		public void setTime(long time) {
+			times[index] = time;
+		}
+
+		@Override
+		public void setLatitude(double latitude) {
+			latitudes[index] = latitude;
+		}
+
+		@Override
+		public void setLongitude(double longitude) {
+			longitudes[index] = longitude;
+		}
+
+		@Override
+		public void setAltitude(double altitude) {
+			altitudes[index] = altitude;
+			flags[index] |= LocationFlags.HAS_ALTITUDE;
+		}
+
+		@Override
+		public void setAccuracy(float accuracy) {
+			accuracies[index] = accuracy;
+			flags[index] |= LocationFlags.HAS_ACCURACY;
+		}
+
+		@Override
+		public void setSpeed(float speed) {
+			speeds[index] = speed;
+			flags[index] |= LocationFlags.HAS_SPEED;
+		}
+
+		@Override
+		public void setBearing(float bearing) {
+			bearings[index] = bearing;
+			flags[index] |= LocationFlags.HAS_BEARING;
+		}
+	}
+
+	private byte determineProviderIndex(String provider) {
+		int index = providers.indexOf(provider);
+		if(index == -1) {
+			if(providers.size() > Byte.MAX_VALUE) {
+				throw new IllegalStateException("Too many distinct location providers.");
+			}
+
+			index = providers.size();
+			providers.add(provider);
+		}
+
+		return (byte)index;
+	}
+}
@@ -0,0 +1,412 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.location.Location;
+
+/**
+ * A location store that persists locations to a SQLite database.
+ * <p>
+ * Offered locations are buffered in memory and written to the database in a single transaction, using a reused
+ * compiled statement, whenever the store is synced.  The database is only used while holding a separate sync lock,
+ * never the store's lock, so locations can continue to be offered while it is written to or read from; reads and
+ * removals instead wait for a sync in progress.  When the store is synced is determined by its
+ * {@link DurabilityPolicy}, with syncs happening on a background thread.  Each location's sequence number is the
+ * primary key of its row, so a page of locations is read by seeking to its first sequence number rather than by
+ * offsetting into the table, and a reported range is removed with a single ranged delete.
+ */
+public class SQLiteLocationStore extends BaseLocationStore<Location>
+		implements SequencedLocationStore<Location>, DurableLocationStore<Location>, Closeable {
+	/** Syncs every 64 locations, every 30 seconds, and before each report. */
+	public static final DurabilityPolicy DEFAULT_DURABILITY_POLICY = new DurabilityPolicy(64, 30000L, true);
+
+	private static final int DATABASE_VERSION = 2;
+
+	private static final String LOCATION_TABLE = "location";
+	private static final String STATE_TABLE = "store_state";
+	private static final String UPDATE_END_SEQUENCE_SQL =
+			"UPDATE " + STATE_TABLE + " SET end_sequence = MAX(end_sequence, ?)";
+
+	private static final String SELECT_COLUMNS =
+			"sequence, provider, time, latitude, longitude, altitude, accuracy, speed, bearing, flags";
+	private static final int SEQUENCE_COLUMN = 0;
+	private static final int PROVIDER_COLUMN = 1;
+	private static final int TIME_COLUMN = 2;
+	private static final int LATITUDE_COLUMN = 3;
+	private static final int LONGITUDE_COLUMN = 4;
+	private static final int ALTITUDE_COLUMN = 5;
+	private static final int ACCURACY_COLUMN = 6;
+	private static final int SPEED_COLUMN = 7;
+	private static final int BEARING_COLUMN = 8;
+	private static final int FLAGS_COLUMN = 9;
+
+	private final DatabaseHelper databaseHelper;
+	private final SQLiteDatabase database;
+	private final SQLiteStatement insertStatement;
+	private final SQLiteStatement deleteStatement;
+	private final SQLiteStatement updateEndSequenceStatement;
+
+	private final DurabilityPolicy durabilityPolicy;
+	private final GroupCommitSyncer syncer;
+	/**
+	 * Held while using the database, so that reads and removals don't interleave with a sync's writes.  Acquired before
+	 * the store's lock, which is never held while using the database.
+	 */
+	private final Object syncLock = new Object();
+
+	/** Locations that have been accepted but not yet written to the database, in the order they were accepted. */
+	private final List<Location> unsyncedLocations = new ArrayList<>();
+
+	private long firstSequence;
+	/** Sequence number following the last location written to the database. */
+	private long syncedEndSequence;
+
+	/**
+	 * Opens, or creates, a store backed by the given database, using the {@link #DEFAULT_DURABILITY_POLICY}.
+	 */
+	public SQLiteLocationStore(Context context, String databaseName) {
+		this(context, databaseName, DEFAULT_DURABILITY_POLICY);
+	}
+
+	/**
+	 * Opens, or creates, a store backed by the given database.
+	 *
+	 * @param databaseName The name of the database, which should not be used for anything else.
+	 * @param durabilityPolicy Determines when buffered locations are written to the database.
+	 */
+	public SQLiteLocationStore(Context context, String databaseName, DurabilityPolicy durabilityPolicy) {
+		this.durabilityPolicy = durabilityPolicy;
+
+		databaseHelper = new DatabaseHelper(context, databaseName);
+		database = databaseHelper.getWritableDatabase();
+
+		insertStatement = database.compileStatement("INSERT INTO " + LOCATION_TABLE + " (" + SELECT_COLUMNS + ") " +
+				"VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		deleteStatement = database.compileStatement("DELETE FROM " + LOCATION_TABLE + " WHERE sequence < ?");
+		updateEndSequenceStatement = database.compileStatement(UPDATE_END_SEQUENCE_SQL);
+
+		syncedEndSequence = queryForLong("SELECT end_sequence FROM " + STATE_TABLE);
+		firstSequence = queryForLong("SELECT IFNULL(MIN(sequence), " + syncedEndSequence + ") FROM " + LOCATION_TABLE);
+
+		syncer = durabilityPolicy.getSyncLocationCount() > 0 || durabilityPolicy.getSyncIntervalDuration() != null?
+				new GroupCommitSyncer(this, durabilityPolicy) :
+				null;
+	}
+
+	private long queryForLong(String query) {
+		SQLiteStatement statement = database.compileStatement(query);
+		try {
+			return statement.simpleQueryForLong();
+		} finally {
+			statement.close();
+		}
+	}
+
+	@Override
+	public synchronized void offerLocation(Location location) {
+		unsyncedLocations.add(location);
+		updateLastAcceptedLocationTime();
+
+		if(syncer != null) {
+			syncer.onLocationAccepted(unsyncedLocations.size());
+		}
+	}
+
+	@Override
+	public synchronized int getLocationCount() {
+		return (int)(getEndSequence() - firstSequence);
+	}
+
+	@Override
+	public List<Location> getLocations() {
+		synchronized(syncLock) {
+			SequenceRange range = getSequenceRange();
+			return getLocationBatch(range.getStart(), (int)range.getLength()).getLocations();
+		}
+	}
+
+	@Override
+	public synchronized SequenceRange getSequenceRange() {
+		return new SequenceRange(firstSequence, getEndSequence());
+	}
+
+	/**
+	 * Copies the batch's unsynced locations while holding the store's lock, and reads its synced locations without it.
+	 * Holding the sync lock keeps the synced locations from being removed, and more from being synced, in between.
+	 */
+	@Override
+	public LocationBatch<Location> getLocationBatch(long startSequence, int maximumLocationCount) {
+		synchronized(syncLock) {
+			long batchStartSequence;
+			long batchEndSequence;
+			long readEndSequence;
+			List<Location> batchUnsyncedLocations;
+			synchronized(this) {
+				batchStartSequence = Math.min(Math.max(startSequence, firstSequence), getEndSequence());
+				batchEndSequence = Math.min(batchStartSequence + maximumLocationCount, getEndSequence());
+				readEndSequence = Math.min(batchEndSequence, syncedEndSequence);
+				batchUnsyncedLocations = new ArrayList<>(unsyncedLocations.subList(
+						(int)(Math.max(batchStartSequence, syncedEndSequence) - syncedEndSequence),
+						(int)(batchEndSequence - syncedEndSequence)));
+			}
+
+			List<Location> locations = new ArrayList<>((int)(batchEndSequence - batchStartSequence));
+			if(batchStartSequence < readEndSequence) {
+				readSyncedLocations(batchStartSequence, readEndSequence, locations);
+			}
+			locations.addAll(batchUnsyncedLocations);
+
+			return new LocationBatch<Location>(new SequenceRange(batchStartSequence, batchEndSequence), locations);
+		}
+	}
+
+	private void readSyncedLocations(long fromSequence, long toSequence, List<Location> locations) {
+		Cursor cursor = database.rawQuery(
+				"SELECT " + SELECT_COLUMNS + " FROM " + LOCATION_TABLE + " " +
+						"WHERE sequence >= ? AND sequence < ? ORDER BY sequence",
+				new String[] { Long.toString(fromSequence), Long.toString(toSequence) });
+		try {
+			while(cursor.moveToNext()) {
+				locations.add(buildLocation(cursor));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static Location buildLocation(Cursor cursor) {
+		Location location = new Location(cursor.getString(PROVIDER_COLUMN));
+		location.setTime(cursor.getLong(TIME_COLUMN));
+		location.setLatitude(cursor.getDouble(LATITUDE_COLUMN));
+		location.setLongitude(cursor.getDouble(LONGITUDE_COLUMN));
+		LocationFlags.setOptionalFields(location, cursor.getInt(FLAGS_COLUMN),
+				cursor.getDouble(ALTITUDE_COLUMN),
+				cursor.getFloat(SPEED_COLUMN),
+				cursor.getFloat(BEARING_COLUMN),
+				cursor.getFloat(ACCURACY_COLUMN));
+
+		return location;
+	}
+
+	/**
+	 * Removes the given locations, which are expected to be in the order returned by {@link #getLocations()}.  As with
+	 * {@link RingBufferLocationStore#removeLocations(Collection)}, each given location is compared against the oldest
+	 * stored location and removed only if the two match.
+	 * <p>
+	 * Callers that track sequence numbers should prefer {@link #removeLocations(SequenceRange)}.
+	 */
+	@Override
+	public void removeLocations(Collection<Location> locations) {
+		synchronized(syncLock) {
+			LocationBatch<Location> storedBatch = getLocationBatch(Long.MIN_VALUE, locations.size());
+
+			removeLocationsBefore(storedBatch.getSequenceRange().getStart() +
+					StoredLocationMatcher.countMatchedLocations(storedBatch.getLocations(), locations));
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the range begins after the oldest stored location, since locations can only be
+	 * removed from the start of the store.
+	 */
+	@Override
+	public void removeLocations(SequenceRange range) {
+		synchronized(syncLock) {
+			long endSequence;
+			synchronized(this) {
+				if(range.getStart() > firstSequence && range.getStart() < getEndSequence()) {
+					throw new IllegalArgumentException("Only the oldest stored locations can be removed.");
+				}
+
+				endSequence = Math.min(range.getEnd(), getEndSequence());
+			}
+
+			removeLocationsBefore(endSequence);
+		}
+	}
+
+	/**
+	 * Removes the locations before the given sequence number from memory while holding the store's lock, and then from
+	 * the database without it.  Must be called while holding the sync lock.
+	 */
+	private void removeLocationsBefore(long sequence) {
+		Long deleteEndSequence = null;
+		boolean unsyncedLocationsRemoved;
+		synchronized(this) {
+			if(sequence <= firstSequence) {
+				return;
+			}
+
+			if(firstSequence < syncedEndSequence) {
+				deleteEndSequence = Math.min(sequence, syncedEndSequence);
+			}
+
+			// Locations can be reported before they've been synced, in which case they're simply never written.
+			unsyncedLocationsRemoved = sequence > syncedEndSequence;
+			if(unsyncedLocationsRemoved) {
+				unsyncedLocations.subList(0, (int)(sequence - syncedEndSequence)).clear();
+				syncedEndSequence = sequence;
+			}
+
+			firstSequence = sequence;
+		}
+
+		if(deleteEndSequence != null) {
+			deleteStatement.bindLong(1, deleteEndSequence);
+			deleteStatement.executeUpdateDelete();
+		}
+		if(unsyncedLocationsRemoved) {
+			updateEndSequenceStatement.bindLong(1, sequence);
+			updateEndSequenceStatement.executeUpdateDelete();
+		}
+	}
+
+	private long getEndSequence() {
+		return syncedEndSequence + unsyncedLocations.size();
+	}
+
+	@Override
+	public synchronized int getUnsyncedLocationCount() {
+		return unsyncedLocations.size();
+	}
+
+	/**
+	 * Writes every buffered location to the database in a single transaction.  The buffered locations are copied while
+	 * holding the store's lock, and written without it, so offering locations never waits for the database.  Removals
+	 * wait for the sync to finish, so the copied locations are still the oldest unsynced ones once written.
+	 */
+	@Override
+	public void sync() {
+		synchronized(syncLock) {
+			long startSequence;
+			List<Location> locations;
+			synchronized(this) {
+				if(unsyncedLocations.isEmpty()) {
+					return;
+				}
+
+				startSequence = syncedEndSequence;
+				locations = new ArrayList<>(unsyncedLocations);
+			}
+
+			writeLocations(startSequence, locations);
+
+			synchronized(this) {
+				unsyncedLocations.subList(0, locations.size()).clear();
+				syncedEndSequence += locations.size();
+			}
+		}
+	}
+
+	private void writeLocations(long startSequence, List<Location> locations) {
+		database.beginTransaction();
+		try {
+			long sequence = startSequence;
+			for(Location location : locations) {
+				bindLocation(sequence++, location);
+				insertStatement.executeInsert();
+			}
+			updateEndSequenceStatement.bindLong(1, sequence);
+			updateEndSequenceStatement.executeUpdateDelete();
+
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+
+	private void bindLocation(long sequence, Location location) {
+		insertStatement.bindLong(SEQUENCE_COLUMN + 1, sequence);
+		if(location.getProvider() == null) {
+			insertStatement.bindNull(PROVIDER_COLUMN + 1);
+		} else {
+			insertStatement.bindString(PROVIDER_COLUMN + 1, location.getProvider());
+		}
+		insertStatement.bindLong(TIME_COLUMN + 1, location.getTime());
+		insertStatement.bindDouble(LATITUDE_COLUMN + 1, location.getLatitude());
+		insertStatement.bindDouble(LONGITUDE_COLUMN + 1, location.getLongitude());
+		insertStatement.bindDouble(ALTITUDE_COLUMN + 1, location.getAltitude());
+		insertStatement.bindDouble(ACCURACY_COLUMN + 1, location.getAccuracy());
+		insertStatement.bindDouble(SPEED_COLUMN + 1, location.getSpeed());
+		insertStatement.bindDouble(BEARING_COLUMN + 1, location.getBearing());
+		insertStatement.bindLong(FLAGS_COLUMN + 1, LocationFlags.determineFlags(location));
+	}
+
+	@Override
+	public DurabilityPolicy getDurabilityPolicy() {
+		return durabilityPolicy;
+	}
+
+	/**
+	 * Stops syncing in the background, writes any buffered locations to the database, and closes the database.  The
+	 * store should not be used once closed.
+	 */
+	@Override
+	public void close() {
+		if(syncer != null) {
+			syncer.shutDown();
+		}
+
+		synchronized(syncLock) {
+			sync();
+
+			synchronized(this) {
+				insertStatement.close();
+				deleteStatement.close();
+				updateEndSequenceStatement.close();
+				databaseHelper.close();
+			}
+		}
+	}
+
+	private static class DatabaseHelper extends SQLiteOpenHelper {
+		public DatabaseHelper(Context context, String databaseName) {
+			super(context, databaseName, null, DATABASE_VERSION);
+		}
+
+		@Override
+		public void onCreate(SQLiteDatabase database) {
+			createLocationTable(database);
+
+			// The end sequence is kept separately from the locations so that sequence numbers aren't reused once every
+			// stored location has been removed.
+			database.execSQL("CREATE TABLE " + STATE_TABLE + " (end_sequence INTEGER NOT NULL)");
+			database.execSQL("INSERT INTO " + STATE_TABLE + " (end_sequence) VALUES (0)");
+		}
+
+		/** Creates the location table.  The provider is null for locations that don't have one. */
+		private static void createLocationTable(SQLiteDatabase database) {
+			database.execSQL("CREATE TABLE " + LOCATION_TABLE + " (" +
+					"sequence INTEGER PRIMARY KEY, " +
+					"provider TEXT, " +
+					"time INTEGER NOT NULL, " +
+					"latitude REAL NOT NULL, " +
+					"longitude REAL NOT NULL, " +
+					"altitude REAL NOT NULL, " +
+					"accuracy REAL NOT NULL, " +
+					"speed REAL NOT NULL, " +
+					"bearing REAL NOT NULL, " +
+					"flags INTEGER NOT NULL)");
+		}
+
+		@Override
+		public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+			if(oldVersion < 2) {
+				// Version 1 required a provider, so its table is rebuilt without that constraint.
+				database.execSQL("ALTER TABLE " + LOCATION_TABLE + " RENAME TO " + LOCATION_TABLE + "_v1");
+				createLocationTable(database);
+				database.execSQL("INSERT INTO " + LOCATION_TABLE + " (" + SELECT_COLUMNS + ") " +
+						"SELECT " + SELECT_COLUMNS + " FROM " + LOCATION_TABLE + "_v1");
+				database.execSQL("DROP TABLE " + LOCATION_TABLE + "_v1");
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.coalminesoftware.locationtracer.storage;
+
+/**
+ * A half-open range of location sequence numbers, including {@link #getStart()} and excluding {@link #getEnd()}.
+ *
+ * @see SequencedLocationStore
+ */
+public final class SequenceRange {
+	private final long start;
+	private final long end;
+
+	public SequenceRange(long start, long end) {
+		if(end < start) {
+			throw new IllegalArgumentException("A range's end cannot precede its start.");
+		}
+
+		this.start = start;
+		this.end = end;
+	}
+
+	/** @return The first sequence number in the range. */
+	public long getStart() {
+		return start;
+	}
+
+	/** @return The sequence number following the last sequence number in the range. */
+	public long getEnd() {
+		return end;
+	}
+
+	public long getLength() {
+		return end - start;
+	}
+
+	public boolean isEmpty() {
+		return start == end;
+	}
+
+	public boolean contains(long sequence) {
+		return sequence >= start && sequence < end;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if(this == object) {
+			return true;
+		}
+		if(!(object instanceof SequenceRange)) {
+			return false;
+		}
+
+		SequenceRange range = (SequenceRange)object;
+		return start == range.start && end == range.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (int)(start ^ (start >>> 32)) + (int)(end ^ (end >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + ")";
+	}
+}
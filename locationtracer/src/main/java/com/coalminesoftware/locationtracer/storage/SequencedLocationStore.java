@@ -0,0 +1,43 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.util.Collection;
+
+/**
+ * A {@link LocationStore} that assigns each accepted location a sequence number one greater than that of the location
+ * accepted before it, allowing reported locations to be identified, and removed, by a {@link SequenceRange} rather
+ * than by their contents.  Removing a range should be cheap - advancing an index in memory, or a single ranged
+ * statement against an indexed column in a database.
+ * <p>
+ * Stores that don't implement this interface are adapted by {@link SequencedLocationStoreAdapter}.
+ *
+ * @param <StorageLocation>
+ */
+public interface SequencedLocationStore<StorageLocation> extends LocationStore<StorageLocation> {
+	/**
+	 * @return The range of sequence numbers currently held by the store.  The range's end is the sequence number that
+	 * will be assigned to the next accepted location.
+	 */
+	SequenceRange getSequenceRange();
+
+	/**
+	 * Reads a page of stored locations without removing them, allowing a large backlog to be read a page at a time
+	 * rather than copied in its entirety.  The page is read atomically with respect to concurrent offers and removals.
+	 *
+	 * @param startSequence The sequence number of the first location to read.  If that location is no longer stored,
+	 * reading starts at the oldest stored location.
+	 * @param maximumLocationCount The maximum number of locations to read.
+	 * @return The locations read, along with the range of sequence numbers they occupy.  The batch is empty if no
+	 * locations are stored at or after the start sequence.
+	 */
+	LocationBatch<StorageLocation> getLocationBatch(long startSequence, int maximumLocationCount);
+
+	/**
+	 * Removes the stored locations whose sequence numbers fall within the given range.  Sequence numbers that are not
+	 * stored, because they were already removed or purged, are ignored.  The library only removes ranges that begin at
+	 * or before the oldest stored location, so implementations that remove locations in the order they were accepted
+	 * may reject any other range with an {@link IllegalArgumentException}.
+	 * <p>
+	 * As with {@link #removeLocations(Collection)}, this should not affect {@link #getLastLocationAcceptanceTime()}.
+	 */
+	void removeLocations(SequenceRange range);
+}
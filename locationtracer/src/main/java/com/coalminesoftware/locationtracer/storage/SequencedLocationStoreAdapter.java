@@ -0,0 +1,102 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Adapts a {@link LocationStore} to the {@link SequencedLocationStore} interface by counting the locations offered
+ * through the adapter and mapping sequence numbers to positions in the list returned by
+ * {@link LocationStore#getLocations()}.  Ranges are removed by passing the corresponding locations to
+ * {@link LocationStore#removeLocations(Collection)}, so reading pages and removing ranges is no cheaper than the adapted
+ * store makes reading and removing its locations.
+ * <p>
+ * The adapted store is expected to accept every location it is offered and to only remove locations in the order they
+ * were offered, and all locations must be offered through the adapter.  Stores holding a large backlog should implement
+ * {@link SequencedLocationStore} themselves, as {@link InMemoryLocationStore} does, since every page read and range
+ * removed through the adapter copies the whole store.
+ *
+ * @param <StorageLocation>
+ */
+public class SequencedLocationStoreAdapter<StorageLocation> implements SequencedLocationStore<StorageLocation> {
+	private final LocationStore<StorageLocation> locationStore;
+	private long endSequence;
+
+	public SequencedLocationStoreAdapter(LocationStore<StorageLocation> locationStore) {
+		this.locationStore = locationStore;
+		endSequence = locationStore.getLocationCount();
+	}
+
+	/**
+	 * @return The given store if it is already a {@link SequencedLocationStore}, otherwise an adapter wrapping it.
+	 */
+	public static <StorageLocation> SequencedLocationStore<StorageLocation> adapt(LocationStore<StorageLocation> locationStore) {
+		return locationStore instanceof SequencedLocationStore?
+				(SequencedLocationStore<StorageLocation>)locationStore :
+				new SequencedLocationStoreAdapter<StorageLocation>(locationStore);
+	}
+
+	@Override
+	public synchronized void offerLocation(StorageLocation location) {
+		locationStore.offerLocation(location);
+		endSequence++;
+	}
+
+	@Override
+	public synchronized int getLocationCount() {
+		return locationStore.getLocationCount();
+	}
+
+	@Override
+	public synchronized List<StorageLocation> getLocations() {
+		return locationStore.getLocations();
+	}
+
+	@Override
+	public synchronized void removeLocations(Collection<StorageLocation> locations) {
+		locationStore.removeLocations(locations);
+	}
+
+	@Override
+	public Long getLastLocationAcceptanceTime() {
+		return locationStore.getLastLocationAcceptanceTime();
+	}
+
+	@Override
+	public synchronized SequenceRange getSequenceRange() {
+		return new SequenceRange(endSequence - locationStore.getLocationCount(), endSequence);
+	}
+
+	@Override
+	public synchronized LocationBatch<StorageLocation> getLocationBatch(long startSequence, int maximumLocationCount) {
+		List<StorageLocation> locations = locationStore.getLocations();
+		long firstSequence = endSequence - locations.size();
+
+		int startIndex = determineIndex(startSequence - firstSequence, locations.size());
+		int endIndex = (int)Math.min((long)startIndex + maximumLocationCount, locations.size());
+
+		return new LocationBatch<StorageLocation>(
+				new SequenceRange(firstSequence + startIndex, firstSequence + endIndex),
+				new ArrayList<StorageLocation>(locations.subList(startIndex, endIndex)));
+	}
+
+	@Override
+	public synchronized void removeLocations(SequenceRange range) {
+		List<StorageLocation> locations = locationStore.getLocations();
+		long firstSequence = endSequence - locations.size();
+
+		int startIndex = determineIndex(range.getStart() - firstSequence, locations.size());
+		int endIndex = determineIndex(range.getEnd() - firstSequence, locations.size());
+		if(startIndex < endIndex) {
+			locationStore.removeLocations(new ArrayList<StorageLocation>(locations.subList(startIndex, endIndex)));
+		}
+	}
+
+	private static int determineIndex(long offset, int locationCount) {
+		return (int)Math.max(0, Math.min(offset, locationCount));
+	}
+
+	public LocationStore<StorageLocation> getAdaptedLocationStore() {
+		return locationStore;
+	}
+}
@@ -0,0 +1,46 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.util.Collection;
+import java.util.List;
+
+import android.location.Location;
+
+/**
+ * Matches the locations given to {@link LocationStore#removeLocations(Collection)} against a store's oldest locations,
+ * for stores that hold {@link Location} objects and only remove locations in the order they were accepted.
+ */
+final class StoredLocationMatcher {
+	private StoredLocationMatcher() { }
+
+	/**
+	 * Compares each given location against the oldest stored location that hasn't yet been matched, matching the two if
+	 * they are the same location.
+	 *
+	 * @param storedLocations The store's oldest locations, at least as many as there are given locations if the store
+	 * holds that many.
+	 * @return The number of the store's oldest locations that were matched.
+	 */
+	static int countMatchedLocations(List<Location> storedLocations, Collection<Location> locations) {
+		int matchedLocationCount = 0;
+		for(Location location : locations) {
+			if(matchedLocationCount < storedLocations.size() &&
+					isSameLocation(storedLocations.get(matchedLocationCount), location)) {
+				matchedLocationCount++;
+			}
+		}
+
+		return matchedLocationCount;
+	}
+
+	private static boolean isSameLocation(Location storedLocation, Location location) {
+		return storedLocation.getTime() == location.getTime() &&
+				storedLocation.getLatitude() == location.getLatitude() &&
+				storedLocation.getLongitude() == location.getLongitude() &&
+				isSameProvider(storedLocation.getProvider(), location.getProvider());
+	}
+
+	/** @return Whether the two providers are the same, either of which may be null. */
+	static boolean isSameProvider(String storedProvider, String provider) {
+		return storedProvider == null? provider == null : storedProvider.equals(provider);
+	}
+}
@@ -0,0 +1,210 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.transformation.LocationRecordTransformer;
+import com.coalminesoftware.locationtracer.transformation.PassthroughLocationRecordTransformer;
+
+/**
+ * A location store that keeps the most recently offered locations in memory and spills older locations to disk,
+ * bounding memory use without discarding locations.
+ * <p>
+ * Locations are offered to a {@link RingBufferLocationStore}.  When it is full, its oldest locations are moved, a chunk
+ * at a time, to a {@link MappedFileLocationStore}.  Since the oldest locations are read and reported first, pages are
+ * served from disk until the spilled locations have been removed, and from memory after that.
+ * <p>
+ * Locations held in memory do not survive the death of the process.  When the store is recreated, sequence numbers
+ * continue from those of the locations that were spilled to disk.
+ */
+public class TieredLocationStore extends BaseLocationStore<Location>
+		implements SequencedLocationStore<Location>, LocationRecordStore, Closeable {
+	private final RingBufferLocationStore memoryStore;
+	private final MappedFileLocationStore diskStore;
+	private final int spillChunkSize;
+
+	/** Added to a sequence number in the memory store to get the corresponding sequence number in this store. */
+	private final long memorySequenceOffset;
+	/** Added to a sequence number in the disk store to get the corresponding sequence number in this store. */
+	private long diskSequenceOffset;
+
+	/**
+	 * Creates a store that spills locations to the given directory, a quarter of its memory capacity at a time.
+	 *
+	 * @param memoryCapacity The maximum number of locations to hold in memory.
+	 * @param directory The directory holding spilled locations, which should not be used for anything else.
+	 */
+	public TieredLocationStore(int memoryCapacity, File directory) throws IOException {
+		this(memoryCapacity, Math.max(1, memoryCapacity / 4), new MappedFileLocationStore(directory));
+	}
+
+	/**
+	 * @param memoryCapacity The maximum number of locations to hold in memory.
+	 * @param spillChunkSize The number of locations moved to disk when memory is full.
+	 * @param diskStore The store that locations are spilled to.  It should not limit the number of locations it
+	 * retains, and should not be used for anything else.
+	 */
+	public TieredLocationStore(int memoryCapacity, int spillChunkSize, MappedFileLocationStore diskStore) {
+		if(spillChunkSize < 1 || spillChunkSize > memoryCapacity) {
+			throw new IllegalArgumentException("Spill chunk size must be positive and no greater than memory capacity.");
+		}
+
+		memoryStore = new RingBufferLocationStore(memoryCapacity);
+		this.diskStore = diskStore;
+		this.spillChunkSize = spillChunkSize;
+
+		memorySequenceOffset = diskStore.getSequenceRange().getEnd() - memoryStore.getFirstSequence();
+	}
+
+	@Override
+	public void offerLocation(Location location) {
+		offerLocation(location, PassthroughLocationRecordTransformer.INSTANCE);
+	}
+
+	@Override
+	public synchronized void offerLocation(Location location, LocationRecordTransformer locationRecordTransformer) {
+		if(memoryStore.getLocationCount() == memoryStore.getCapacity()) {
+			spillLocations();
+		}
+
+		memoryStore.offerLocation(location, locationRecordTransformer);
+		updateLastAcceptedLocationTime();
+	}
+
+	/**
+	 * Moves the oldest chunk of locations held in memory to disk.
+	 */
+	private void spillLocations() {
+		SequenceRange diskRange = diskStore.getSequenceRange();
+		if(diskRange.isEmpty()) {
+			// Locations may have been removed from memory since the disk store was last used, so its sequence numbers
+			// are realigned to continue from the first location held in memory.
+			diskSequenceOffset = memoryStore.getFirstSequence() + memorySequenceOffset - diskRange.getEnd();
+		}
+
+		LocationBatch<Location> chunk = memoryStore.getLocationBatch(memoryStore.getFirstSequence(), spillChunkSize);
+		for(Location location : chunk.getLocations()) {
+			diskStore.offerLocation(location);
+		}
+
+		memoryStore.removeLocations(chunk.getSequenceRange());
+	}
+
+	@Override
+	public synchronized int getLocationCount() {
+		return diskStore.getLocationCount() + memoryStore.getLocationCount();
+	}
+
+	@Override
+	public synchronized List<Location> getLocations() {
+		List<Location> locations = new ArrayList<>(getLocationCount());
+		locations.addAll(diskStore.getLocations());
+		locations.addAll(memoryStore.getLocations());
+
+		return locations;
+	}
+
+	@Override
+	public synchronized SequenceRange getSequenceRange() {
+		return new SequenceRange(getFirstSequence(), memoryStore.getEndSequence() + memorySequenceOffset);
+	}
+
+	private long getFirstSequence() {
+		SequenceRange diskRange = diskStore.getSequenceRange();
+		return diskRange.isEmpty()?
+				memoryStore.getFirstSequence() + memorySequenceOffset :
+				diskRange.getStart() + diskSequenceOffset;
+	}
+
+	@Override
+	public synchronized LocationBatch<Location> getLocationBatch(long startSequence, int maximumLocationCount) {
+		long batchStartSequence = Math.max(startSequence, getFirstSequence());
+		List<Location> locations = new ArrayList<>();
+
+		SequenceRange diskRange = diskStore.getSequenceRange();
+		long diskEndSequence = diskRange.getEnd() + diskSequenceOffset;
+		if(!diskRange.isEmpty() && batchStartSequence < diskEndSequence) {
+			locations.addAll(diskStore.getLocationBatch(
+					batchStartSequence - diskSequenceOffset,
+					maximumLocationCount).getLocations());
+		}
+
+		if(locations.size() < maximumLocationCount) {
+			long memoryStartSequence = Math.max(batchStartSequence, memoryStore.getFirstSequence() + memorySequenceOffset);
+			locations.addAll(memoryStore.getLocationBatch(
+					memoryStartSequence - memorySequenceOffset,
+					maximumLocationCount - locations.size()).getLocations());
+		}
+
+		batchStartSequence = Math.min(batchStartSequence, memoryStore.getEndSequence() + memorySequenceOffset);
+		return new LocationBatch<Location>(
+				new SequenceRange(batchStartSequence, batchStartSequence + locations.size()),
+				locations);
+	}
+
+	/**
+	 * Removes the given locations, which are expected to be in the order returned by {@link #getLocations()}.  As with
+	 * {@link RingBufferLocationStore#removeLocations(Collection)}, each given location is compared against the oldest
+	 * stored location and removed only if the two match.
+	 * <p>
+	 * Callers that track sequence numbers should prefer {@link #removeLocations(SequenceRange)}.
+	 */
+	@Override
+	public synchronized void removeLocations(Collection<Location> locations) {
+		long firstSequence = getFirstSequence();
+		List<Location> storedLocations = getLocationBatch(firstSequence, locations.size()).getLocations();
+
+		removeLocationsBefore(firstSequence + StoredLocationMatcher.countMatchedLocations(storedLocations, locations));
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the range begins after the oldest stored location, since locations can only be
+	 * removed from the start of the store.
+	 */
+	@Override
+	public synchronized void removeLocations(SequenceRange range) {
+		SequenceRange storedRange = getSequenceRange();
+		if(range.getStart() > storedRange.getStart() && range.getStart() < storedRange.getEnd()) {
+			throw new IllegalArgumentException("Only the oldest stored locations can be removed.");
+		}
+
+		removeLocationsBefore(range.getEnd());
+	}
+
+	/**
+	 * Removes locations from disk, and then from memory once no locations remain on disk.
+	 */
+	private void removeLocationsBefore(long sequence) {
+		SequenceRange diskRange = diskStore.getSequenceRange();
+		if(!diskRange.isEmpty()) {
+			diskStore.removeLocations(new SequenceRange(
+					diskRange.getStart(),
+					Math.max(diskRange.getStart(), Math.min(sequence - diskSequenceOffset, diskRange.getEnd()))));
+		}
+
+		if(diskStore.getSequenceRange().isEmpty()) {
+			memoryStore.removeLocationsBefore(sequence - memorySequenceOffset);
+		}
+	}
+
+	/**
+	 * @return The number of locations currently spilled to disk.
+	 */
+	public synchronized int getSpilledLocationCount() {
+		return diskStore.getLocationCount();
+	}
+
+	/**
+	 * Closes the disk store.  Locations held in memory are discarded.
+	 */
+	@Override
+	public void close() {
+		diskStore.close();
+	}
+}
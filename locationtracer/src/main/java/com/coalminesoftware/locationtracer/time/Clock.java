@@ -0,0 +1,10 @@
+package com.coalminesoftware.locationtracer.time;
+
+/**
+ * A source of the current time, in milliseconds on the same timeline as
+ * {@link android.os.SystemClock#elapsedRealtime()}, allowing the library's timing to be driven by a
+ * {@link VirtualClock} in simulations and tests.
+ */
+public interface Clock {
+	long elapsedRealtime();
+}
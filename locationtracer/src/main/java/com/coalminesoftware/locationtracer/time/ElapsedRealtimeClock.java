@@ -0,0 +1,15 @@
+package com.coalminesoftware.locationtracer.time;
+
+import android.os.SystemClock;
+
+/** A {@link Clock} that reports the device's {@link SystemClock#elapsedRealtime()}. */
+public class ElapsedRealtimeClock implements Clock {
+	public static final ElapsedRealtimeClock INSTANCE = new ElapsedRealtimeClock();
+
+	private ElapsedRealtimeClock() { }
+
+	@Override
+	public long elapsedRealtime() {
+		return SystemClock.elapsedRealtime();
+	}
+}
@@ -0,0 +1,39 @@
+package com.coalminesoftware.locationtracer.time;
+
+/**
+ * A {@link Clock} whose time only changes when it is set or advanced, so that hours of tracing can be simulated in
+ * moments.  Time never moves backwards.
+ *
+ * @see com.coalminesoftware.locationtracer.alarm.VirtualAlarmTrigger
+ */
+public class VirtualClock implements Clock {
+	private long elapsedRealtime;
+
+	public VirtualClock() {
+		this(0);
+	}
+
+	public VirtualClock(long elapsedRealtime) {
+		this.elapsedRealtime = elapsedRealtime;
+	}
+
+	@Override
+	public synchronized long elapsedRealtime() {
+		return elapsedRealtime;
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the given time precedes the clock's current time.
+	 */
+	public synchronized void setElapsedRealtime(long elapsedRealtime) {
+		if(elapsedRealtime < this.elapsedRealtime) {
+			throw new IllegalArgumentException("A virtual clock cannot move backwards.");
+		}
+
+		this.elapsedRealtime = elapsedRealtime;
+	}
+
+	public synchronized void advance(long duration) {
+		setElapsedRealtime(elapsedRealtime + duration);
+	}
+}
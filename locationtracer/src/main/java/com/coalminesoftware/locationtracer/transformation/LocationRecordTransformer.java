@@ -0,0 +1,18 @@
+package com.coalminesoftware.locationtracer.transformation;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.LocationRecord;
+import com.coalminesoftware.locationtracer.storage.LocationRecordStore;
+
+/**
+ * A counterpart to {@link LocationTransformer} that, rather than creating a new object for each observed
+ * {@link Location}, writes the fields to be stored into a {@link LocationRecord} provided by a
+ * {@link LocationRecordStore}.  Fields that aren't written aren't stored, so a transformer that writes only the time,
+ * latitude and longitude, for example, leaves the other fields of every stored location unset.
+ * <p>
+ * Transformers must not retain the record or the location.
+ */
+public interface LocationRecordTransformer {
+	void transformLocation(Location location, LocationRecord record);
+}
@@ -0,0 +1,32 @@
+package com.coalminesoftware.locationtracer.transformation;
+
+import android.location.Location;
+
+import com.coalminesoftware.locationtracer.storage.LocationRecord;
+
+/** A {@link LocationRecordTransformer} that records every field of the {@link Location}s it is given. */
+public class PassthroughLocationRecordTransformer implements LocationRecordTransformer {
+	public static final PassthroughLocationRecordTransformer INSTANCE = new PassthroughLocationRecordTransformer();
+
+	private PassthroughLocationRecordTransformer() { }
+
+	@Override
+	public void transformLocation(Location location, LocationRecord record) {
+		record.setTime(location.getTime());
+		record.setLatitude(location.getLatitude());
+		record.setLongitude(location.getLongitude());
+
+		if(location.hasAltitude()) {
+			record.setAltitude(location.getAltitude());
+		}
+		if(location.hasAccuracy()) {
+			record.setAccuracy(location.getAccuracy());
+		}
+		if(location.hasSpeed()) {
+			record.setSpeed(location.getSpeed());
+		}
+		if(location.hasBearing()) {
+			record.setBearing(location.getBearing());
+		}
+	}
+}
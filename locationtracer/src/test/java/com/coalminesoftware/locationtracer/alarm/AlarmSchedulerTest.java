@@ -0,0 +1,228 @@
+package com.coalminesoftware.locationtracer.alarm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+
+public class AlarmSchedulerTest {
+	private final VirtualClock clock = new VirtualClock(0);
+
+	@Test
+	public void nonWakeupDeadlineIsNotArmedAsWakeup() {
+		RecordingAlarmTrigger alarmTrigger = new RecordingAlarmTrigger();
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+
+		new CountingAlarm(alarmScheduler, 10000, true).startRecurringAlarm();
+		new CountingAlarm(alarmScheduler, 3000, false).startRecurringAlarm();
+
+		assertEquals(Long.valueOf(10000), alarmTrigger.armedWakeupTime);
+		assertEquals(Long.valueOf(3000), alarmTrigger.armedNonWakeupTime);
+	}
+
+	@Test
+	public void nonWakeupAlarmDueAfterWakeupIsNotArmed() {
+		RecordingAlarmTrigger alarmTrigger = new RecordingAlarmTrigger();
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+
+		new CountingAlarm(alarmScheduler, 3000, true).startRecurringAlarm();
+		new CountingAlarm(alarmScheduler, 10000, false).startRecurringAlarm();
+
+		assertEquals(Long.valueOf(3000), alarmTrigger.armedWakeupTime);
+		assertNull(alarmTrigger.armedNonWakeupTime);
+	}
+
+	@Test
+	public void alarmsAreQueuedAgainWhenHandlerThrows() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+
+		CountingAlarm throwingAlarm = new CountingAlarm(alarmScheduler, 1000, true) {
+			@Override
+			public void handleAlarm(long alarmElapsedRealtime) {
+				super.handleAlarm(alarmElapsedRealtime);
+				throw new IllegalStateException("Alarm failed.");
+			}
+		};
+		CountingAlarm alarm = new CountingAlarm(alarmScheduler, 1000, true);
+		throwingAlarm.startRecurringAlarm();
+		alarm.startRecurringAlarm();
+
+		try {
+			alarmTrigger.advanceTo(1000);
+			fail("Handler should have thrown.");
+		} catch(IllegalStateException expected) { }
+
+		// If the throwing alarm was handled first, the other alarm goes off as soon as its time is armed again.
+		alarmTrigger.advanceTo(1500);
+
+		assertEquals(1, throwingAlarm.handledCount);
+		assertEquals(1, alarm.handledCount);
+		assertEquals(2, alarmScheduler.getScheduledAlarmCount());
+		assertEquals(Long.valueOf(2000), alarmTrigger.getArmedTime());
+	}
+
+	@Test
+	public void loneAlarmKeepsToItsInterval() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+
+		CountingAlarm alarm = new CountingAlarm(alarmScheduler, 1000, true);
+		alarm.setAlarmTolerance(250);
+		alarm.startRecurringAlarm();
+
+		assertEquals(Long.valueOf(1000), alarmTrigger.getArmedTime());
+		alarmTrigger.advanceTo(10000);
+
+		assertEquals(10, alarm.handledCount);
+		assertEquals(Long.valueOf(11000), alarmTrigger.getArmedTime());
+	}
+
+	@Test
+	public void overlappingAlarmsShareDispatch() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+
+		CountingAlarm firstAlarm = new CountingAlarm(alarmScheduler, 1000, true);
+		firstAlarm.setAlarmTolerance(500);
+		firstAlarm.startRecurringAlarm();
+		CountingAlarm secondAlarm = new CountingAlarm(alarmScheduler, 1200, true);
+		secondAlarm.setAlarmTolerance(500);
+		secondAlarm.startRecurringAlarm();
+
+		// The first alarm's window runs from 1000 to 1500, so it waits for the second alarm's deadline.
+		assertEquals(Long.valueOf(1200), alarmTrigger.getArmedTime());
+		alarmTrigger.advanceTo(1200);
+
+		assertEquals(1, firstAlarm.handledCount);
+		assertEquals(1, secondAlarm.handledCount);
+		assertEquals(1, alarmScheduler.getDispatchCount());
+		assertEquals(1, alarmScheduler.getSavedWakeupCount());
+		assertEquals(Long.valueOf(2400), alarmTrigger.getArmedTime());
+
+		alarmTrigger.advanceTo(2400);
+		// The first alarm's deadlines follow its previous deadlines, at 3000 rather than 3400, so its window no longer
+		// overlaps the second alarm's deadline at 3600.
+		assertEquals(Long.valueOf(3000), alarmTrigger.getArmedTime());
+	}
+
+	@Test
+	public void onlyWakeupAlarmsCountAsSavedWakeups() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+		new CountingAlarm(alarmScheduler, 1000, true).startRecurringAlarm();
+		new CountingAlarm(alarmScheduler, 1000, false).startRecurringAlarm();
+		new CountingAlarm(alarmScheduler, 1000, false).startRecurringAlarm();
+
+		alarmTrigger.advanceTo(1000);
+
+		assertEquals(1, alarmScheduler.getDispatchCount());
+		assertEquals(0, alarmScheduler.getSavedWakeupCount());
+
+		new CountingAlarm(alarmScheduler, 1000, true).startRecurringAlarm();
+		alarmTrigger.advanceTo(2000);
+
+		assertEquals(2, alarmScheduler.getDispatchCount());
+		assertEquals(1, alarmScheduler.getSavedWakeupCount());
+	}
+
+	@Test
+	public void postponingQueuedAlarmNeverBringsItForward() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+		CountingAlarm alarm = new CountingAlarm(alarmScheduler, 10000, true);
+		alarm.startRecurringAlarm();
+
+		alarmScheduler.postponeAlarm(alarm, 3000);
+
+		assertEquals(Long.valueOf(10000), alarmTrigger.getArmedTime());
+
+		alarmScheduler.postponeAlarm(alarm, 15000);
+
+		assertEquals(Long.valueOf(15000), alarmTrigger.getArmedTime());
+		alarmTrigger.advanceTo(15000);
+		assertEquals(1, alarm.handledCount);
+		assertEquals(Long.valueOf(25000), alarmTrigger.getArmedTime());
+	}
+
+	@Test
+	public void postponingAlarmWhileHandledDelaysOnlyPastItsNextDeadline() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		final AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+		final long[] postponedDelay = { 500 };
+		CountingAlarm alarm = new CountingAlarm(alarmScheduler, 1000, true) {
+			@Override
+			public void handleAlarm(long alarmElapsedRealtime) {
+				super.handleAlarm(alarmElapsedRealtime);
+				alarmScheduler.postponeAlarm(this, alarmElapsedRealtime + postponedDelay[0]);
+			}
+		};
+		alarm.startRecurringAlarm();
+
+		alarmTrigger.advanceTo(1000);
+
+		assertEquals(Long.valueOf(2000), alarmTrigger.getArmedTime());
+
+		postponedDelay[0] = 5000;
+		alarmTrigger.advanceTo(2000);
+
+		assertEquals(Long.valueOf(7000), alarmTrigger.getArmedTime());
+	}
+
+	@Test
+	public void postponingStoppedAlarmDoesNothing() {
+		VirtualAlarmTrigger alarmTrigger = new VirtualAlarmTrigger(clock);
+		AlarmScheduler alarmScheduler = new AlarmScheduler(clock, alarmTrigger);
+		CountingAlarm alarm = new CountingAlarm(alarmScheduler, 1000, true);
+
+		alarmScheduler.postponeAlarm(alarm, 5000);
+
+		assertEquals(0, alarmScheduler.getScheduledAlarmCount());
+		assertNull(alarmTrigger.getArmedTime());
+	}
+
+	private static class CountingAlarm extends RecurringAlarm {
+		public int handledCount;
+
+		public CountingAlarm(AlarmScheduler alarmScheduler, long alarmIntervalDuration, boolean wakeForAlarm) {
+			super(alarmScheduler, alarmIntervalDuration, wakeForAlarm);
+		}
+
+		@Override
+		public void handleAlarm(long alarmElapsedRealtime) {
+			handledCount++;
+		}
+	}
+
+	private static class RecordingAlarmTrigger implements AlarmTrigger {
+		public Long armedWakeupTime;
+		public Long armedNonWakeupTime;
+
+		@Override
+		public void register(AlarmScheduler alarmScheduler) { }
+
+		@Override
+		public void unregister() { }
+
+		@Override
+		public void arm(long elapsedRealtime, boolean wakeup) {
+			if(wakeup) {
+				armedWakeupTime = elapsedRealtime;
+			} else {
+				armedNonWakeupTime = elapsedRealtime;
+			}
+		}
+
+		@Override
+		public void cancel(boolean wakeup) {
+			if(wakeup) {
+				armedWakeupTime = null;
+			} else {
+				armedNonWakeupTime = null;
+			}
+		}
+	}
+}
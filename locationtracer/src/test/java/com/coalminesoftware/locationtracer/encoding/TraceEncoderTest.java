@@ -0,0 +1,134 @@
+package com.coalminesoftware.locationtracer.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class TraceEncoderTest {
+	@Test
+	public void decodedLocationsMatchEncodedLocations() throws IOException {
+		Location first = buildLocation("gps", 1000, 40.0150001, -105.2705001);
+		first.setAltitude(1655.25);
+		first.setSpeed(1.5f);
+		first.setBearing(271.25f);
+		first.setAccuracy(4.5f);
+		Location second = buildLocation("gps", 2000, 40.0150105, -105.2704894);
+		second.setAccuracy(6);
+		Location third = buildLocation("network", 3500, 40.0149871, -105.2705237);
+		third.setAltitude(1654.5);
+
+		List<Location> decodedLocations = decode(encode(first, second, third));
+
+		assertEquals(3, decodedLocations.size());
+		assertSameLocation(first, decodedLocations.get(0));
+		assertSameLocation(second, decodedLocations.get(1));
+		assertSameLocation(third, decodedLocations.get(2));
+	}
+
+	@Test
+	public void locationsWithoutProviderAreEncoded() throws IOException {
+		Location first = buildLocation(null, 1000, 40, -105);
+		Location second = buildLocation("gps", 2000, 40, -105);
+		Location third = buildLocation(null, 3000, 40, -105);
+
+		List<Location> decodedLocations = decode(encode(first, second, third));
+
+		assertEquals(3, decodedLocations.size());
+		assertNull(decodedLocations.get(0).getProvider());
+		assertEquals("gps", decodedLocations.get(1).getProvider());
+		assertNull(decodedLocations.get(2).getProvider());
+	}
+
+	@Test
+	public void resetEncoderWritesIdenticalTrace() throws IOException {
+		Location location = buildLocation("gps", 1000, 40, -105);
+
+		ByteArrayOutputStream firstStream = new ByteArrayOutputStream();
+		TraceEncoder encoder = new TraceEncoder(firstStream);
+		encoder.encode(location);
+
+		ByteArrayOutputStream secondStream = new ByteArrayOutputStream();
+		encoder.reset(secondStream);
+		encoder.encode(location);
+
+		assertArrayEquals(firstStream.toByteArray(), secondStream.toByteArray());
+	}
+
+	@Test
+	public void emptyStreamHoldsNoLocations() throws IOException {
+		TraceDecoder decoder = new TraceDecoder(new ByteArrayInputStream(new byte[0]));
+
+		assertFalse(decoder.decode(new Location("gps")));
+	}
+
+	@Test(expected = IOException.class)
+	public void streamWithoutMagicNumberIsRejected() throws IOException {
+		TraceDecoder decoder = new TraceDecoder(new ByteArrayInputStream(new byte[] { 'X', 'Y', 1 }));
+
+		decoder.decode(new Location("gps"));
+	}
+
+	private static byte[] encode(Location... locations) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		TraceEncoder encoder = new TraceEncoder(outputStream);
+		for(Location location : locations) {
+			encoder.encode(location);
+		}
+
+		return outputStream.toByteArray();
+	}
+
+	private static List<Location> decode(byte[] trace) throws IOException {
+		TraceDecoder decoder = new TraceDecoder(new ByteArrayInputStream(trace));
+
+		List<Location> locations = new ArrayList<>();
+		Location location = new Location((String)null);
+		while(decoder.decode(location)) {
+			locations.add(location);
+			location = new Location((String)null);
+		}
+
+		return locations;
+	}
+
+	private static Location buildLocation(String provider, long time, double latitude, double longitude) {
+		Location location = new Location(provider);
+		location.setTime(time);
+		location.setLatitude(latitude);
+		location.setLongitude(longitude);
+
+		return location;
+	}
+
+	private static void assertSameLocation(Location expected, Location actual) {
+		assertEquals(expected.getProvider(), actual.getProvider());
+		assertEquals(expected.getTime(), actual.getTime());
+		assertEquals(expected.getLatitude(), actual.getLatitude(), 1e-7);
+		assertEquals(expected.getLongitude(), actual.getLongitude(), 1e-7);
+
+		assertEquals(expected.hasAltitude(), actual.hasAltitude());
+		assertEquals(expected.getAltitude(), actual.getAltitude(), 0.01);
+		assertEquals(expected.hasSpeed(), actual.hasSpeed());
+		assertEquals(expected.getSpeed(), actual.getSpeed(), 0.01);
+		assertEquals(expected.hasBearing(), actual.hasBearing());
+		assertEquals(expected.getBearing(), actual.getBearing(), 0.01);
+		assertEquals(expected.hasAccuracy(), actual.hasAccuracy());
+		assertEquals(expected.getAccuracy(), actual.getAccuracy(), 0.01);
+	}
+}
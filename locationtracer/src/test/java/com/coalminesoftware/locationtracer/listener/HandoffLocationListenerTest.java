@@ -0,0 +1,240 @@
+package com.coalminesoftware.locationtracer.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class HandoffLocationListenerTest {
+	private final QueuedExecutor queuedExecutor = new QueuedExecutor();
+	private final ExecutorService drainExecutor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void stopDrainExecutor() throws InterruptedException {
+		drainExecutor.shutdownNow();
+		drainExecutor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void locationsAreHandedOffInOrderOnExecutor() {
+		RecordingLocationListener recordingListener = new RecordingLocationListener();
+		HandoffLocationListener handoffListener = new HandoffLocationListener(recordingListener, queuedExecutor, 3,
+				HandoffOverflowPolicy.DROP_NEWEST);
+
+		offerLocations(handoffListener, 1, 2, 3);
+
+		assertEquals(1, queuedExecutor.tasks.size());
+		assertTimes(recordingListener.locations);
+
+		queuedExecutor.runTasks();
+
+		assertTimes(recordingListener.locations, 1, 2, 3);
+		assertEquals(0, handoffListener.getDroppedLocationCount());
+	}
+
+	@Test
+	public void dropOldestDiscardsQueuedLocations() {
+		RecordingLocationListener recordingListener = new RecordingLocationListener();
+		HandoffLocationListener handoffListener = new HandoffLocationListener(recordingListener, queuedExecutor, 2,
+				HandoffOverflowPolicy.DROP_OLDEST);
+
+		offerLocations(handoffListener, 1, 2, 3, 4);
+		queuedExecutor.runTasks();
+
+		assertTimes(recordingListener.locations, 3, 4);
+		assertEquals(2, handoffListener.getDroppedLocationCount());
+	}
+
+	@Test
+	public void dropNewestDiscardsArrivingLocations() {
+		RecordingLocationListener recordingListener = new RecordingLocationListener();
+		HandoffLocationListener handoffListener = new HandoffLocationListener(recordingListener, queuedExecutor, 2,
+				HandoffOverflowPolicy.DROP_NEWEST);
+
+		offerLocations(handoffListener, 1, 2, 3, 4);
+		queuedExecutor.runTasks();
+
+		assertTimes(recordingListener.locations, 1, 2);
+		assertEquals(2, handoffListener.getDroppedLocationCount());
+	}
+
+	@Test
+	public void blockWaitsForQueueToBeDrained() throws InterruptedException {
+		final GatedLocationListener gatedListener = new GatedLocationListener();
+		HandoffLocationListener handoffListener = new HandoffLocationListener(gatedListener, drainExecutor, 2,
+				HandoffOverflowPolicy.BLOCK);
+
+		offerLocations(handoffListener, 1);
+		assertTrue(gatedListener.firstLocationReceived.await(5, TimeUnit.SECONDS));
+		offerLocations(handoffListener, 2, 3);
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch(InterruptedException e) {
+					return;
+				}
+				gatedListener.gate.countDown();
+			}
+		}.start();
+		offerLocations(handoffListener, 4);
+		gatedListener.awaitLocationCount(4);
+
+		assertTimes(gatedListener.locations, 1, 2, 3, 4);
+		assertEquals(0, handoffListener.getDroppedLocationCount());
+	}
+
+	@Test
+	public void blockDropsLocationOnceMaximumBlockDurationPasses() throws InterruptedException {
+		GatedLocationListener gatedListener = new GatedLocationListener();
+		HandoffLocationListener handoffListener = new HandoffLocationListener(gatedListener, drainExecutor, 2,
+				HandoffOverflowPolicy.BLOCK);
+
+		offerLocations(handoffListener, 1);
+		assertTrue(gatedListener.firstLocationReceived.await(5, TimeUnit.SECONDS));
+		offerLocations(handoffListener, 2, 3);
+
+		long startTime = System.nanoTime();
+		offerLocations(handoffListener, 4);
+		long blockDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+		assertTrue(blockDuration >= HandoffLocationListener.MAXIMUM_BLOCK_DURATION - 1);
+		assertEquals(1, handoffListener.getDroppedLocationCount());
+
+		gatedListener.gate.countDown();
+		gatedListener.awaitLocationCount(3);
+
+		assertTimes(gatedListener.locations, 1, 2, 3);
+	}
+
+	@Test
+	public void blockDropsLocationDeliveredOnDrainingThread() {
+		final HandoffLocationListener[] handoffListener = new HandoffLocationListener[1];
+		RecordingLocationListener recordingListener = new RecordingLocationListener() {
+			@Override
+			public void onLocationChanged(Location location) {
+				super.onLocationChanged(location);
+				if(location.getTime() == 1) {
+					offerLocations(handoffListener[0], 3, 4, 5);
+				}
+			}
+		};
+		handoffListener[0] = new HandoffLocationListener(recordingListener, queuedExecutor, 2,
+				HandoffOverflowPolicy.BLOCK);
+
+		offerLocations(handoffListener[0], 1, 2);
+		queuedExecutor.runTasks();
+
+		assertTimes(recordingListener.locations, 1, 2, 3);
+		assertEquals(2, handoffListener[0].getDroppedLocationCount());
+	}
+
+	private static void offerLocations(LocationListener locationListener, long... times) {
+		for(long time : times) {
+			locationListener.onLocationChanged(buildLocation(time));
+		}
+	}
+
+	private static Location buildLocation(long time) {
+		Location location = new Location("gps");
+		location.setTime(time);
+
+		return location;
+	}
+
+	private static void assertTimes(List<Location> locations, long... expectedTimes) {
+		assertEquals(expectedTimes.length, locations.size());
+		for(int i = 0; i < expectedTimes.length; i++) {
+			assertEquals(expectedTimes[i], locations.get(i).getTime());
+		}
+	}
+
+	/**
+	 * Holds submitted tasks until the test runs them, including tasks submitted while they run.
+	 */
+	private static class QueuedExecutor implements Executor {
+		private final List<Runnable> tasks = new ArrayList<>();
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		public void runTasks() {
+			while(!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+
+	private static class RecordingLocationListener implements LocationListener {
+		protected final List<Location> locations = Collections.synchronizedList(new ArrayList<Location>());
+
+		@Override
+		public void onLocationChanged(Location location) {
+			locations.add(location);
+		}
+
+		@Override
+		public void onStatusChanged(String provider, int status, Bundle extras) { }
+
+		@Override
+		public void onProviderEnabled(String provider) { }
+
+		@Override
+		public void onProviderDisabled(String provider) { }
+	}
+
+	/**
+	 * Holds up the draining thread on the first location it receives until the gate is opened, so that the test can fill
+	 * the queue.
+	 */
+	private static class GatedLocationListener extends RecordingLocationListener {
+		public final CountDownLatch firstLocationReceived = new CountDownLatch(1);
+		public final CountDownLatch gate = new CountDownLatch(1);
+
+		@Override
+		public void onLocationChanged(Location location) {
+			firstLocationReceived.countDown();
+			try {
+				gate.await();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			super.onLocationChanged(location);
+			synchronized(this) {
+				notifyAll();
+			}
+		}
+
+		public synchronized void awaitLocationCount(int locationCount) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while(locations.size() < locationCount && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class SimplifyingLocationProcessorTest {
+	private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+	private static final float TOLERANCE = 5;
+	private static final int LEG_STEPS = 100;
+	private static final double STEP_LENGTH = 10;
+	private static final double JITTER = 2;
+
+	@Test
+	public void twoLegTraceIsReducedToItsCorners() {
+		List<Location> trace = buildTwoLegTrace();
+
+		List<Location> simplifiedTrace = simplify(trace);
+
+		assertSame(trace.get(0), simplifiedTrace.get(0));
+		assertSame(trace.get(trace.size() - 1), simplifiedTrace.get(simplifiedTrace.size() - 1));
+		assertTrue("Kept " + simplifiedTrace.size() + " locations.", simplifiedTrace.size() <= 4);
+
+		boolean cornerKept = false;
+		for(Location location : simplifiedTrace) {
+			cornerKept |= Math.hypot(projectX(location), projectY(location) - LEG_STEPS * STEP_LENGTH) <= 2 * STEP_LENGTH;
+		}
+		assertTrue(cornerKept);
+	}
+
+	@Test
+	public void droppedLocationsAreWithinToleranceOfSimplifiedTrace() {
+		List<Location> trace = buildTwoLegTrace();
+
+		List<Location> simplifiedTrace = simplify(trace);
+
+		int previousKeptIndex = 0;
+		for(int keptIndex = 1; keptIndex < simplifiedTrace.size(); keptIndex++) {
+			Location start = simplifiedTrace.get(keptIndex - 1);
+			Location end = simplifiedTrace.get(keptIndex);
+			int endIndex = trace.indexOf(end);
+			assertTrue(endIndex > previousKeptIndex);
+
+			for(int i = previousKeptIndex + 1; i < endIndex; i++) {
+				double distance = distanceFromSegment(trace.get(i), start, end);
+				assertTrue("Location " + i + " is " + distance + " m from the trace.", distance <= TOLERANCE + 0.01);
+			}
+			previousKeptIndex = endIndex;
+		}
+		assertEquals(trace.size() - 1, previousKeptIndex);
+	}
+
+	@Test
+	public void flushPassesAlongHeldLocation() {
+		SimplifyingLocationProcessor processor = new SimplifyingLocationProcessor(TOLERANCE);
+		CollectingSink sink = new CollectingSink();
+		Location first = buildLocation(0, 0);
+		Location second = buildLocation(0, 10);
+		Location third = buildLocation(0, 20);
+
+		processor.processLocation(first, sink);
+		processor.processLocation(second, sink);
+		processor.processLocation(third, sink);
+
+		assertEquals(1, sink.locations.size());
+		assertFalse(sink.locations.contains(third));
+
+		processor.flush(sink);
+
+		assertEquals(2, sink.locations.size());
+		assertSame(third, sink.locations.get(1));
+
+		processor.flush(sink);
+
+		assertEquals(2, sink.locations.size());
+	}
+
+	@Test
+	public void fullWindowIsPassedAlong() {
+		SimplifyingLocationProcessor processor = new SimplifyingLocationProcessor(TOLERANCE, 3);
+		CollectingSink sink = new CollectingSink();
+
+		for(int i = 0; i <= 4; i++) {
+			processor.processLocation(buildLocation(0, i * STEP_LENGTH), sink);
+		}
+
+		assertEquals(2, sink.locations.size());
+		assertEquals(3 * STEP_LENGTH, projectY(sink.locations.get(1)), 0.001);
+	}
+
+	/** Builds a trace that heads north, turns the corner, and heads east, zigzagging a little on both legs. */
+	private static List<Location> buildTwoLegTrace() {
+		List<Location> trace = new ArrayList<>();
+		trace.add(buildLocation(0, 0));
+		for(int i = 1; i <= LEG_STEPS; i++) {
+			trace.add(buildLocation(i % 2 == 0? JITTER : -JITTER, i * STEP_LENGTH));
+		}
+		for(int i = 1; i <= LEG_STEPS; i++) {
+			trace.add(buildLocation(i * STEP_LENGTH, LEG_STEPS * STEP_LENGTH + (i % 2 == 0? JITTER : -JITTER)));
+		}
+
+		return trace;
+	}
+
+	/** Simplifies the trace with a window that can hold a whole leg, so that only the corner forces a location out. */
+	private static List<Location> simplify(List<Location> trace) {
+		SimplifyingLocationProcessor processor = new SimplifyingLocationProcessor(TOLERANCE, trace.size());
+		CollectingSink sink = new CollectingSink();
+		for(Location location : trace) {
+			processor.processLocation(location, sink);
+		}
+		processor.flush(sink);
+
+		return sink.locations;
+	}
+
+	private static double distanceFromSegment(Location location, Location start, Location end) {
+		double x = projectX(location) - projectX(start);
+		double y = projectY(location) - projectY(start);
+		double endX = projectX(end) - projectX(start);
+		double endY = projectY(end) - projectY(start);
+		double lengthSquared = endX * endX + endY * endY;
+
+		double fraction = lengthSquared == 0? 0 : Math.max(0, Math.min(1, (x * endX + y * endY) / lengthSquared));
+		return Math.hypot(x - fraction * endX, y - fraction * endY);
+	}
+
+	/** Builds a location the given number of meters east and north of the intersection of the equator and meridian. */
+	private static Location buildLocation(double x, double y) {
+		Location location = new Location("gps");
+		location.setLatitude(y / METERS_PER_DEGREE);
+		location.setLongitude(x / METERS_PER_DEGREE);
+		return location;
+	}
+
+	private static double projectX(Location location) {
+		return location.getLongitude() * METERS_PER_DEGREE;
+	}
+
+	private static double projectY(Location location) {
+		return location.getLatitude() * METERS_PER_DEGREE;
+	}
+
+	private static class CollectingSink implements LocationSink {
+		private final List<Location> locations = new ArrayList<>();
+
+		@Override
+		public void acceptLocation(Location location) {
+			locations.add(location);
+		}
+	}
+}
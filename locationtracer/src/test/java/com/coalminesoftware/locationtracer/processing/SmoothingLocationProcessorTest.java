@@ -0,0 +1,162 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class SmoothingLocationProcessorTest {
+	private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+	private static final int FIX_COUNT = 300;
+	private static final long FIX_INTERVAL = 1000;
+	private static final double SPEED = 10;
+	private static final float NOISE_STANDARD_DEVIATION = 5;
+
+	@Test
+	public void smoothingReducesPositionError() {
+		List<Location> rawTrace = buildNoisyDrive();
+
+		List<Location> smoothedTrace = smooth(rawTrace);
+
+		double rawError = computeRmsError(rawTrace);
+		double smoothedError = computeRmsError(smoothedTrace);
+		assertTrue("Raw RMS error " + rawError + " m, smoothed " + smoothedError + " m.",
+				smoothedError < rawError * 0.85);
+	}
+
+	@Test
+	public void smoothingReducesDistanceInflation() {
+		List<Location> rawTrace = buildNoisyDrive();
+
+		List<Location> smoothedTrace = smooth(rawTrace);
+
+		double trueDistance = (FIX_COUNT - 1) * SPEED * FIX_INTERVAL / 1000;
+		double rawInflation = computeDistance(rawTrace) / trueDistance;
+		double smoothedInflation = computeDistance(smoothedTrace) / trueDistance;
+		assertTrue("Raw distance inflated " + rawInflation + " times.", rawInflation > 1.2);
+		assertTrue("Raw distance inflated " + rawInflation + " times, smoothed " + smoothedInflation + " times.",
+				smoothedInflation - 1 < (rawInflation - 1) / 2);
+	}
+
+	@Test
+	public void smoothedLocationsCarryRawValues() {
+		List<Location> rawTrace = buildNoisyDrive();
+
+		List<Location> smoothedTrace = smooth(rawTrace);
+
+		assertEquals(rawTrace.size(), smoothedTrace.size());
+		for(int i = 0; i < rawTrace.size(); i++) {
+			Location rawLocation = rawTrace.get(i);
+			SmoothedLocation smoothedLocation = (SmoothedLocation)smoothedTrace.get(i);
+
+			assertEquals(rawLocation.getTime(), smoothedLocation.getTime());
+			assertEquals(rawLocation.getLatitude(), smoothedLocation.getRawLatitude(), 0);
+			assertEquals(rawLocation.getLongitude(), smoothedLocation.getRawLongitude(), 0);
+			assertTrue(smoothedLocation.hasRawAccuracy());
+			assertEquals(rawLocation.getAccuracy(), smoothedLocation.getRawAccuracy(), 0);
+		}
+	}
+
+	@Test
+	public void filterRestartsAfterTimeGap() {
+		SmoothingLocationProcessor processor = new SmoothingLocationProcessor();
+		CollectingSink sink = new CollectingSink();
+
+		processor.processLocation(buildLocation(0, 0, 0), sink);
+		processor.processLocation(buildLocation(SmoothingLocationProcessor.DEFAULT_MAXIMUM_TIME_GAP + 1, 100, 0), sink);
+
+		Location restartedLocation = sink.locations.get(1);
+		assertEquals(100, projectX(restartedLocation), 0.001);
+		assertEquals(NOISE_STANDARD_DEVIATION, restartedLocation.getAccuracy(), 0.001);
+	}
+
+	/**
+	 * Builds a drive due east at a steady speed along the equator, with each fix scattered around the true position by
+	 * normally distributed noise matching its reported accuracy.
+	 */
+	private static List<Location> buildNoisyDrive() {
+		Random random = new Random(42);
+		List<Location> trace = new ArrayList<>();
+		for(int i = 0; i < FIX_COUNT; i++) {
+			long time = i * FIX_INTERVAL;
+			trace.add(buildLocation(time,
+					determineTrueX(time) + random.nextGaussian() * NOISE_STANDARD_DEVIATION,
+					random.nextGaussian() * NOISE_STANDARD_DEVIATION));
+		}
+
+		return trace;
+	}
+
+	private static List<Location> smooth(List<Location> trace) {
+		SmoothingLocationProcessor processor = new SmoothingLocationProcessor();
+		CollectingSink sink = new CollectingSink();
+		for(Location location : trace) {
+			processor.processLocation(location, sink);
+		}
+
+		return sink.locations;
+	}
+
+	private static double computeRmsError(List<Location> trace) {
+		double squaredErrorSum = 0;
+		for(Location location : trace) {
+			double errorX = projectX(location) - determineTrueX(location.getTime());
+			double errorY = projectY(location);
+			squaredErrorSum += errorX * errorX + errorY * errorY;
+		}
+
+		return Math.sqrt(squaredErrorSum / trace.size());
+	}
+
+	private static double computeDistance(List<Location> trace) {
+		double distance = 0;
+		for(int i = 1; i < trace.size(); i++) {
+			distance += Math.hypot(projectX(trace.get(i)) - projectX(trace.get(i - 1)),
+					projectY(trace.get(i)) - projectY(trace.get(i - 1)));
+		}
+
+		return distance;
+	}
+
+	private static double determineTrueX(long time) {
+		return SPEED * time / 1000;
+	}
+
+	/** Builds a location the given number of meters east and north of the intersection of the equator and meridian. */
+	private static Location buildLocation(long time, double x, double y) {
+		Location location = new Location("gps");
+		location.setTime(time);
+		location.setLatitude(y / METERS_PER_DEGREE);
+		location.setLongitude(x / METERS_PER_DEGREE);
+		location.setAccuracy(NOISE_STANDARD_DEVIATION);
+		return location;
+	}
+
+	private static double projectX(Location location) {
+		return location.getLongitude() * METERS_PER_DEGREE;
+	}
+
+	private static double projectY(Location location) {
+		return location.getLatitude() * METERS_PER_DEGREE;
+	}
+
+	private static class CollectingSink implements LocationSink {
+		private final List<Location> locations = new ArrayList<>();
+
+		@Override
+		public void acceptLocation(Location location) {
+			locations.add(location);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.coalminesoftware.locationtracer.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class StationaryDetectorTest {
+	private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+	private static final float STATIONARY_RADIUS = 20;
+	private static final long STATIONARY_DURATION = 60000;
+	private static final float ACCURACY = 5;
+
+	private final StationaryDetector detector = new StationaryDetector(STATIONARY_RADIUS, STATIONARY_DURATION);
+	private final CollectingSink sink = new CollectingSink();
+	private final List<Boolean> stationaryStates = new ArrayList<>();
+
+	@Before
+	public void recordStationaryStates() {
+		detector.setStationaryStateListener(new StationaryDetector.StationaryStateListener() {
+			@Override
+			public void onStationaryStateChanged(boolean stationary) {
+				stationaryStates.add(stationary);
+			}
+		});
+	}
+
+	@Test
+	public void deviceBecomesStationaryAfterDurationWithoutMovement() {
+		processLocation(0, 0, ACCURACY);
+		processLocation(20000, 3, ACCURACY);
+		processLocation(40000, -3, ACCURACY);
+
+		assertFalse(detector.isStationary());
+		assertTrue(stationaryStates.isEmpty());
+
+		processLocation(60000, 2, ACCURACY);
+
+		assertTrue(detector.isStationary());
+		assertEquals(Arrays.asList(true), stationaryStates);
+		assertTimes(sink.locations, 0, 20000, 40000, 60000);
+	}
+
+	@Test
+	public void locationsAreDroppedWhileStationary() {
+		becomeStationary();
+
+		processLocation(80000, 4, ACCURACY);
+		processLocation(100000, -4, ACCURACY);
+
+		assertTrue(detector.isStationary());
+		assertTimes(sink.locations, 0, 60000);
+	}
+
+	@Test
+	public void significantMovementEndsStationaryPeriod() {
+		becomeStationary();
+
+		processLocation(80000, 100, ACCURACY);
+
+		assertFalse(detector.isStationary());
+		assertEquals(Arrays.asList(true, false), stationaryStates);
+		assertTimes(sink.locations, 0, 60000, 80000);
+
+		processLocation(100000, 102, ACCURACY);
+		processLocation(140000, 98, ACCURACY);
+
+		assertEquals(Arrays.asList(true, false, true), stationaryStates);
+		assertTimes(sink.locations, 0, 60000, 80000, 100000, 140000);
+	}
+
+	@Test
+	public void inaccurateFixIsNotSignificantMovement() {
+		becomeStationary();
+
+		processLocation(80000, 40, 30);
+
+		assertTrue(detector.isStationary());
+		assertEquals(Arrays.asList(true), stationaryStates);
+		assertTimes(sink.locations, 0, 60000);
+	}
+
+	@Test
+	public void movementBeforeDurationRestartsStationaryPeriod() {
+		processLocation(0, 0, ACCURACY);
+		processLocation(30000, 0, ACCURACY);
+		processLocation(50000, 50, ACCURACY);
+		processLocation(100000, 50, ACCURACY);
+
+		assertFalse(detector.isStationary());
+
+		processLocation(110000, 50, ACCURACY);
+
+		assertTrue(detector.isStationary());
+		assertTimes(sink.locations, 0, 30000, 50000, 100000, 110000);
+	}
+
+	private void becomeStationary() {
+		processLocation(0, 0, ACCURACY);
+		processLocation(60000, 0, ACCURACY);
+		assertTrue(detector.isStationary());
+	}
+
+	private void processLocation(long time, double x, float accuracy) {
+		detector.processLocation(buildLocation(time, x, accuracy), sink);
+	}
+
+	/** Builds a location the given number of meters east of the intersection of the equator and meridian. */
+	private static Location buildLocation(long time, double x, float accuracy) {
+		Location location = new Location("gps");
+		location.setTime(time);
+		location.setLatitude(0);
+		location.setLongitude(x / METERS_PER_DEGREE);
+		location.setAccuracy(accuracy);
+		return location;
+	}
+
+	private static void assertTimes(List<Location> locations, long... expectedTimes) {
+		assertEquals(expectedTimes.length, locations.size());
+		for(int i = 0; i < expectedTimes.length; i++) {
+			assertEquals(expectedTimes[i], locations.get(i).getTime());
+		}
+	}
+
+	private static class CollectingSink implements LocationSink {
+		private final List<Location> locations = new ArrayList<>();
+
+		@Override
+		public void acceptLocation(Location location) {
+			locations.add(location);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveReportIntervalTest {
+	private static final AdaptiveReportInterval INTERVAL = new AdaptiveReportInterval(60000, 3600000, 600000, 100);
+
+	@Test
+	public void emptyStoreWaitsMaximumInterval() {
+		assertEquals(3600000, INTERVAL.determineReportDelay(0, 1000L));
+	}
+
+	@Test
+	public void unknownReportLatencyWaitsUpToTargetLatency() {
+		// A single unreported location takes 1% off the delay.
+		assertEquals(594600, INTERVAL.determineReportDelay(1, null));
+	}
+
+	@Test
+	public void fasterReportsShortenDelay() {
+		long slowReportDelay = INTERVAL.determineReportDelay(1, 600000L);
+		long fastReportDelay = INTERVAL.determineReportDelay(1, 6000L);
+
+		assertEquals(594600, slowReportDelay);
+		assertTrue(fastReportDelay < slowReportDelay);
+		// Reports taking 1% of the target latency wait 1% of the way from the minimum interval to the target latency.
+		assertEquals(65346, fastReportDelay);
+	}
+
+	@Test
+	public void growingBacklogShortensDelayToMinimum() {
+		long smallBacklogDelay = INTERVAL.determineReportDelay(10, 300000L);
+		long largeBacklogDelay = INTERVAL.determineReportDelay(50, 300000L);
+
+		assertTrue(largeBacklogDelay < smallBacklogDelay);
+		assertEquals(60000, INTERVAL.determineReportDelay(100, 300000L));
+		assertEquals(60000, INTERVAL.determineReportDelay(1000, 300000L));
+	}
+
+	@Test
+	public void delayStaysWithinBounds() {
+		AdaptiveReportInterval interval = new AdaptiveReportInterval(60000, 120000, 600000, 100);
+
+		// The target latency exceeds the maximum interval, which caps the delay instead.
+		assertEquals(119400, interval.determineReportDelay(1, null));
+		assertEquals(60000, interval.determineReportDelay(1, 0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maximumIntervalBelowMinimumIsRejected() {
+		new AdaptiveReportInterval(60000, 59999, 600000, 100);
+	}
+}
@@ -0,0 +1,249 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.coalminesoftware.locationtracer.encoding.LocationBatchEncoder;
+import com.coalminesoftware.locationtracer.storage.LocationBatch;
+import com.coalminesoftware.locationtracer.storage.SequenceRange;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class CompressingLocationReporterTest {
+	private final HeldPayloadTransport payloadTransport = new HeldPayloadTransport();
+	private final RecordingCompletionHandler completionHandler = new RecordingCompletionHandler();
+
+	@Test
+	public void payloadInflatesToEncodedBatch() throws DataFormatException {
+		CompressingLocationReporter<byte[]> reporter = createReporter(Deflater.DEFAULT_COMPRESSION);
+		byte[] location = repeatedBytes(1000, (byte)7);
+
+		reporter.reportLocations(new LocationBatch<byte[]>(new SequenceRange(10, 12), Arrays.asList(location, location),
+				"batch"), completionHandler);
+
+		assertEquals("batch", payloadTransport.batchIds.get(0));
+		assertArrayEquals(concatenate(location, location), payloadTransport.inflatePayload(0));
+
+		payloadTransport.sendPayload(0);
+
+		assertEquals(new SequenceRange(10, 12), completionHandler.reportedRange);
+	}
+
+	@Test
+	public void payloadBufferGrowsToHoldIncompressibleBatch() throws DataFormatException {
+		CompressingLocationReporter<byte[]> reporter = createReporter(Deflater.NO_COMPRESSION);
+		byte[] location = randomBytes(20000);
+
+		reporter.reportLocations(Arrays.asList(location), completionHandler);
+
+		assertTrue(payloadTransport.payloadLengths.get(0) > location.length);
+		assertArrayEquals(location, payloadTransport.inflatePayload(0));
+
+		payloadTransport.sendPayload(0);
+
+		assertEquals(Arrays.asList(location), completionHandler.reportedLocations);
+	}
+
+	@Test
+	public void payloadBuffersAreReusedOnceSent() {
+		CompressingLocationReporter<byte[]> reporter = createReporter(Deflater.DEFAULT_COMPRESSION);
+		List<byte[]> locations = Arrays.asList(randomBytes(100));
+
+		reporter.reportLocations(locations, completionHandler);
+		reporter.reportLocations(locations, completionHandler);
+
+		assertNotSame(payloadTransport.payloads.get(0), payloadTransport.payloads.get(1));
+
+		payloadTransport.sendPayload(1);
+		reporter.reportLocations(locations, completionHandler);
+
+		assertSame(payloadTransport.payloads.get(1), payloadTransport.payloads.get(2));
+	}
+
+	@Test
+	public void grownPayloadBufferIsReused() {
+		CompressingLocationReporter<byte[]> reporter = createReporter(Deflater.NO_COMPRESSION);
+
+		reporter.reportLocations(Arrays.asList(randomBytes(20000)), completionHandler);
+		payloadTransport.sendPayload(0);
+		reporter.reportLocations(Arrays.asList(randomBytes(100)), completionHandler);
+
+		assertSame(payloadTransport.payloads.get(0), payloadTransport.payloads.get(1));
+	}
+
+	@Test
+	public void failedPayloadFailsReportAndReturnsBuffer() {
+		CompressingLocationReporter<byte[]> reporter = createReporter(Deflater.DEFAULT_COMPRESSION);
+		List<byte[]> locations = Arrays.asList(randomBytes(100));
+
+		reporter.reportLocations(locations, completionHandler);
+		payloadTransport.failPayload(0);
+
+		assertEquals("Payload failed.", completionHandler.failureCause.getMessage());
+
+		reporter.reportLocations(locations, completionHandler);
+
+		assertSame(payloadTransport.payloads.get(0), payloadTransport.payloads.get(1));
+	}
+
+	@Test
+	public void encodingFailureFailsReportWithoutSendingPayload() {
+		CompressingLocationReporter<byte[]> reporter = new CompressingLocationReporter<>(
+				new LocationBatchEncoder<byte[]>() {
+					@Override
+					public void encodeLocations(List<byte[]> locations, OutputStream outputStream) throws IOException {
+						throw new IOException("Encoding failed.");
+					}
+				}, payloadTransport, Deflater.DEFAULT_COMPRESSION, null);
+
+		reporter.reportLocations(Arrays.asList(randomBytes(100)), completionHandler);
+
+		assertEquals("Encoding failed.", completionHandler.failureCause.getMessage());
+		assertTrue(payloadTransport.payloads.isEmpty());
+	}
+
+	@Test
+	public void metricsDescribeCompressedBatch() {
+		final List<CompressionMetrics> metrics = new ArrayList<>();
+		CompressingLocationReporter<byte[]> reporter = new CompressingLocationReporter<>(new ConcatenatingEncoder(),
+				payloadTransport, Deflater.DEFAULT_COMPRESSION,
+				new CompressingLocationReporter.CompressionMetricsListener() {
+					@Override
+					public void onBatchCompressed(CompressionMetrics batchMetrics) {
+						metrics.add(batchMetrics);
+					}
+				});
+
+		reporter.reportLocations(Arrays.asList(repeatedBytes(1000, (byte)1), repeatedBytes(1000, (byte)2)),
+				completionHandler);
+
+		assertEquals(2, metrics.get(0).getLocationCount());
+		assertEquals(2000, metrics.get(0).getEncodedSize());
+		assertEquals((int)payloadTransport.payloadLengths.get(0), metrics.get(0).getCompressedSize());
+		assertNull(completionHandler.failureCause);
+	}
+
+	private CompressingLocationReporter<byte[]> createReporter(int compressionLevel) {
+		return new CompressingLocationReporter<>(new ConcatenatingEncoder(), payloadTransport, compressionLevel, null);
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+
+		return bytes;
+	}
+
+	private static byte[] repeatedBytes(int length, byte value) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, value);
+
+		return bytes;
+	}
+
+	private static byte[] concatenate(byte[]... arrays) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		for(byte[] array : arrays) {
+			outputStream.write(array, 0, array.length);
+		}
+
+		return outputStream.toByteArray();
+	}
+
+	/** Encodes a batch of byte arrays by writing them one after another. */
+	private static class ConcatenatingEncoder implements LocationBatchEncoder<byte[]> {
+		@Override
+		public void encodeLocations(List<byte[]> locations, OutputStream outputStream) throws IOException {
+			for(byte[] location : locations) {
+				outputStream.write(location);
+			}
+		}
+	}
+
+	/**
+	 * Holds each payload until the test sends or fails it.
+	 */
+	private static class HeldPayloadTransport implements PayloadTransport {
+		private final List<String> batchIds = new ArrayList<>();
+		private final List<byte[]> payloads = new ArrayList<>();
+		private final List<Integer> payloadLengths = new ArrayList<>();
+		private final List<PayloadCompletionHandler> completionHandlers = new ArrayList<>();
+
+		@Override
+		public void sendPayload(String batchId, byte[] payload, int payloadLength,
+				PayloadCompletionHandler payloadCompletionHandler) {
+			batchIds.add(batchId);
+			payloads.add(payload);
+			payloadLengths.add(payloadLength);
+			completionHandlers.add(payloadCompletionHandler);
+		}
+
+		public byte[] inflatePayload(int index) throws DataFormatException {
+			Inflater inflater = new Inflater();
+			inflater.setInput(payloads.get(index), 0, payloadLengths.get(index));
+
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			while(!inflater.finished()) {
+				int length = inflater.inflate(buffer);
+				if(length == 0 && inflater.needsInput()) {
+					throw new DataFormatException("Payload is truncated.");
+				}
+				outputStream.write(buffer, 0, length);
+			}
+			inflater.end();
+
+			return outputStream.toByteArray();
+		}
+
+		public void sendPayload(int index) {
+			completionHandlers.get(index).onPayloadSent();
+		}
+
+		public void failPayload(int index) {
+			completionHandlers.get(index).onPayloadFailed(new Exception("Payload failed."));
+		}
+	}
+
+	private static class RecordingCompletionHandler implements SequencedReportCompletionHandler<byte[]> {
+		private Collection<byte[]> reportedLocations;
+		private SequenceRange reportedRange;
+		private Exception failureCause;
+
+		@Override
+		public void onLocationReportComplete(Collection<byte[]> reportedLocations) {
+			this.reportedLocations = reportedLocations;
+		}
+
+		@Override
+		public void onLocationReportComplete(SequenceRange reportedRange) {
+			this.reportedRange = reportedRange;
+		}
+
+		@Override
+		public void onLocationReportFailed(Exception cause) {
+			failureCause = cause;
+		}
+	}
+}
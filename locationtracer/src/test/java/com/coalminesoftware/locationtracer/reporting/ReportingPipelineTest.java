@@ -0,0 +1,178 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.coalminesoftware.locationtracer.reporting.LocationReporter.ReportCompletionHandler;
+import com.coalminesoftware.locationtracer.storage.InMemoryLocationStore;
+import com.coalminesoftware.locationtracer.time.VirtualClock;
+
+public class ReportingPipelineTest {
+	private static final RetryPolicy RETRY_POLICY = new RetryPolicy(1000, 10000, 2.0, 0, 3, 60000);
+
+	private final VirtualClock clock = new VirtualClock(100000);
+	private final InMemoryLocationStore<String> locationStore = new InMemoryLocationStore<>(100);
+	private final HeldLocationReporter locationReporter = new HeldLocationReporter();
+	private final List<Long> retryTimes = new ArrayList<>();
+
+	private ReportingPipeline<String> pipeline;
+
+	@Before
+	public void createPipeline() {
+		locationStore.setClock(clock);
+		for(int i = 0; i < 6; i++) {
+			locationStore.offerLocation("location " + i);
+		}
+
+		pipeline = new ReportingPipeline<>(locationStore, locationReporter, new ReportBatchLimits<String>(2), 3,
+				RETRY_POLICY);
+		pipeline.setClock(clock);
+		pipeline.setRetryListener(new RetryListener() {
+			@Override
+			public void onRetryScheduled(long nextAttemptTime) {
+				retryTimes.add(nextAttemptTime);
+			}
+		});
+	}
+
+	@Test
+	public void failedBatchesOfOneReportCountAsOneFailure() {
+		pipeline.report();
+		assertEquals(3, locationReporter.getHeldReportCount());
+
+		locationReporter.failHeldReports();
+
+		RetryScheduler retryScheduler = pipeline.getRetryScheduler();
+		assertEquals(1, retryScheduler.getConsecutiveFailureCount());
+		assertEquals(RetryScheduler.CircuitState.CLOSED, retryScheduler.getCircuitState());
+		assertEquals(1, retryTimes.size());
+		assertEquals(Long.valueOf(101000), retryTimes.get(0));
+		assertEquals(6, pipeline.getQueuedLocationCount());
+	}
+
+	@Test
+	public void reportsAreHeldOffUntilRetryTime() {
+		pipeline.report();
+		locationReporter.failHeldReports();
+
+		clock.advance(999);
+		pipeline.report();
+		assertEquals(0, locationReporter.getHeldReportCount());
+
+		clock.advance(1);
+		pipeline.report();
+		assertEquals(3, locationReporter.getHeldReportCount());
+	}
+
+	@Test
+	public void eachFailedReportIncreasesRetryDelay() {
+		pipeline.report();
+		locationReporter.failHeldReports();
+
+		clock.advance(1000);
+		pipeline.report();
+		locationReporter.failHeldReports();
+
+		assertEquals(2, pipeline.getRetryScheduler().getConsecutiveFailureCount());
+		assertEquals(Long.valueOf(103000), retryTimes.get(1));
+	}
+
+	@Test
+	public void successfulReportRestoresNormalReporting() {
+		pipeline.report();
+		locationReporter.failHeldReports();
+
+		clock.advance(1000);
+		pipeline.report();
+		locationReporter.completeReport(0);
+
+		assertEquals(0, pipeline.getRetryScheduler().getConsecutiveFailureCount());
+		assertEquals(null, pipeline.getRetryScheduler().getNextAttemptTime());
+	}
+
+	@Test
+	public void reportAcknowledgingNothingCountsAsFailure() {
+		pipeline.report();
+		locationReporter.acknowledgeNothing(0);
+
+		RetryScheduler retryScheduler = pipeline.getRetryScheduler();
+		assertEquals(1, retryScheduler.getConsecutiveFailureCount());
+		assertEquals(Long.valueOf(101000), retryScheduler.getNextAttemptTime());
+		assertEquals(1, retryTimes.size());
+		assertEquals(6, locationStore.getLocationCount());
+	}
+
+	@Test
+	public void completedBatchesAreFinishedOnDispatchExecutor() {
+		final List<Runnable> tasks = new ArrayList<>();
+		pipeline.setDispatchExecutor(new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				tasks.add(task);
+			}
+		});
+
+		locationStore.offerLocation("location 6");
+		locationStore.offerLocation("location 7");
+
+		pipeline.report();
+		clock.advance(500);
+		locationReporter.completeReport(0);
+
+		assertEquals(1, tasks.size());
+		assertEquals(8, locationStore.getLocationCount());
+		assertEquals(2, locationReporter.getHeldReportCount());
+
+		clock.advance(500);
+		tasks.remove(0).run();
+
+		assertEquals(6, locationStore.getLocationCount());
+		assertEquals(3, locationReporter.getHeldReportCount());
+		assertEquals(Long.valueOf(500), pipeline.getAverageBatchLatency());
+	}
+
+	/**
+	 * Holds each report until the test completes or fails it.
+	 */
+	private static class HeldLocationReporter implements LocationReporter<String> {
+		private final List<List<String>> heldLocations = new ArrayList<>();
+		private final List<ReportCompletionHandler<String>> heldHandlers = new ArrayList<>();
+
+		@Override
+		public void reportLocations(List<String> locations, ReportCompletionHandler<String> reportCompletionNotifier) {
+			heldLocations.add(locations);
+			heldHandlers.add(reportCompletionNotifier);
+		}
+
+		public int getHeldReportCount() {
+			return heldHandlers.size();
+		}
+
+		public void completeReport(int index) {
+			List<String> locations = heldLocations.remove(index);
+			heldHandlers.remove(index).onLocationReportComplete(locations);
+		}
+
+		public void acknowledgeNothing(int index) {
+			heldLocations.remove(index);
+			heldHandlers.remove(index).onLocationReportComplete(new ArrayList<String>());
+		}
+
+		public void failReport(int index) {
+			heldLocations.remove(index);
+			heldHandlers.remove(index).onLocationReportFailed(new Exception("Report failed."));
+		}
+
+		public void failHeldReports() {
+			while(!heldHandlers.isEmpty()) {
+				failReport(0);
+			}
+		}
+	}
+}
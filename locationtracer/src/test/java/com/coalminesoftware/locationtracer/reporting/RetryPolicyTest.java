@@ -0,0 +1,51 @@
+package com.coalminesoftware.locationtracer.reporting;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+	private static final RetryPolicy POLICY = new RetryPolicy(1000, 10000, 2.0, 0.5, 6, 60000);
+
+	@Test
+	public void delayGrowsWithEachConsecutiveFailure() {
+		assertEquals(1000, POLICY.determineRetryDelay(1, 0));
+		assertEquals(2000, POLICY.determineRetryDelay(2, 0));
+		assertEquals(4000, POLICY.determineRetryDelay(3, 0));
+		assertEquals(8000, POLICY.determineRetryDelay(4, 0));
+	}
+
+	@Test
+	public void delayIsLimitedToMaximum() {
+		assertEquals(10000, POLICY.determineRetryDelay(5, 0));
+		assertEquals(10000, POLICY.determineRetryDelay(40, 0));
+	}
+
+	@Test
+	public void jitterDropsAtMostJitterFractionOfDelay() {
+		assertEquals(3000, POLICY.determineRetryDelay(3, 0.5));
+		assertEquals(2000, POLICY.determineRetryDelay(3, 0.99999999));
+	}
+
+	@Test
+	public void jitterDropsAtMostJitterFractionOfCircuitOpenDuration() {
+		assertEquals(60000, POLICY.determineCircuitOpenDuration(0));
+		assertEquals(45000, POLICY.determineCircuitOpenDuration(0.5));
+		assertEquals(30000, POLICY.determineCircuitOpenDuration(0.99999999));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maximumDelayBelowInitialDelayIsRejected() {
+		new RetryPolicy(1000, 999, 2.0, 0.5, 6, 60000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shrinkingBackoffIsRejected() {
+		new RetryPolicy(1000, 10000, 0.5, 0.5, 6, 60000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void jitterFractionAboveOneIsRejected() {
+		new RetryPolicy(1000, 10000, 2.0, 1.5, 6, 60000);
+	}
+}
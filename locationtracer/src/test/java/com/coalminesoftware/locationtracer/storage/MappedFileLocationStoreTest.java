@@ -0,0 +1,238 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class MappedFileLocationStoreTest {
+	private static final int RECORDS_PER_SEGMENT = 2;
+
+	// Offsets within the store's files, which the tests alter to simulate older formats and interrupted writes.
+	private static final int HEADER_SIZE = 32;
+	private static final int HEADER_FORMAT_VERSION_OFFSET = 4;
+	private static final int RECORD_SIZE = 48;
+	private static final int RECORD_MARKER_OFFSET = 46;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void providersSurviveReopening() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		MappedFileLocationStore store = openStore(directory);
+		store.offerLocation(buildLocation(1, null));
+		store.offerLocation(buildLocation(2, "null"));
+		store.offerLocation(buildLocation(3, "line\nbreak\\n"));
+		store.offerLocation(buildLocation(4, "gps"));
+		store.close();
+
+		store = openStore(directory);
+
+		List<Location> locations = store.getLocations();
+		assertTimes(locations, 1, 2, 3, 4);
+		assertNull(locations.get(0).getProvider());
+		assertEquals("null", locations.get(1).getProvider());
+		assertEquals("line\nbreak\\n", locations.get(2).getProvider());
+		assertEquals("gps", locations.get(3).getProvider());
+		store.close();
+	}
+
+	@Test
+	public void removingLocationsMatchesLocationsWithoutProvider() throws IOException {
+		MappedFileLocationStore store = openStore(temporaryFolder.newFolder());
+		store.offerLocation(buildLocation(1, null));
+		store.offerLocation(buildLocation(2, "gps"));
+
+		store.removeLocations(Arrays.asList(buildLocation(1, null), buildLocation(2, null)));
+
+		assertEquals(new SequenceRange(1, 2), store.getSequenceRange());
+		store.close();
+	}
+
+	@Test
+	public void reopenedStoreContinuesSequence() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		MappedFileLocationStore store = openStore(directory);
+		offerLocations(store, 1, 2, 3);
+		store.removeLocations(new SequenceRange(0, 1));
+		store.close();
+
+		store = openStore(directory);
+		offerLocations(store, 4);
+
+		assertEquals(new SequenceRange(1, 4), store.getSequenceRange());
+		assertTimes(store.getLocations(), 2, 3, 4);
+		store.close();
+	}
+
+	@Test
+	public void segmentsRollOverAndAreDeletedOnceEmptied() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		MappedFileLocationStore store = openStore(directory);
+		offerLocations(store, 1, 2, 3, 4, 5);
+
+		assertTrue(new File(directory, "segment-2").exists());
+
+		store.removeLocations(new SequenceRange(0, 4));
+
+		assertFalse(new File(directory, "segment-0").exists());
+		assertFalse(new File(directory, "segment-1").exists());
+		assertTrue(new File(directory, "segment-2").exists());
+		assertTimes(store.getLocationBatch(0, 10).getLocations(), 5);
+		store.close();
+	}
+
+	@Test
+	public void versionOneStoreIsMigrated() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		MappedFileLocationStore store = openStore(directory);
+		offerLocations(store, 1, 2, 3);
+		store.close();
+
+		// Version 1 records had no marker.
+		writeInt(new File(directory, "header"), HEADER_FORMAT_VERSION_OFFSET, 1);
+		clearRecordMarker(directory, 0);
+		clearRecordMarker(directory, 1);
+		clearRecordMarker(directory, 2);
+
+		store = openStore(directory);
+
+		assertTimes(store.getLocations(), 1, 2, 3);
+		assertEquals(2, readInt(new File(directory, "header"), HEADER_FORMAT_VERSION_OFFSET));
+		store.close();
+
+		// Once migrated, the records are complete in the current format.
+		store = openStore(directory);
+
+		assertTimes(store.getLocations(), 1, 2, 3);
+		store.close();
+	}
+
+	@Test
+	public void incompleteRecordsAtEndAreDiscarded() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		MappedFileLocationStore store = openStore(directory);
+		offerLocations(store, 1, 2, 3);
+		store.close();
+
+		clearRecordMarker(directory, 2);
+		store = openStore(directory);
+
+		assertEquals(new SequenceRange(0, 2), store.getSequenceRange());
+		assertTimes(store.getLocations(), 1, 2);
+
+		offerLocations(store, 4);
+
+		assertTimes(store.getLocations(), 1, 2, 4);
+		store.close();
+	}
+
+	@Test
+	public void unfinishedHeaderStartsNewStore() throws IOException {
+		File emptyHeaderDirectory = temporaryFolder.newFolder();
+		new File(emptyHeaderDirectory, "header").createNewFile();
+		File shortHeaderDirectory = temporaryFolder.newFolder();
+		writeInt(new File(shortHeaderDirectory, "header"), HEADER_FORMAT_VERSION_OFFSET, 2);
+		File unmarkedHeaderDirectory = temporaryFolder.newFolder();
+		RandomAccessFile unmarkedHeader = new RandomAccessFile(new File(unmarkedHeaderDirectory, "header"), "rw");
+		unmarkedHeader.setLength(HEADER_SIZE);
+		unmarkedHeader.close();
+
+		for(File directory : Arrays.asList(emptyHeaderDirectory, shortHeaderDirectory, unmarkedHeaderDirectory)) {
+			MappedFileLocationStore store = openStore(directory);
+			offerLocations(store, 1);
+			store.close();
+
+			store = openStore(directory);
+			assertEquals(new SequenceRange(0, 1), store.getSequenceRange());
+			store.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void foreignHeaderIsRejected() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		RandomAccessFile header = new RandomAccessFile(new File(directory, "header"), "rw");
+		header.setLength(HEADER_SIZE);
+		header.writeInt(0x12345678);
+		header.close();
+
+		openStore(directory);
+	}
+
+	private static MappedFileLocationStore openStore(File directory) throws IOException {
+		return new MappedFileLocationStore(directory, RECORDS_PER_SEGMENT, Integer.MAX_VALUE, DurabilityPolicy.MANUAL);
+	}
+
+	private static void offerLocations(MappedFileLocationStore store, long... times) {
+		for(long time : times) {
+			store.offerLocation(buildLocation(time, "gps"));
+		}
+	}
+
+	/** Clears the marker that completes the record with the given sequence number, as if it were never written. */
+	private static void clearRecordMarker(File directory, long sequence) throws IOException {
+		RandomAccessFile segment = new RandomAccessFile(
+				new File(directory, "segment-" + sequence / RECORDS_PER_SEGMENT), "rw");
+		try {
+			segment.seek(sequence % RECORDS_PER_SEGMENT * RECORD_SIZE + RECORD_MARKER_OFFSET);
+			segment.write(0);
+		} finally {
+			segment.close();
+		}
+	}
+
+	private static void writeInt(File file, int offset, int value) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.seek(offset);
+			randomAccessFile.writeInt(value);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static int readInt(File file, int offset) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			randomAccessFile.seek(offset);
+			return randomAccessFile.readInt();
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static Location buildLocation(long time, String provider) {
+		Location location = new Location(provider);
+		location.setTime(time);
+		location.setLatitude(40 + time / 1000d);
+		location.setLongitude(-105 - time / 1000d);
+
+		return location;
+	}
+
+	private static void assertTimes(List<Location> locations, long... expectedTimes) {
+		assertEquals(expectedTimes.length, locations.size());
+		for(int i = 0; i < expectedTimes.length; i++) {
+			assertEquals(expectedTimes[i], locations.get(i).getTime());
+		}
+	}
+}
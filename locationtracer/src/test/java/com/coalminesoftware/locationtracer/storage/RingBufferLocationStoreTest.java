@@ -0,0 +1,120 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class RingBufferLocationStoreTest {
+	@Test
+	public void excessLocationsArePurgedOldestFirst() {
+		RingBufferLocationStore store = new RingBufferLocationStore(3);
+
+		offerLocations(store, 1, 2, 3, 4, 5);
+
+		assertEquals(new SequenceRange(2, 5), store.getSequenceRange());
+		assertTimes(store.getLocations(), 3, 4, 5);
+	}
+
+	@Test
+	public void purgedLocationsArePassedToSubclassThatObservesThem() {
+		final List<Location> purgedLocations = new ArrayList<>();
+		RingBufferLocationStore store = new RingBufferLocationStore(2, true) {
+			@Override
+			protected void onLocationPurged(Location purgedLocation) {
+				purgedLocations.add(purgedLocation);
+			}
+		};
+
+		offerLocations(store, 1, 2, 3, 4);
+
+		assertTimes(purgedLocations, 1, 2);
+	}
+
+	@Test
+	public void purgedLocationsAreNotRebuiltUnlessObserved() {
+		final List<Location> purgedLocations = new ArrayList<>();
+		RingBufferLocationStore store = new RingBufferLocationStore(2) {
+			@Override
+			protected void onLocationPurged(Location purgedLocation) {
+				purgedLocations.add(purgedLocation);
+			}
+		};
+
+		offerLocations(store, 1, 2, 3, 4);
+
+		assertTrue(purgedLocations.isEmpty());
+	}
+
+	@Test
+	public void removingLocationsRemovesOnlyTheMatchingPrefix() {
+		RingBufferLocationStore store = new RingBufferLocationStore(5);
+		offerLocations(store, 1, 2, 3);
+
+		store.removeLocations(Arrays.asList(buildLocation(1), buildLocation(9), buildLocation(2)));
+
+		assertEquals(new SequenceRange(2, 3), store.getSequenceRange());
+		assertTimes(store.getLocations(), 3);
+	}
+
+	@Test
+	public void removingLocationsMatchesLocationsWithoutProvider() {
+		RingBufferLocationStore store = new RingBufferLocationStore(5);
+		Location location = buildLocation(1);
+		location.setProvider(null);
+		store.offerLocation(location);
+		store.offerLocation(buildLocation(2));
+
+		List<Location> storedLocations = store.getLocations();
+		assertNull(storedLocations.get(0).getProvider());
+		store.removeLocations(storedLocations);
+
+		assertEquals(0, store.getLocationCount());
+	}
+
+	@Test
+	public void locationWithoutProviderDoesNotMatchStoredProvider() {
+		RingBufferLocationStore store = new RingBufferLocationStore(5);
+		offerLocations(store, 1);
+		Location location = buildLocation(1);
+		location.setProvider(null);
+
+		store.removeLocations(Arrays.asList(location));
+
+		assertEquals(1, store.getLocationCount());
+	}
+
+	private static void offerLocations(RingBufferLocationStore store, long... times) {
+		for(long time : times) {
+			store.offerLocation(buildLocation(time));
+		}
+	}
+
+	private static Location buildLocation(long time) {
+		Location location = new Location("gps");
+		location.setTime(time);
+		location.setLatitude(40 + time / 1000d);
+		location.setLongitude(-105 - time / 1000d);
+
+		return location;
+	}
+
+	private static void assertTimes(List<Location> locations, long... expectedTimes) {
+		assertEquals(expectedTimes.length, locations.size());
+		for(int i = 0; i < expectedTimes.length; i++) {
+			assertEquals(expectedTimes[i], locations.get(i).getTime());
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class SQLiteLocationStoreTest {
+	private static final String DATABASE_NAME = "test-locations";
+
+	private SQLiteLocationStore store;
+
+	@Before
+	public void openStore() {
+		store = openStore(DATABASE_NAME);
+	}
+
+	@After
+	public void closeStore() {
+		store.close();
+	}
+
+	@Test
+	public void syncedLocationsSurviveReopening() {
+		store.offerLocation(buildLocation(1));
+		store.offerLocation(buildLocation(2));
+		store.sync();
+		store.offerLocation(buildLocation(3));
+		store.close();
+
+		// Closing syncs the last location too.
+		store = openStore(DATABASE_NAME);
+
+		assertEquals(new SequenceRange(0, 3), store.getSequenceRange());
+		assertTimes(store.getLocations(), 1, 2, 3);
+		assertEquals(0, store.getUnsyncedLocationCount());
+	}
+
+	@Test
+	public void batchSpansSyncedAndUnsyncedLocations() {
+		offerLocations(1, 2, 3);
+		store.sync();
+		offerLocations(4, 5);
+
+		LocationBatch<Location> batch = store.getLocationBatch(1, 3);
+
+		assertEquals(new SequenceRange(1, 4), batch.getSequenceRange());
+		assertTimes(batch.getLocations(), 2, 3, 4);
+		assertEquals(2, store.getUnsyncedLocationCount());
+	}
+
+	@Test
+	public void unsyncedLocationsRemovedByRangeAreNeverWritten() {
+		offerLocations(1, 2);
+		store.sync();
+		offerLocations(3, 4, 5);
+
+		store.removeLocations(new SequenceRange(0, 4));
+		assertEquals(1, store.getUnsyncedLocationCount());
+		store.close();
+
+		store = openStore(DATABASE_NAME);
+
+		assertEquals(new SequenceRange(4, 5), store.getSequenceRange());
+		assertTimes(store.getLocations(), 5);
+	}
+
+	@Test
+	public void removingLocationsRemovesOnlyTheMatchingPrefix() {
+		offerLocations(1, 2, 3);
+		store.sync();
+
+		// The second location doesn't match the second stored location, so only the first is removed.
+		store.removeLocations(Arrays.asList(buildLocation(1), buildLocation(9), buildLocation(2)));
+
+		assertEquals(new SequenceRange(2, 3), store.getSequenceRange());
+		assertTimes(store.getLocations(), 3);
+	}
+
+	@Test
+	public void removingLocationsMatchesLocationsWithoutProvider() {
+		Location location = buildLocation(1);
+		location.setProvider(null);
+		store.offerLocation(location);
+
+		store.removeLocations(Arrays.asList(location));
+
+		assertEquals(0, store.getLocationCount());
+	}
+
+	@Test
+	public void locationsWithoutProviderAreSynced() {
+		Location location = buildLocation(1);
+		location.setProvider(null);
+		store.offerLocation(location);
+		store.offerLocation(buildLocation(2));
+		store.sync();
+		store.close();
+
+		store = openStore(DATABASE_NAME);
+
+		List<Location> locations = store.getLocations();
+		assertTimes(locations, 1, 2);
+		assertNull(locations.get(0).getProvider());
+		assertEquals("gps", locations.get(1).getProvider());
+		assertEquals(0, store.getUnsyncedLocationCount());
+	}
+
+	@Test
+	public void versionOneDatabaseIsUpgraded() {
+		store.close();
+		RuntimeEnvironment.application.deleteDatabase(DATABASE_NAME);
+		SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(
+				RuntimeEnvironment.application.getDatabasePath(DATABASE_NAME), null);
+		database.execSQL("CREATE TABLE location (sequence INTEGER PRIMARY KEY, provider TEXT NOT NULL, " +
+				"time INTEGER NOT NULL, latitude REAL NOT NULL, longitude REAL NOT NULL, altitude REAL NOT NULL, " +
+				"accuracy REAL NOT NULL, speed REAL NOT NULL, bearing REAL NOT NULL, flags INTEGER NOT NULL)");
+		database.execSQL("CREATE TABLE store_state (end_sequence INTEGER NOT NULL)");
+		database.execSQL("INSERT INTO store_state (end_sequence) VALUES (4)");
+		database.execSQL("INSERT INTO location VALUES (3, 'gps', 1, 40, -105, 0, 0, 0, 0, 0)");
+		database.setVersion(1);
+		database.close();
+
+		store = openStore(DATABASE_NAME);
+		Location location = buildLocation(2);
+		location.setProvider(null);
+		store.offerLocation(location);
+		store.sync();
+
+		assertEquals(new SequenceRange(3, 5), store.getSequenceRange());
+		assertTimes(store.getLocations(), 1, 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void removingRangeAfterOldestLocationIsRejected() {
+		offerLocations(1, 2, 3);
+
+		store.removeLocations(new SequenceRange(1, 2));
+	}
+
+	private static SQLiteLocationStore openStore(String databaseName) {
+		return new SQLiteLocationStore(RuntimeEnvironment.application, databaseName, DurabilityPolicy.MANUAL);
+	}
+
+	private void offerLocations(long... times) {
+		for(long time : times) {
+			store.offerLocation(buildLocation(time));
+		}
+	}
+
+	private static Location buildLocation(long time) {
+		Location location = new Location("gps");
+		location.setTime(time);
+		location.setLatitude(40 + time / 1000d);
+		location.setLongitude(-105 - time / 1000d);
+
+		return location;
+	}
+
+	private static void assertTimes(List<Location> locations, long... expectedTimes) {
+		assertEquals(expectedTimes.length, locations.size());
+		for(int i = 0; i < expectedTimes.length; i++) {
+			assertEquals(expectedTimes[i], locations.get(i).getTime());
+		}
+	}
+}
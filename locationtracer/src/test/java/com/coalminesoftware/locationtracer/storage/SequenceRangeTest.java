@@ -0,0 +1,55 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SequenceRangeTest {
+	@Test
+	public void rangeIncludesStartAndExcludesEnd() {
+		SequenceRange range = new SequenceRange(10, 15);
+
+		assertEquals(5, range.getLength());
+		assertFalse(range.isEmpty());
+		assertFalse(range.contains(9));
+		assertTrue(range.contains(10));
+		assertTrue(range.contains(14));
+		assertFalse(range.contains(15));
+	}
+
+	@Test
+	public void rangeWithEqualStartAndEndIsEmpty() {
+		SequenceRange range = new SequenceRange(7, 7);
+
+		assertTrue(range.isEmpty());
+		assertEquals(0, range.getLength());
+		assertFalse(range.contains(7));
+	}
+
+	@Test
+	public void rangeSupportsFullLongDomain() {
+		SequenceRange range = new SequenceRange(Long.MIN_VALUE, Long.MIN_VALUE + 3);
+
+		assertTrue(range.contains(Long.MIN_VALUE));
+		assertEquals(3, range.getLength());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void endPrecedingStartIsRejected() {
+		new SequenceRange(5, 4);
+	}
+
+	@Test
+	public void rangesWithSameBoundsAreEqual() {
+		SequenceRange range = new SequenceRange(3, 9);
+
+		assertEquals(range, new SequenceRange(3, 9));
+		assertEquals(range.hashCode(), new SequenceRange(3, 9).hashCode());
+		assertNotEquals(range, new SequenceRange(3, 10));
+		assertNotEquals(range, new SequenceRange(2, 9));
+		assertEquals("[3, 9)", range.toString());
+	}
+}
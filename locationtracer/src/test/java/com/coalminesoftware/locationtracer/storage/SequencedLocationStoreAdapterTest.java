@@ -0,0 +1,136 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SequencedLocationStoreAdapterTest {
+	private final ListLocationStore locationStore = new ListLocationStore();
+	private final SequencedLocationStoreAdapter<String> adapter = new SequencedLocationStoreAdapter<>(locationStore);
+
+	@Test
+	public void sequenceNumbersCountLocationsOfferedThroughAdapter() {
+		offerLocations("a", "b", "c");
+
+		assertEquals(new SequenceRange(0, 3), adapter.getSequenceRange());
+
+		adapter.removeLocations(new SequenceRange(0, 2));
+
+		assertEquals(new SequenceRange(2, 3), adapter.getSequenceRange());
+		assertEquals(Arrays.asList("c"), adapter.getLocations());
+	}
+
+	@Test
+	public void locationsAlreadyStoredAreNumberedFromZero() {
+		locationStore.offerLocation("a");
+		locationStore.offerLocation("b");
+
+		SequencedLocationStoreAdapter<String> adapter = new SequencedLocationStoreAdapter<>(locationStore);
+		adapter.offerLocation("c");
+
+		assertEquals(new SequenceRange(0, 3), adapter.getSequenceRange());
+		assertBatch(adapter.getLocationBatch(2, 10), 2, "c");
+	}
+
+	@Test
+	public void batchesPageThroughStoreBySequence() {
+		offerLocations("a", "b", "c", "d", "e");
+
+		assertBatch(adapter.getLocationBatch(Long.MIN_VALUE, 2), 0, "a", "b");
+		assertBatch(adapter.getLocationBatch(2, 2), 2, "c", "d");
+		assertBatch(adapter.getLocationBatch(4, 2), 4, "e");
+		assertBatch(adapter.getLocationBatch(5, 2), 5);
+		assertBatch(adapter.getLocationBatch(Long.MAX_VALUE, 2), 5);
+	}
+
+	@Test
+	public void batchesStartAtOldestLocationOnceEarlierLocationsAreRemoved() {
+		offerLocations("a", "b", "c", "d");
+		adapter.removeLocations(new SequenceRange(0, 2));
+
+		assertBatch(adapter.getLocationBatch(1, 10), 2, "c", "d");
+	}
+
+	@Test
+	public void rangeRemovalFollowsContentBasedRemoval() {
+		offerLocations("a", "b", "c", "d", "e");
+
+		adapter.removeLocations(Arrays.asList("a", "b"));
+
+		assertEquals(new SequenceRange(2, 5), adapter.getSequenceRange());
+		assertBatch(adapter.getLocationBatch(3, 10), 3, "d", "e");
+
+		adapter.removeLocations(new SequenceRange(0, 4));
+
+		assertEquals(Arrays.asList("e"), locationStore.getLocations());
+		assertEquals(new SequenceRange(4, 5), adapter.getSequenceRange());
+	}
+
+	@Test
+	public void rangesOutsideStoreRemoveNothing() {
+		offerLocations("a", "b");
+
+		adapter.removeLocations(new SequenceRange(2, 10));
+		adapter.removeLocations(new SequenceRange(-10, 0));
+
+		assertEquals(Arrays.asList("a", "b"), locationStore.getLocations());
+	}
+
+	@Test
+	public void sequencedStoresAreNotAdapted() {
+		InMemoryLocationStore<String> sequencedStore = new InMemoryLocationStore<>(10);
+
+		assertSame(sequencedStore, SequencedLocationStoreAdapter.adapt(sequencedStore));
+		assertSame(locationStore, ((SequencedLocationStoreAdapter<String>)SequencedLocationStoreAdapter.adapt(
+				locationStore)).getAdaptedLocationStore());
+	}
+
+	private void offerLocations(String... locations) {
+		for(String location : locations) {
+			adapter.offerLocation(location);
+		}
+	}
+
+	private static void assertBatch(LocationBatch<String> batch, long startSequence, String... locations) {
+		assertEquals(new SequenceRange(startSequence, startSequence + locations.length), batch.getSequenceRange());
+		assertEquals(Arrays.asList(locations), batch.getLocations());
+	}
+
+	/**
+	 * A store that only supports the basic {@link LocationStore} interface, removing locations by their contents.
+	 */
+	private static class ListLocationStore implements LocationStore<String> {
+		private final List<String> locations = new ArrayList<>();
+
+		@Override
+		public void offerLocation(String location) {
+			locations.add(location);
+		}
+
+		@Override
+		public int getLocationCount() {
+			return locations.size();
+		}
+
+		@Override
+		public List<String> getLocations() {
+			return new ArrayList<>(locations);
+		}
+
+		@Override
+		public void removeLocations(Collection<String> locations) {
+			this.locations.removeAll(locations);
+		}
+
+		@Override
+		public Long getLastLocationAcceptanceTime() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package com.coalminesoftware.locationtracer.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 22)
+public class TieredLocationStoreTest {
+	private static final int MEMORY_CAPACITY = 4;
+	private static final int SPILL_CHUNK_SIZE = 2;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void oldestChunkIsSpilledWhenMemoryIsFull() throws IOException {
+		TieredLocationStore store = openStore(temporaryFolder.newFolder());
+
+		offerLocations(store, 1, 2, 3, 4);
+		assertEquals(0, store.getSpilledLocationCount());
+
+		offerLocations(store, 5);
+
+		assertEquals(2, store.getSpilledLocationCount());
+		assertEquals(5, store.getLocationCount());
+		assertEquals(new SequenceRange(0, 5), store.getSequenceRange());
+		assertTimes(store.getLocations(), 1, 2, 3, 4, 5);
+		store.close();
+	}
+
+	@Test
+	public void batchesSpanDiskAndMemory() throws IOException {
+		TieredLocationStore store = openStore(temporaryFolder.newFolder());
+		offerLocations(store, 1, 2, 3, 4, 5);
+
+		assertBatch(store.getLocationBatch(1, 3), 1, 2, 3, 4);
+		assertBatch(store.getLocationBatch(Long.MIN_VALUE, 10), 0, 1, 2, 3, 4, 5);
+		assertBatch(store.getLocationBatch(5, 10), 5);
+		store.close();
+	}
+
+	@Test
+	public void rangesAreRemovedFromDiskBeforeMemory() throws IOException {
+		TieredLocationStore store = openStore(temporaryFolder.newFolder());
+		offerLocations(store, 1, 2, 3, 4, 5);
+
+		store.removeLocations(new SequenceRange(0, 1));
+
+		assertEquals(1, store.getSpilledLocationCount());
+		assertEquals(new SequenceRange(1, 5), store.getSequenceRange());
+
+		store.removeLocations(new SequenceRange(1, 3));
+
+		assertEquals(0, store.getSpilledLocationCount());
+		assertEquals(new SequenceRange(3, 5), store.getSequenceRange());
+		assertTimes(store.getLocations(), 4, 5);
+		store.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rangesAfterOldestLocationCannotBeRemoved() throws IOException {
+		TieredLocationStore store = openStore(temporaryFolder.newFolder());
+		offerLocations(store, 1, 2, 3, 4, 5);
+
+		store.removeLocations(new SequenceRange(2, 4));
+	}
+
+	@Test
+	public void spillingAgainAfterDiskIsEmptiedKeepsSequenceNumbers() throws IOException {
+		TieredLocationStore store = openStore(temporaryFolder.newFolder());
+		offerLocations(store, 1, 2, 3, 4, 5);
+		store.removeLocations(new SequenceRange(0, 4));
+
+		assertEquals(new SequenceRange(4, 5), store.getSequenceRange());
+
+		offerLocations(store, 6, 7, 8, 9);
+
+		assertEquals(2, store.getSpilledLocationCount());
+		assertEquals(new SequenceRange(4, 9), store.getSequenceRange());
+		assertBatch(store.getLocationBatch(4, 2), 4, 5, 6);
+		assertBatch(store.getLocationBatch(6, 10), 6, 7, 8, 9);
+
+		store.removeLocations(new SequenceRange(4, 7));
+
+		assertEquals(new SequenceRange(7, 9), store.getSequenceRange());
+		assertTimes(store.getLocations(), 8, 9);
+		store.close();
+	}
+
+	@Test
+	public void removedLocationsAreMatchedAgainstOldestLocations() throws IOException {
+		TieredLocationStore store = openStore(temporaryFolder.newFolder());
+		offerLocations(store, 1, 2, 3, 4, 5);
+
+		store.removeLocations(store.getLocations().subList(0, 3));
+
+		assertEquals(new SequenceRange(3, 5), store.getSequenceRange());
+		assertTimes(store.getLocations(), 4, 5);
+		store.close();
+	}
+
+	@Test
+	public void sequenceNumbersContinueFromSpilledLocationsAfterReopening() throws IOException {
+		File directory = temporaryFolder.newFolder();
+		TieredLocationStore store = openStore(directory);
+		offerLocations(store, 1, 2, 3, 4, 5);
+		store.close();
+
+		store = openStore(directory);
+
+		assertEquals(new SequenceRange(0, 2), store.getSequenceRange());
+		assertTimes(store.getLocations(), 1, 2);
+
+		offerLocations(store, 10);
+
+		assertEquals(new SequenceRange(0, 3), store.getSequenceRange());
+		assertBatch(store.getLocationBatch(1, 10), 1, 2, 10);
+		store.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void spillChunkLargerThanMemoryIsRejected() throws IOException {
+		new TieredLocationStore(MEMORY_CAPACITY, MEMORY_CAPACITY + 1,
+				new MappedFileLocationStore(temporaryFolder.newFolder()));
+	}
+
+	private static TieredLocationStore openStore(File directory) throws IOException {
+		return new TieredLocationStore(MEMORY_CAPACITY, SPILL_CHUNK_SIZE, new MappedFileLocationStore(directory));
+	}
+
+	private static void offerLocations(TieredLocationStore store, long... times) {
+		for(long time : times) {
+			store.offerLocation(buildLocation(time));
+		}
+	}
+
+	private static Location buildLocation(long time) {
+		Location location = new Location("gps");
+		location.setTime(time);
+		location.setLatitude(40 + time / 1000d);
+		location.setLongitude(-105 - time / 1000d);
+
+		return location;
+	}
+
+	private static void assertBatch(LocationBatch<Location> batch, long startSequence, long... expectedTimes) {
+		assertEquals(new SequenceRange(startSequence, startSequence + expectedTimes.length), batch.getSequenceRange());
+		assertTimes(batch.getLocations(), expectedTimes);
+	}
+
+	private static void assertTimes(List<Location> locations, long... expectedTimes) {
+		assertEquals(expectedTimes.length, locations.size());
+		for(int i = 0; i < expectedTimes.length; i++) {
+			assertEquals(expectedTimes[i], locations.get(i).getTime());
+		}
+	}
+}